@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.streams;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.utils.TaskLogger;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link Subscription} that buffers the events of a listener until the
+ * subscriber asks for them. Events with a conflation key replace the pending
+ * event with the same key instead of being queued behind it, so a slow
+ * subscriber only ever sees the latest progress of a task rather than
+ * every step. Events without a key are never dropped.
+ * <p/>
+ * Signals to the subscriber are serialized: whichever thread finds the
+ * subscriber with demand and events pending delivers them, every other
+ * thread only queues.
+ */
+abstract class EventSubscription<E> implements Subscription {
+
+    private static final class Slot<E> {
+
+        @NonNull
+        E mEvent;
+        @Nullable
+        final Object mConflationKey;
+
+        Slot(@NonNull E event, @Nullable Object conflationKey) {
+            mEvent = event;
+            mConflationKey = conflationKey;
+        }
+    }
+
+    @NonNull
+    private final Subscriber<? super E> mSubscriber;
+
+    // Everything below is guarded by mLock
+    private final Object mLock = new Object();
+    @NonNull
+    private final ArrayDeque<Slot<E>> mQueue = new ArrayDeque<>();
+    // The pending events that later events with the same key may still replace
+    @NonNull
+    private final Map<Object, Slot<E>> mConflatedSlots = new HashMap<>();
+    private long mRequested;
+    private boolean mIsDraining;
+    @Nullable
+    private Throwable mPendingError;
+
+    private volatile boolean mIsCancelled;
+
+    EventSubscription(@NonNull Subscriber<? super E> subscriber) {
+        mSubscriber = subscriber;
+    }
+
+    /**
+     * Hands the subscription to the subscriber and then starts
+     * listening for events, so that no event can reach the
+     * subscriber before {@link Subscriber#onSubscribe(Subscription)}.
+     */
+    final void start() {
+        mSubscriber.onSubscribe(this);
+        if (!mIsCancelled) {
+            register();
+        }
+    }
+
+    /**
+     * Starts listening for the events passed to {@link #offer(Object)}.
+     */
+    abstract void register();
+
+    /**
+     * Stops listening, called once when the subscription is cancelled.
+     */
+    abstract void unregister();
+
+    /**
+     * @return the key of the events this event replaces while they are
+     * pending, or null if the event must always be delivered.
+     */
+    @Nullable
+    abstract Object getConflationKey(@NonNull E event);
+
+    /**
+     * Queues the event and delivers it if the subscriber has demand.
+     */
+    final void offer(@NonNull E event) {
+        if (mIsCancelled) {
+            return;
+        }
+        Object conflationKey = getConflationKey(event);
+        synchronized (mLock) {
+            if (conflationKey == null) {
+                // Later events that could be conflated must stay behind this one
+                mConflatedSlots.clear();
+                mQueue.add(new Slot<>(event, null));
+            } else {
+                Slot<E> slot = mConflatedSlots.get(conflationKey);
+                if (slot != null) {
+                    // Keeps its place in the queue, demand doesn't change so there's nothing to drain
+                    slot.mEvent = event;
+                    return;
+                }
+                slot = new Slot<>(event, conflationKey);
+                mConflatedSlots.put(conflationKey, slot);
+                mQueue.add(slot);
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        synchronized (mLock) {
+            if (n <= 0) {
+                // Rule 3.9, delivered by the drain loop so it can't overlap an onNext
+                mPendingError = new IllegalArgumentException("Requested " + n + " events, must be more than 0");
+            } else {
+                mRequested += n;
+                if (mRequested < 0) {
+                    // Rule 3.17, treat an overflow as unbounded demand
+                    mRequested = Long.MAX_VALUE;
+                }
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (mLock) {
+            if (mIsCancelled) {
+                return;
+            }
+            mIsCancelled = true;
+            mQueue.clear();
+            mConflatedSlots.clear();
+        }
+        unregister();
+    }
+
+    private void drain() {
+        synchronized (mLock) {
+            if (mIsDraining) {
+                // The thread that is draining picks up whatever changed
+                return;
+            }
+            mIsDraining = true;
+        }
+        while (true) {
+            E event;
+            Throwable error;
+            synchronized (mLock) {
+                error = mPendingError;
+                if (mIsCancelled || (error == null && (mRequested == 0 || mQueue.isEmpty()))) {
+                    mIsDraining = false;
+                    return;
+                }
+                if (error != null) {
+                    event = null;
+                } else {
+                    Slot<E> slot = mQueue.poll();
+                    if (slot.mConflationKey != null && mConflatedSlots.get(slot.mConflationKey) == slot) {
+                        mConflatedSlots.remove(slot.mConflationKey);
+                    }
+                    if (mRequested != Long.MAX_VALUE) {
+                        mRequested--;
+                    }
+                    event = slot.mEvent;
+                }
+            }
+            if (error != null) {
+                cancel();
+                mSubscriber.onError(error);
+                return;
+            }
+            try {
+                mSubscriber.onNext(event);
+            } catch (RuntimeException e) {
+                // Rule 2.13, a subscriber that throws is considered cancelled
+                TaskLogger.getLogger().e("Subscriber threw from onNext, cancelling", e);
+                cancel();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.streams;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * An event of the manager itself, as emitted by {@link TaskStreams#managerEvents}.
+ */
+public final class ManagerStreamEvent {
+
+    public enum Type {
+        RESUME_IF_NECESSARY,
+        ALL_TASKS_PAUSED,
+        ALL_TASKS_RESUMED,
+        ALL_TASKS_FINISHED,
+        KILL_SERVICE,
+        CONDITIONS_LOST,
+        CONDITIONS_RETURNED,
+        /**
+         * An event sent with {@link com.vimeo.turnstile.BaseTaskManager#broadcastAdditionalManagerEvent(String)},
+         * see {@link #getAdditionalEvent()}.
+         */
+        ADDITIONAL,
+        /**
+         * {@link com.vimeo.turnstile.BaseTaskManager#getAggregateProgress()} changed,
+         * see {@link #getProgress()}.
+         */
+        AGGREGATE_PROGRESS
+    }
+
+    public static final int NO_PROGRESS = -1;
+
+    private static final ManagerStreamEvent[] sEvents = new ManagerStreamEvent[Type.values().length];
+
+    static {
+        for (Type type : Type.values()) {
+            sEvents[type.ordinal()] = new ManagerStreamEvent(type, null, NO_PROGRESS);
+        }
+    }
+
+    @NonNull
+    private final Type mType;
+    @Nullable
+    private final String mAdditionalEvent;
+    private final int mProgress;
+
+    private ManagerStreamEvent(@NonNull Type type, @Nullable String additionalEvent, int progress) {
+        mType = type;
+        mAdditionalEvent = additionalEvent;
+        mProgress = progress;
+    }
+
+    /**
+     * The events carry no data besides their type, so they're shared.
+     */
+    @NonNull
+    static ManagerStreamEvent of(@NonNull Type type) {
+        return sEvents[type.ordinal()];
+    }
+
+    @NonNull
+    static ManagerStreamEvent additional(@NonNull String event) {
+        return new ManagerStreamEvent(Type.ADDITIONAL, event, NO_PROGRESS);
+    }
+
+    @NonNull
+    static ManagerStreamEvent aggregateProgress(int progress) {
+        return new ManagerStreamEvent(Type.AGGREGATE_PROGRESS, null, progress);
+    }
+
+    @NonNull
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return the name of an {@link Type#ADDITIONAL} event, null for every other event.
+     */
+    @Nullable
+    public String getAdditionalEvent() {
+        return mAdditionalEvent;
+    }
+
+    /**
+     * @return the progress of an {@link Type#AGGREGATE_PROGRESS} event, {@link #NO_PROGRESS} for every other event.
+     */
+    public int getProgress() {
+        return mProgress;
+    }
+
+    @Override
+    public String toString() {
+        return "ManagerStreamEvent{type=" + mType +
+               (mType == Type.AGGREGATE_PROGRESS ? ", progress=" + mProgress : "") +
+               (mAdditionalEvent != null ? ", event=" + mAdditionalEvent : "") + '}';
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.streams;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.BaseTask;
+import com.vimeo.turnstile.TaskError;
+import com.vimeo.turnstile.TaskEvent;
+import com.vimeo.turnstile.TaskEventType;
+
+/**
+ * An event of a single task, as emitted by {@link TaskStreams#taskEvents}.
+ * It is a copy of the {@link TaskEvent} the manager sent, since progress
+ * events are pooled and may wait in the subscription's buffer after the
+ * manager has reused them.
+ */
+public final class TaskStreamEvent<T extends BaseTask> {
+
+    @NonNull
+    private final T mTask;
+    @NonNull
+    private final TaskEventType mType;
+    private final long mVersion;
+    private final int mProgress;
+    @Nullable
+    private final TaskError mError;
+    @Nullable
+    private final String mName;
+
+    TaskStreamEvent(@NonNull TaskEvent<T> event) {
+        mTask = event.getTask();
+        mType = event.getType();
+        mVersion = event.getVersion();
+        mProgress = event.getProgress();
+        mError = event.getError();
+        mName = event.getName();
+    }
+
+    @NonNull
+    public T getTask() {
+        return mTask;
+    }
+
+    @NonNull
+    public TaskEventType getType() {
+        return mType;
+    }
+
+    /**
+     * @see TaskEvent#getVersion()
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the progress of a {@link TaskEventType#PROGRESS} event,
+     * otherwise {@link TaskEvent#NO_PROGRESS}.
+     */
+    public int getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * @return the error of a {@link TaskEventType#FAILURE} event, null for every other event.
+     */
+    @Nullable
+    public TaskError getError() {
+        return mError;
+    }
+
+    /**
+     * @return the name of an {@link TaskEventType#ADDITIONAL} event, null for every other event.
+     */
+    @Nullable
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskStreamEvent{task=" + mTask.getId() + ", type=" + mType + ", version=" + mVersion +
+               (mType == TaskEventType.PROGRESS ? ", progress=" + mProgress : "") +
+               (mError != null ? ", error=" + mError.getMessage() : "") +
+               (mName != null ? ", name=" + mName : "") + '}';
+    }
+}
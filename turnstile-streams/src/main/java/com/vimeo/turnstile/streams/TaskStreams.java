@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.streams;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.BaseTask;
+import com.vimeo.turnstile.BaseTaskManager;
+import com.vimeo.turnstile.BaseTaskManager.ManagerEventListener;
+import com.vimeo.turnstile.DispatchExecutors;
+import com.vimeo.turnstile.TaskEvent;
+import com.vimeo.turnstile.TaskEventType;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+/**
+ * Exposes the events of a {@link BaseTaskManager} as Reactive Streams
+ * {@link Publisher}s, so they can be filtered, sampled and combined with
+ * any Reactive Streams library.
+ * <p/>
+ * Each subscriber gets its own listener on the manager. Events are buffered
+ * until the subscriber requests them:
+ * <ul>
+ * <li>Progress events are conflated per task. While a progress event is
+ * waiting for demand, a newer one for the same task takes its place, so a
+ * slow subscriber gets the latest progress instead of a growing backlog.
+ * Aggregate progress events of the manager are conflated the same way.</li>
+ * <li>Every other event is delivered, in order.</li>
+ * </ul>
+ * The listeners are called on the thread that sends the event, and so
+ * is the subscriber whenever it already has demand. Use the operators of
+ * your Reactive Streams library to move the events to another thread.
+ * <p/>
+ * The streams never complete, cancel the subscription to stop listening.
+ */
+public final class TaskStreams {
+
+    private TaskStreams() {
+    }
+
+    /**
+     * @return a publisher of the events of the manager's tasks.
+     */
+    @NonNull
+    public static <T extends BaseTask> Publisher<TaskStreamEvent<T>> taskEvents(@NonNull final BaseTaskManager<T> manager) {
+        return new Publisher<TaskStreamEvent<T>>() {
+            @Override
+            public void subscribe(Subscriber<? super TaskStreamEvent<T>> subscriber) {
+                if (subscriber == null) {
+                    // Rule 1.9
+                    throw new NullPointerException("Subscriber must not be null");
+                }
+                new TaskEventSubscription<>(manager, subscriber).start();
+            }
+        };
+    }
+
+    /**
+     * @return a publisher of the manager's own events.
+     */
+    @NonNull
+    public static Publisher<ManagerStreamEvent> managerEvents(@NonNull final BaseTaskManager<?> manager) {
+        return new Publisher<ManagerStreamEvent>() {
+            @Override
+            public void subscribe(Subscriber<? super ManagerStreamEvent> subscriber) {
+                if (subscriber == null) {
+                    // Rule 1.9
+                    throw new NullPointerException("Subscriber must not be null");
+                }
+                new ManagerEventSubscription(manager, subscriber).start();
+            }
+        };
+    }
+
+    private static final class TaskEventSubscription<T extends BaseTask> extends EventSubscription<TaskStreamEvent<T>>
+            implements TaskEvent.Listener<T> {
+
+        @NonNull
+        private final BaseTaskManager<T> mManager;
+
+        TaskEventSubscription(@NonNull BaseTaskManager<T> manager,
+                              @NonNull Subscriber<? super TaskStreamEvent<T>> subscriber) {
+            super(subscriber);
+            mManager = manager;
+        }
+
+        @Override
+        public void onTaskEvent(@NonNull TaskEvent<T> event) {
+            // Copied before the manager can reuse a pooled progress event
+            offer(new TaskStreamEvent<>(event));
+        }
+
+        @Override
+        void register() {
+            // Offering only buffers, so there's no need to hop to the main thread first
+            mManager.registerTaskEventListener(this, DispatchExecutors.callingThread());
+        }
+
+        @Override
+        void unregister() {
+            mManager.unregisterTaskEventListener(this);
+        }
+
+        @Nullable
+        @Override
+        Object getConflationKey(@NonNull TaskStreamEvent<T> event) {
+            return event.getType() == TaskEventType.PROGRESS ? event.getTask().getId() : null;
+        }
+    }
+
+    private static final class ManagerEventSubscription extends EventSubscription<ManagerStreamEvent> {
+
+        @NonNull
+        private final BaseTaskManager<?> mManager;
+
+        private final ManagerEventListener mListener = new ManagerEventListener() {
+            @Override
+            public void onResumeIfNecessary() {
+                offer(ManagerStreamEvent.of(ManagerStreamEvent.Type.RESUME_IF_NECESSARY));
+            }
+
+            @Override
+            public void onAllTasksPaused() {
+                offer(ManagerStreamEvent.of(ManagerStreamEvent.Type.ALL_TASKS_PAUSED));
+            }
+
+            @Override
+            public void onAllTasksResumed() {
+                offer(ManagerStreamEvent.of(ManagerStreamEvent.Type.ALL_TASKS_RESUMED));
+            }
+
+            @Override
+            public void onAllTasksFinished() {
+                offer(ManagerStreamEvent.of(ManagerStreamEvent.Type.ALL_TASKS_FINISHED));
+            }
+
+            @Override
+            public void onKillService() {
+                offer(ManagerStreamEvent.of(ManagerStreamEvent.Type.KILL_SERVICE));
+            }
+
+            @Override
+            public void onConditionsLost() {
+                offer(ManagerStreamEvent.of(ManagerStreamEvent.Type.CONDITIONS_LOST));
+            }
+
+            @Override
+            public void onConditionsReturned() {
+                offer(ManagerStreamEvent.of(ManagerStreamEvent.Type.CONDITIONS_RETURNED));
+            }
+
+            @Override
+            public void onAdditionalManagerEvent(@NonNull String event) {
+                offer(ManagerStreamEvent.additional(event));
+            }
+
+            @Override
+            public void onAggregateProgress(int progress) {
+                offer(ManagerStreamEvent.aggregateProgress(progress));
+            }
+        };
+
+        ManagerEventSubscription(@NonNull BaseTaskManager<?> manager,
+                                 @NonNull Subscriber<? super ManagerStreamEvent> subscriber) {
+            super(subscriber);
+            mManager = manager;
+        }
+
+        @Override
+        void register() {
+            mManager.registerManagerEventListener(mListener, DispatchExecutors.callingThread());
+        }
+
+        @Override
+        void unregister() {
+            mManager.unregisterManagerEventListener(mListener);
+        }
+
+        @Nullable
+        @Override
+        Object getConflationKey(@NonNull ManagerStreamEvent event) {
+            return event.getType() == ManagerStreamEvent.Type.AGGREGATE_PROGRESS ? event.getType() : null;
+        }
+    }
+}
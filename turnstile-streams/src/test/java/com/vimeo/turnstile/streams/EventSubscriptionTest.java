@@ -0,0 +1,134 @@
+package com.vimeo.turnstile.streams;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventSubscriptionTest {
+
+    private static final class RecordingSubscriber implements Subscriber<String> {
+
+        final List<String> mEvents = new ArrayList<>();
+        Subscription mSubscription;
+        Throwable mError;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            mSubscription = subscription;
+        }
+
+        @Override
+        public void onNext(String event) {
+            mEvents.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mError = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * Events starting with "progress" are conflated with each other.
+     */
+    private static final class TestSubscription extends EventSubscription<String> {
+
+        boolean mIsRegistered;
+
+        TestSubscription(@NonNull Subscriber<? super String> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        void register() {
+            mIsRegistered = true;
+        }
+
+        @Override
+        void unregister() {
+            mIsRegistered = false;
+        }
+
+        @Nullable
+        @Override
+        Object getConflationKey(@NonNull String event) {
+            return event.startsWith("progress") ? "progress" : null;
+        }
+    }
+
+    private RecordingSubscriber mSubscriber;
+    private TestSubscription mSubscription;
+
+    @Before
+    public void setup() {
+        mSubscriber = new RecordingSubscriber();
+        mSubscription = new TestSubscription(mSubscriber);
+        mSubscription.start();
+    }
+
+    @Test
+    public void testEventsWaitForDemand() {
+        assertTrue(mSubscription.mIsRegistered);
+        mSubscription.offer("added");
+        mSubscription.offer("started");
+        mSubscription.offer("success");
+        assertTrue(mSubscriber.mEvents.isEmpty());
+
+        mSubscriber.mSubscription.request(2);
+        assertEquals(2, mSubscriber.mEvents.size());
+        assertEquals("added", mSubscriber.mEvents.get(0));
+
+        mSubscriber.mSubscription.request(Long.MAX_VALUE);
+        mSubscriber.mSubscription.request(Long.MAX_VALUE);
+        mSubscription.offer("removed");
+        assertEquals(4, mSubscriber.mEvents.size());
+    }
+
+    @Test
+    public void testProgressIsConflated() {
+        mSubscription.offer("progress 1");
+        mSubscription.offer("progress 2");
+        mSubscription.offer("paused");
+        mSubscription.offer("progress 3");
+        mSubscription.offer("progress 4");
+
+        mSubscriber.mSubscription.request(10);
+        assertEquals(3, mSubscriber.mEvents.size());
+        // Progress never overtakes the events that came after it
+        assertEquals("progress 2", mSubscriber.mEvents.get(0));
+        assertEquals("paused", mSubscriber.mEvents.get(1));
+        assertEquals("progress 4", mSubscriber.mEvents.get(2));
+    }
+
+    @Test
+    public void testNonPositiveRequestFails() {
+        mSubscriber.mSubscription.request(0);
+        assertTrue(mSubscriber.mError instanceof IllegalArgumentException);
+        assertFalse(mSubscription.mIsRegistered);
+    }
+
+    @Test
+    public void testCancelStopsEvents() {
+        mSubscriber.mSubscription.request(10);
+        mSubscription.offer("added");
+        mSubscriber.mSubscription.cancel();
+        mSubscription.offer("started");
+        assertEquals(1, mSubscriber.mEvents.size());
+        assertFalse(mSubscription.mIsRegistered);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The progress of a group of tasks, weighted by {@link BaseTask#getProgressWeight()}.
+ * It keeps running sums, so each change costs the same however many tasks there are.
+ * Finished tasks keep counting as 100 until {@link #reset()}.
+ */
+final class AggregateProgress {
+
+    /**
+     * The weight and progress of a single task.
+     */
+    private static final class Entry {
+
+        final long mWeight;
+        int mProgress;
+
+        Entry(long weight) {
+            mWeight = weight;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    // The sum of the weights, and of the weight times the progress of each task
+    private long mTotalWeight;
+    private long mWeightedProgress;
+    private int mProgress;
+
+    /**
+     * Sets the progress of the task, adding the task if it's new.
+     *
+     * @return true if {@link #getProgress()} changed.
+     */
+    synchronized boolean update(@NonNull String taskId, long weight, int progress) {
+        progress = Math.max(0, Math.min(100, progress));
+        Entry entry = mEntries.get(taskId);
+        if (entry == null) {
+            entry = new Entry(Math.max(1, weight));
+            mEntries.put(taskId, entry);
+            mTotalWeight += entry.mWeight;
+        }
+        mWeightedProgress += entry.mWeight * (progress - entry.mProgress);
+        entry.mProgress = progress;
+        return updateProgress();
+    }
+
+    /**
+     * Drops a task that won't finish, e.g. one that failed or was canceled.
+     *
+     * @return true if {@link #getProgress()} changed.
+     */
+    synchronized boolean remove(@NonNull String taskId) {
+        Entry entry = mEntries.remove(taskId);
+        if (entry == null) {
+            return false;
+        }
+        mTotalWeight -= entry.mWeight;
+        mWeightedProgress -= entry.mWeight * entry.mProgress;
+        return updateProgress();
+    }
+
+    /**
+     * Forgets every task, once there are none left to run.
+     *
+     * @return true if {@link #getProgress()} changed.
+     */
+    synchronized boolean reset() {
+        mEntries.clear();
+        mTotalWeight = 0;
+        mWeightedProgress = 0;
+        return updateProgress();
+    }
+
+    /**
+     * @return the weighted progress, between 0 and 100.
+     */
+    synchronized int getProgress() {
+        return mProgress;
+    }
+
+    synchronized long getTotalWeight() {
+        return mTotalWeight;
+    }
+
+    private boolean updateProgress() {
+        int progress = mTotalWeight > 0 ? (int) (mWeightedProgress / mTotalWeight) : 0;
+        if (progress == mProgress) {
+            return false;
+        }
+        mProgress = progress;
+        return true;
+    }
+}
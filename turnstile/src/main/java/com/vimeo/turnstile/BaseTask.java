@@ -24,6 +24,7 @@
 package com.vimeo.turnstile;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.CallSuper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -35,6 +36,7 @@ import com.vimeo.turnstile.utils.UniqueIdGenerator;
 
 import java.io.Serializable;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * The abstract base class responsible for both managing state as well
@@ -90,6 +92,8 @@ public abstract class BaseTask implements Serializable, Callable {
 
         abstract void onTaskFailure(@NonNull T task, @NonNull TaskError taskError);
 
+        abstract void onTaskExecutionFinished(@NonNull T task, @NonNull CancellationToken cancellationToken);
+
         public final void notifyOnTaskStarted(@NonNull BaseTask task) {
             T safeTask = getFrom(task);
             if (safeTask != null) {
@@ -132,6 +136,14 @@ public abstract class BaseTask implements Serializable, Callable {
             }
         }
 
+        public final void notifyTaskExecutionFinished(@NonNull BaseTask task,
+                                                      @NonNull CancellationToken cancellationToken) {
+            T safeTask = getFrom(task);
+            if (safeTask != null) {
+                onTaskExecutionFinished(safeTask, cancellationToken);
+            }
+        }
+
         @Nullable
         private T getFrom(@Nullable BaseTask task) {
             if (mClass.isInstance(task)) {
@@ -195,6 +207,25 @@ public abstract class BaseTask implements Serializable, Callable {
     @Nullable
     protected transient Conditions mConditions;
 
+    /**
+     * An optional limiter shared by the tasks of a manager, see {@link #acquireBandwidth(int)}
+     */
+    @Nullable
+    private transient RateLimiter mBandwidthLimiter;
+
+    /**
+     * The manager's executor, used to run the parts of a {@link SubTaskGroup}
+     */
+    @Nullable
+    private transient Executor mSubTaskExecutor;
+
+    /**
+     * The token for the current execution, replaced by the manager each time the task is submitted.
+     * Field initializers don't run for deserialized tasks, so this is created lazily if missing.
+     */
+    @Nullable
+    private transient volatile CancellationToken mCancellationToken;
+
     /**
      * This marks the number of retries this task has attempted - this is to possibly rebind if there
      * is a server error. We don't persist this since it's the number of retries per resume attempt
@@ -238,6 +269,11 @@ public abstract class BaseTask implements Serializable, Callable {
     protected transient long mCreatedTimeMillis;
 
     private transient volatile boolean mIsRunning;
+
+    /**
+     * When the task last reported progress, or started executing, in {@link SystemClock#elapsedRealtime()} time
+     */
+    private transient volatile long mLastProgressMillis;
     // </editor-fold>
 
     // -----------------------------------------------------------------------------------------------------
@@ -295,17 +331,39 @@ public abstract class BaseTask implements Serializable, Callable {
 
     @Override
     public Object call() throws Exception {
+        CancellationToken cancellationToken = beginExecution();
+        try {
+            if (mIsRetry) {
+                TaskLogger.getLogger().d("Task Resumed " + mId);
+                retry();
+            } else {
+                TaskLogger.getLogger().d("Task Started For First Time " + mId);
+                execute();
+            }
+        } finally {
+            endExecution(cancellationToken);
+        }
+        return null;
+    }
+
+    /**
+     * Marks the task as running and notifies the listener that it started.
+     * Every call must be followed by {@link #endExecution(CancellationToken)}.
+     *
+     * @return the token of this execution.
+     */
+    @NonNull
+    final CancellationToken beginExecution() {
+        CancellationToken cancellationToken = getCancellationToken();
+        mLastProgressMillis = SystemClock.elapsedRealtime();
         onTaskStarted();
         mIsRunning = true;
-        if (mIsRetry) {
-            TaskLogger.getLogger().d("Task Resumed " + mId);
-            retry();
-        } else {
-            TaskLogger.getLogger().d("Task Started For First Time " + mId);
-            execute();
-        }
+        return cancellationToken;
+    }
+
+    final void endExecution(@NonNull CancellationToken cancellationToken) {
         mIsRunning = false;
-        return null;
+        onTaskExecutionFinished(cancellationToken);
     }
 
     /**
@@ -317,6 +375,108 @@ public abstract class BaseTask implements Serializable, Callable {
     public boolean isRunning() {
         return mIsRunning;
     }
+
+    /**
+     * The name of the {@link Conditions} that must be met for this task
+     * to run, in addition to the manager's. The conditions are registered
+     * with {@link BaseTaskManager.Builder#withTaskConditions(String, Conditions)}.
+     * When they change, only the tasks that use them are paused or resumed,
+     * so e.g. large uploads can wait for Wi-Fi while small ones keep running.
+     * <p/>
+     * The name must not change while the task is in the manager.
+     *
+     * @return the name of the conditions, or null if the task only depends
+     * on the manager's conditions.
+     */
+    @Nullable
+    public String getConditionsName() {
+        return null;
+    }
+
+    /**
+     * The longest a single execution of this task may take. Once it has
+     * passed, the task is interrupted and fails with {@link TaskError#CODE_TIMEOUT}.
+     *
+     * @return the timeout in milliseconds, 0 to use the manager's default
+     * or a negative value for no timeout.
+     * @see BaseTaskManager.Builder#withTaskTimeout(long, java.util.concurrent.TimeUnit)
+     */
+    public long getTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * The longest this task may go without reporting progress through
+     * {@link #onTaskProgress(int)} while it executes. Once it has passed,
+     * the task is interrupted and fails with {@link TaskError#CODE_STALLED}.
+     *
+     * @return the timeout in milliseconds, 0 to use the manager's default
+     * or a negative value for no stall detection.
+     * @see BaseTaskManager.Builder#withStallTimeout(long, java.util.concurrent.TimeUnit)
+     */
+    public long getStallTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * Blocks until the manager's bandwidth limiter allows the given amount
+     * of work, e.g. before writing a buffer of {@code bytes} to a socket.
+     * If the manager wasn't built with a bandwidth limiter this returns
+     * immediately.
+     *
+     * @param bytes the amount of work about to be done, usually bytes.
+     * @throws InterruptedException if the task is interrupted while waiting.
+     * @see BaseTaskManager.Builder#withBandwidthLimiter(RateLimiter)
+     */
+    @WorkerThread
+    protected final void acquireBandwidth(int bytes) throws InterruptedException {
+        RateLimiter bandwidthLimiter = mBandwidthLimiter;
+        if (bandwidthLimiter != null) {
+            bandwidthLimiter.acquire(bytes);
+        }
+    }
+
+    /**
+     * The token for the current execution of this task. Long running tasks
+     * should check {@link CancellationToken#isCancelled()} at safe points,
+     * e.g. between chunks, and return from {@link #execute()} when it is set.
+     * If the reason is {@link CancellationToken.Reason#PAUSE} the task will
+     * be run again later, so any progress should be kept.
+     *
+     * @return the token for the current execution, never null.
+     */
+    @NonNull
+    protected final CancellationToken getCancellationToken() {
+        CancellationToken cancellationToken = mCancellationToken;
+        if (cancellationToken == null) {
+            cancellationToken = new CancellationToken();
+            mCancellationToken = cancellationToken;
+        }
+        return cancellationToken;
+    }
+
+    /**
+     * @return true if the manager has asked the current execution to stop.
+     * @see #getCancellationToken()
+     */
+    protected final boolean isCancellationRequested() {
+        return getCancellationToken().isCancelled();
+    }
+
+    /**
+     * Creates a group of parts that run concurrently from within
+     * {@link #execute()}. The parts share the manager's threads with the
+     * other tasks, so they can't exceed its concurrency budget.
+     *
+     * @param maxParallelism the most parts that may run at once,
+     *                       including the one run on this task's thread.
+     * @return a new group, add parts to it and call {@link SubTaskGroup#runAll()}.
+     */
+    @NonNull
+    protected final SubTaskGroup newSubTaskGroup(int maxParallelism) {
+        return new SubTaskGroup(this, mSubTaskExecutor, maxParallelism);
+    }
+
     // </editor-fold>
 
     // -----------------------------------------------------------------------------------------------------
@@ -335,6 +495,18 @@ public abstract class BaseTask implements Serializable, Callable {
         mConditions = conditions;
     }
 
+    void setBandwidthLimiter(@Nullable RateLimiter bandwidthLimiter) {
+        mBandwidthLimiter = bandwidthLimiter;
+    }
+
+    void setCancellationToken(@NonNull CancellationToken cancellationToken) {
+        mCancellationToken = cancellationToken;
+    }
+
+    void setSubTaskExecutor(@Nullable Executor subTaskExecutor) {
+        mSubTaskExecutor = subTaskExecutor;
+    }
+
     /**
      * Set whether this task should execute as a resume/retry or not. This must be set prior to submitting this
      * {@link Callable}.
@@ -402,12 +574,37 @@ public abstract class BaseTask implements Serializable, Callable {
         }
     }
 
+    /**
+     * Notify listeners that {@link #call()} has returned, whether or
+     * not the task completed. This lets the manager restart a task
+     * that was still stopping when it was asked to resume.
+     */
+    private void onTaskExecutionFinished(@NonNull CancellationToken cancellationToken) {
+        if (mStateListener != null) {
+            mStateListener.notifyTaskExecutionFinished(this, cancellationToken);
+        }
+    }
+
+    /**
+     * The manager has already failed an execution that timed out, so
+     * anything it reports once it finally returns is ignored. The task
+     * can't be started again until that execution returns, so the token
+     * still belongs to it.
+     */
+    private boolean isTimedOut() {
+        CancellationToken.Reason reason = getCancellationToken().getReason();
+        return reason == CancellationToken.Reason.TIMEOUT || reason == CancellationToken.Reason.STALL;
+    }
+
     /**
      * Notify listeners that the task has changed state. Should
      * be called by the implementation of the BaseTask when it
      * changes its state.
      */
     protected void onTaskChange() {
+        if (isTimedOut()) {
+            return;
+        }
         if (mStateListener != null) {
             mStateListener.notifyTaskStateChange(this);
         }
@@ -419,6 +616,9 @@ public abstract class BaseTask implements Serializable, Callable {
      * finishes executing.
      */
     protected void onTaskCompleted() {
+        if (isTimedOut()) {
+            return;
+        }
         mState = TaskState.COMPLETE;
         if (mStateListener != null) {
             mStateListener.notifyTaskCompleted(this);
@@ -433,7 +633,11 @@ public abstract class BaseTask implements Serializable, Callable {
      * @param progress The progress, between 0 and 100 of the task.
      */
     protected void onTaskProgress(int progress) {
+        if (isTimedOut()) {
+            return;
+        }
         mProgress = progress;
+        mLastProgressMillis = SystemClock.elapsedRealtime();
         if (mStateListener != null) {
             mStateListener.notifyOnTaskProgress(this, progress);
         }
@@ -448,6 +652,9 @@ public abstract class BaseTask implements Serializable, Callable {
      *              propagated to listeners.
      */
     protected void onTaskFailure(@NonNull TaskError error) {
+        if (isTimedOut()) {
+            return;
+        }
         mState = TaskState.ERROR;
         mError = error;
         if (mStateListener != null) {
@@ -525,6 +732,10 @@ public abstract class BaseTask implements Serializable, Callable {
         return mCreatedTimeMillis;
     }
 
+    long getLastProgressMillis() {
+        return mLastProgressMillis;
+    }
+
     /**
      * Get the last progress that was reported for this task. This isn't guaranteed to be correct and
      * exists only for convenience.
@@ -534,5 +745,16 @@ public abstract class BaseTask implements Serializable, Callable {
     public synchronized final int getProgress() {
         return mProgress;
     }
+
+    /**
+     * The share of this task in {@link BaseTaskManager#getAggregateProgress()},
+     * e.g. the number of bytes it uploads. It is read when the task starts
+     * counting, so it mustn't change while the task runs.
+     *
+     * @return a positive weight, 1 by default so that every task counts the same.
+     */
+    public long getProgressWeight() {
+        return 1;
+    }
     // </editor-fold>
 }
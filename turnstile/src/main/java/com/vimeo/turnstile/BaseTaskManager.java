@@ -26,17 +26,20 @@ package com.vimeo.turnstile;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
 
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.vimeo.turnstile.BaseTask.TaskStateListener;
-import com.vimeo.turnstile.TaskConstants.ManagerEvent;
-import com.vimeo.turnstile.TaskConstants.TaskEvent;
+import com.vimeo.turnstile.conditions.CompositeConditions;
 import com.vimeo.turnstile.conditions.Conditions;
+import com.vimeo.turnstile.conditions.DebouncedConditions;
 import com.vimeo.turnstile.conditions.NetworkConditions;
 import com.vimeo.turnstile.conditions.NetworkConditionsBasic;
 import com.vimeo.turnstile.conditions.NetworkConditionsExtended;
@@ -45,16 +48,28 @@ import com.vimeo.turnstile.database.TaskCallback;
 import com.vimeo.turnstile.utils.BootPreferences;
 import com.vimeo.turnstile.utils.TaskLogger;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is the base class responsible for managing the queue of tasks.
@@ -89,6 +104,9 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
     public static final class Builder<T extends BaseTask> {
 
         private static final int DEFAULT_MAX_ACTIVE_TASKS = 3;
+        private static final long DEFAULT_THREAD_IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+        // About one frame at 60 fps
+        private static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 16;
 
         @NonNull
         final Context mBuilderContext;
@@ -102,11 +120,42 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         @Nullable
         Serializer<T> mSerializer;
 
+        @Nullable
+        RateLimiter mRateLimiter;
+        @NonNull
+        final Map<Class<? extends T>, RateLimiter> mTaskClassRateLimiters = new HashMap<>();
+        @NonNull
+        final Map<String, Conditions> mTaskConditions = new HashMap<>();
+        long mConditionsLossDelayMillis;
+        long mConditionsRegainDelayMillis;
+        int mMaxConditionsFlapsPerMinute;
+        @Nullable
+        RateLimiter mBandwidthLimiter;
+        long mCancellationGracePeriodMillis;
+        long mTaskTimeoutMillis;
+        long mStallTimeoutMillis;
+        int mMaxBatchSize;
+        long mBatchLingerMillis;
+        @Nullable
+        SharedTaskExecutor mSharedExecutor;
+        int mSharedExecutorWeight;
+        int mSharedExecutorMinThreads;
+        @Nullable
+        ExecutorService mExecutorService;
+        @Nullable
+        ThreadFactory mThreadFactory;
+        int mThreadPriority;
+        long mThreadIdleTimeoutMillis;
+        long mProgressIntervalMillis;
+
         public Builder(@NonNull Context context) {
             mBuilderContext = context;
             // Set defaults
             mBuilderStartOnDeviceBoot = false;
             mMaxActiveTasks = DEFAULT_MAX_ACTIVE_TASKS;
+            mThreadPriority = Process.THREAD_PRIORITY_DEFAULT;
+            mThreadIdleTimeoutMillis = DEFAULT_THREAD_IDLE_TIMEOUT_MILLIS;
+            mProgressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
             mBuilderConditions = new Conditions() {
                 @Override
                 public boolean areConditionsMet() {
@@ -130,6 +179,43 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
             return this;
         }
 
+        /**
+         * Smooth out changes to the conditions so that brief losses don't pause
+         * and resume every task. Applies to the manager's conditions as well as
+         * the ones set with {@link #withTaskConditions(String, Conditions)}.
+         *
+         * @param lossDelay         how long the conditions must stay lost before
+         *                          running tasks are paused.
+         * @param regainDelay       how long the conditions must stay met before
+         *                          tasks are resumed.
+         * @param unit              the unit of both delays.
+         * @param maxFlapsPerMinute the most pauses and resumes per minute, 0 for no limit.
+         * @see DebouncedConditions
+         */
+        @NonNull
+        public Builder<T> withConditionsDebounce(long lossDelay, long regainDelay, @NonNull TimeUnit unit,
+                                                 int maxFlapsPerMinute) {
+            mConditionsLossDelayMillis = unit.toMillis(lossDelay);
+            mConditionsRegainDelayMillis = unit.toMillis(regainDelay);
+            mMaxConditionsFlapsPerMinute = maxFlapsPerMinute;
+            return this;
+        }
+
+        /**
+         * Register {@link Conditions} that only the tasks returning {@code name}
+         * from {@link BaseTask#getConditionsName()} depend on, in addition to the
+         * conditions set with {@link #withConditions(Conditions)}. When these
+         * change, only those tasks are paused or resumed.
+         *
+         * @param name       the name that tasks use to refer to the conditions.
+         * @param conditions the conditions.
+         */
+        @NonNull
+        public Builder<T> withTaskConditions(@NonNull String name, @NonNull Conditions conditions) {
+            mTaskConditions.put(name, conditions);
+            return this;
+        }
+
         @NonNull
         public Builder<T> withNotificationIntent(@Nullable Intent notificationIntent) {
             mBuilderNotificationIntent = notificationIntent;
@@ -176,30 +262,321 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
             mMaxActiveTasks = 1;
             return this;
         }
+
+        /**
+         * Limit the number of tasks this manager starts per interval, e.g. to
+         * stay below the rate limit of the API the tasks talk to. Tasks that
+         * can't get a permit stay queued until one is available. No executor
+         * thread is blocked while they wait.
+         *
+         * @param rateLimiter the limiter that every task start has to
+         *                    acquire a permit from.
+         */
+        @NonNull
+        public Builder<T> withRateLimiter(@NonNull RateLimiter rateLimiter) {
+            mRateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Limit the number of tasks of a specific class (or its subclasses)
+         * that are started per interval. This applies in addition to the
+         * limiter set with {@link #withRateLimiter(RateLimiter)}. If a task
+         * matches several registered classes, the most specific one is used.
+         *
+         * @param taskClass   the class of task to limit.
+         * @param rateLimiter the limiter that starts of that class of
+         *                    task have to acquire a permit from.
+         */
+        @NonNull
+        public Builder<T> withRateLimiter(@NonNull Class<? extends T> taskClass, @NonNull RateLimiter rateLimiter) {
+            mTaskClassRateLimiters.put(taskClass, rateLimiter);
+            return this;
+        }
+
+        /**
+         * A limiter that tasks can draw permits from while they execute by
+         * calling {@link BaseTask#acquireBandwidth(int)}, e.g. to limit the
+         * number of bytes per second uploaded across all tasks of this manager.
+         *
+         * @param bandwidthLimiter the limiter, usually created with
+         *                         {@link RateLimiter#perSecond(int)}.
+         */
+        @NonNull
+        public Builder<T> withBandwidthLimiter(@NonNull RateLimiter bandwidthLimiter) {
+            mBandwidthLimiter = bandwidthLimiter;
+            return this;
+        }
+
+        /**
+         * When tasks are paused or cancelled, their {@link CancellationToken} is
+         * cancelled first so that they can stop at a safe point and keep their
+         * progress. Tasks still running once this grace period has passed are
+         * interrupted. The default is 0, which interrupts tasks right away.
+         *
+         * @param gracePeriod the time running tasks get to stop on their own.
+         * @param unit        the unit of the grace period.
+         */
+        @NonNull
+        public Builder<T> withCancellationGracePeriod(long gracePeriod, @NonNull TimeUnit unit) {
+            mCancellationGracePeriodMillis = unit.toMillis(gracePeriod);
+            return this;
+        }
+
+        /**
+         * The longest a single execution of a task may take. Tasks still
+         * running after this are interrupted and moved to the error state
+         * with {@link TaskError#CODE_TIMEOUT}, so they can be retried. Tasks
+         * can override this with {@link BaseTask#getTimeoutMillis()}. There
+         * is no timeout by default.
+         *
+         * @param timeout the timeout, 0 for none.
+         * @param unit    the unit of the timeout.
+         */
+        @NonNull
+        public Builder<T> withTaskTimeout(long timeout, @NonNull TimeUnit unit) {
+            mTaskTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * The longest an executing task may go without reporting progress,
+         * e.g. because it is stuck reading from a socket without a timeout.
+         * Stalled tasks are interrupted and moved to the error state with
+         * {@link TaskError#CODE_STALLED}, so they can be retried. Tasks can
+         * override this with {@link BaseTask#getStallTimeoutMillis()}. Stall
+         * detection is off by default.
+         *
+         * @param timeout the timeout, 0 for none.
+         * @param unit    the unit of the timeout.
+         */
+        @NonNull
+        public Builder<T> withStallTimeout(long timeout, @NonNull TimeUnit unit) {
+            mStallTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Run ready {@link BatchableTask}s with the same batch key together.
+         * Tasks are collected until the batch is full or the linger time has
+         * passed since the first one, whichever comes first, and the batch
+         * then takes a single executor thread. Other tasks aren't affected.
+         *
+         * @param maxBatchSize the most tasks in one batch, at least 2 to enable batching.
+         * @param linger       how long to wait for a batch to fill up.
+         * @param unit         the unit of the linger time.
+         */
+        @NonNull
+        public Builder<T> withBatching(int maxBatchSize, long linger, @NonNull TimeUnit unit) {
+            mMaxBatchSize = maxBatchSize;
+            mBatchLingerMillis = unit.toMillis(linger);
+            return this;
+        }
+
+        /**
+         * Run this manager's tasks on a {@link SharedTaskExecutor} instead of
+         * a thread pool of its own, with an equal share of its threads.
+         *
+         * @see #withSharedExecutor(SharedTaskExecutor, int, int)
+         */
+        @NonNull
+        public Builder<T> withSharedExecutor(@NonNull SharedTaskExecutor sharedExecutor) {
+            return withSharedExecutor(sharedExecutor, 1, 0);
+        }
+
+        /**
+         * Run this manager's tasks on a {@link SharedTaskExecutor} instead of
+         * a thread pool of its own. This manager never runs more than
+         * {@link #withMaxActiveTasks(int)} tasks at once, but it may run fewer
+         * while other managers are using the shared threads.
+         *
+         * @param sharedExecutor the executor, usually {@link SharedTaskExecutor#getDefault()}.
+         * @param weight         this manager's share of the threads relative to
+         *                       the other managers using the executor.
+         * @param minThreads     the number of threads this manager is guaranteed
+         *                       whenever it has tasks to run.
+         */
+        @NonNull
+        public Builder<T> withSharedExecutor(@NonNull SharedTaskExecutor sharedExecutor, int weight, int minThreads) {
+            mSharedExecutor = sharedExecutor;
+            mSharedExecutorWeight = weight;
+            mSharedExecutorMinThreads = minThreads;
+            return this;
+        }
+
+        /**
+         * Set how often progress is delivered to the listeners. Progress is
+         * coalesced per task: only the latest value reported within an
+         * interval is delivered, and a successful task always delivers a
+         * final progress of 100 before its success. The default is 16
+         * milliseconds, about one frame. With 0, progress is still coalesced
+         * into at most one delivery per turn of the main thread.
+         */
+        @NonNull
+        public Builder<T> withProgressInterval(long interval, @NonNull TimeUnit unit) {
+            mProgressIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Run this manager's tasks on an executor that is managed elsewhere.
+         * The executor decides how many tasks run at once, so
+         * {@link #withMaxActiveTasks(int)} only affects the queue estimates,
+         * and {@link BaseTaskManager#shutdown()} leaves the executor running.
+         *
+         * @param executorService the executor to submit tasks to.
+         */
+        @NonNull
+        public Builder<T> withExecutorService(@NonNull ExecutorService executorService) {
+            mExecutorService = executorService;
+            return this;
+        }
+
+        /**
+         * Set the factory that creates the threads of this manager's
+         * own pool. {@link #withThreadPriority(int)} is ignored, the
+         * factory is responsible for the priority of its threads.
+         * The default is a {@link TaskThreadFactory} named after the manager.
+         */
+        @NonNull
+        public Builder<T> withThreadFactory(@NonNull ThreadFactory threadFactory) {
+            mThreadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Set the Android priority of the threads of this manager's own pool.
+         * The default is {@link Process#THREAD_PRIORITY_DEFAULT}, use
+         * {@link Process#THREAD_PRIORITY_BACKGROUND} so that the tasks
+         * don't compete with the UI thread for CPU.
+         *
+         * @param threadPriority one of the {@code Process.THREAD_PRIORITY_*} constants.
+         */
+        @NonNull
+        public Builder<T> withThreadPriority(int threadPriority) {
+            mThreadPriority = threadPriority;
+            return this;
+        }
+
+        /**
+         * Set how long the threads of this manager's own pool stay alive
+         * without work. An idle manager gives all of its threads back and
+         * creates new ones when tasks are added. The default is 30 seconds,
+         * pass 0 to keep the threads for the lifetime of the manager.
+         */
+        @NonNull
+        public Builder<T> withThreadIdleTimeout(long timeout, @NonNull TimeUnit unit) {
+            mThreadIdleTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
     }
 
     /**
-     * A ThreadFactory that can set the threads name.
-     * This is used by the {@link BaseTaskManager} in
-     * order to create a thread pool that intelligently
-     * names its threads based off the names of its tasks.
-     * <p/>
-     * Created by zetterstromk on 3/14/16.
+     * An entry in the task pool. It holds on to the future from
+     * the executor as well as the token of that execution so the
+     * task can be asked to stop before it is interrupted.
      */
-    private static final class NamedThreadFactory implements ThreadFactory {
+    private static final class TaskPoolEntry {
 
         @NonNull
-        private final String mThreadName;
+        final BaseTaskManager<?> mManager;
+        @NonNull
+        final BaseTask mTask;
+        @NonNull
+        final Future mFuture;
+        @NonNull
+        final CancellationToken mCancellationToken;
+        final long mGracePeriodMillis;
+        // The future is shared with the other tasks of a batch, so it's only cancelled together with them
+        final boolean mIsBatched;
+        // Submission order. This is the order the manager's own pool and a shared executor lane
+        // start the manager's tasks in, but not necessarily that of an executor from the builder.
+        final long mSequence = sSubmitSequence.incrementAndGet();
+        // Set from SystemClock.elapsedRealtime() once an executor thread picks the task up
+        volatile long mStartedAtMillis;
+
+        TaskPoolEntry(@NonNull BaseTaskManager<?> manager,
+                      @NonNull BaseTask task,
+                      @NonNull Future future,
+                      @NonNull CancellationToken cancellationToken,
+                      long gracePeriodMillis,
+                      boolean isBatched) {
+            mManager = manager;
+            mTask = task;
+            mFuture = future;
+            mCancellationToken = cancellationToken;
+            mGracePeriodMillis = gracePeriodMillis;
+            mIsBatched = isBatched;
+        }
 
-        public NamedThreadFactory(@NonNull String name) {
-            mThreadName = name;
+        /**
+         * @return true if the task is waiting in the executor's queue.
+         */
+        boolean isQueued() {
+            return mStartedAtMillis == 0 && !mFuture.isDone();
         }
 
-        @Override
-        public Thread newThread(@NonNull Runnable runnable) {
-            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
-            thread.setName(mThreadName);
-            return thread;
+        /**
+         * @return true if an executor thread is running the task.
+         */
+        boolean isExecuting() {
+            return mStartedAtMillis != 0 && !mFuture.isDone();
+        }
+
+        /**
+         * Lets the owning manager's cache know that the task is no
+         * longer dispatched. Must be called after the entry has been
+         * removed from the pool.
+         */
+        void release() {
+            mManager.mTaskCache.setDispatched(mTask.getId(), false);
+        }
+
+        /**
+         * Stops the task right away without a grace period. The thread of a
+         * batch is shared, so the other tasks of the batch are paused and
+         * run again once it has returned. Must be called after the entry
+         * has been removed from the pool.
+         *
+         * @return false if the task had already been asked to stop.
+         */
+        boolean interrupt(@NonNull CancellationToken.Reason reason) {
+            if (!mCancellationToken.cancel(reason)) {
+                return false;
+            }
+            if (mIsBatched) {
+                mManager.pauseBatch(mFuture);
+            }
+            // Interrupts the executor thread if it's running the task or the batch
+            mFuture.cancel(true);
+            return true;
+        }
+
+        /**
+         * Asks the task to stop. If it hasn't started yet or there is no grace
+         * period, the future is cancelled right away. Otherwise the thread is
+         * only interrupted if the task is still running after the grace period.
+         */
+        void stop(@NonNull CancellationToken.Reason reason) {
+            if (!mCancellationToken.cancel(reason)) {
+                // Already stopping
+                return;
+            }
+            if (mIsBatched) {
+                // The rest of the batch keeps running, a batch that hasn't started yet skips this task
+                return;
+            }
+            if (mGracePeriodMillis <= 0 || !mTask.isRunning()) {
+                mFuture.cancel(true);
+                return;
+            }
+            BroadcastHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    // No-op if the task already returned
+                    mFuture.cancel(true);
+                }
+            }, mGracePeriodMillis);
         }
     }
     // </editor-fold>
@@ -213,15 +590,70 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
 
     // ---- Executor Service ----
     private final ExecutorService mCachedExecutorService;
-    // Could be Future<Object> if there is value in a return object
-    private final static ConcurrentHashMap<String, Future> sTaskPool = new ConcurrentHashMap<>();
+    // False if the executor was handed to the builder, it isn't shut down with the manager then
+    private final boolean mOwnsExecutorService;
+    private final static ConcurrentHashMap<String, TaskPoolEntry> sTaskPool = new ConcurrentHashMap<>();
+    private final static AtomicLong sSubmitSequence = new AtomicLong();
 
     private final boolean mStartOnDeviceBoot;
     private final int mMaxActiveTasks;
+    private final long mCancellationGracePeriodMillis;
+    private final long mTaskTimeoutMillis;
+    private final long mStallTimeoutMillis;
+
+    // ---- Rate Limiting ----
+    @Nullable
+    private final RateLimiter mRateLimiter;
+    @NonNull
+    private final Map<Class<? extends T>, RateLimiter> mTaskClassRateLimiters;
+    @Nullable
+    private final RateLimiter mBandwidthLimiter;
+    // Only one deferred dispatch is ever scheduled, it will start everything that has a permit by then
+    private final AtomicBoolean mIsDispatchScheduled = new AtomicBoolean();
+
+    // ---- Batching ----
+    private final int mMaxBatchSize;
+    private final long mBatchLingerMillis;
+    // Batches that are still collecting tasks, guarded by mStartTaskLock
+    @NonNull
+    private final Map<String, Batch> mOpenBatches = new HashMap<>();
+
+    // ---- Queue Estimates ----
+    // Weight given to the latest execution time in the moving average
+    private static final double DURATION_SMOOTHING_FACTOR = 0.2;
+    // Exponential moving average of recent execution times, -1 until a task has finished
+    private volatile long mAverageTaskDurationMillis = -1;
+    private final Object mDurationLock = new Object();
 
     // ---- TaskCache ----
     @NonNull
     protected final TaskCache<T> mTaskCache;
+    // Handles of the tasks that aren't done yet, by task id
+    @NonNull
+    private final ConcurrentHashMap<String, TaskHandle<T>> mTaskHandles = new ConcurrentHashMap<>();
+
+    // ---- Progress Coalescing ----
+    private final long mProgressIntervalMillis;
+    // The progress of the tasks that have reported any, by task id. Removed once the task is done.
+    @NonNull
+    private final ConcurrentHashMap<String, ProgressState> mProgressStates = new ConcurrentHashMap<>();
+    // The states with progress that hasn't been delivered yet
+    @NonNull
+    private final ConcurrentLinkedQueue<ProgressState> mPendingProgressStates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mIsProgressFlushScheduled = new AtomicBoolean();
+    // Only accessed on the main thread
+    private long mLastProgressFlushMillis;
+    // The weighted progress of the tasks since the queue was last empty
+    @NonNull
+    private final AggregateProgress mAggregateProgress = new AggregateProgress();
+    // Reads the progress when it's called, so the listeners always end on the latest one
+    private final ListenerList.Call<ManagerEventListener> mAggregateProgressCall =
+            new ListenerList.Call<ManagerEventListener>() {
+                @Override
+                public void call(@NonNull ManagerEventListener listener) {
+                    listener.onAggregateProgress(mAggregateProgress.getProgress());
+                }
+            };
 
     // ---- Context ----
     @NonNull
@@ -230,7 +662,18 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
     // ---- Manager State ----
     private boolean mIsPaused;
     // If the task pool is in the process of resuming (we don't want to resume twice)
-    private volatile boolean isResuming;
+    private final AtomicBoolean mIsResuming = new AtomicBoolean();
+    // Guards the check-then-submit in startTask
+    private final Object mStartTaskLock = new Object();
+    // Set once drain or shutdown is called, no tasks are started after that
+    private volatile boolean mIsShutdown;
+    // The number of tasks an executor thread is running, guarded by mExecutionLock
+    private int mExecutingCount;
+    private final Object mExecutionLock = new Object();
+    // How long a drain waits for queued database writes
+    private static final long FLUSH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    // How long a drain waits for tasks to return once they have been interrupted
+    private static final long INTERRUPT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(1);
 
     @NonNull
     protected final TaskPreferences mTaskPreferences;
@@ -240,6 +683,8 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
     // <editor-fold desc="Builder Fields">
     @NonNull
     private final Conditions mConditions;
+    @NonNull
+    private final Map<String, Conditions> mTaskConditions;
 
     // This could also do it by broadcast and have the app's receiver decide where to go 2/9/16 [KV]
     @Nullable
@@ -282,10 +727,18 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         // context of the process. Since the Service and App are in the same process, this shouldn't
         // be an issue.
         mContext = builder.mBuilderContext.getApplicationContext();
-        mConditions = builder.mBuilderConditions;
         mNotificationIntent = builder.mBuilderNotificationIntent;
         mStartOnDeviceBoot = builder.mBuilderStartOnDeviceBoot;
         mMaxActiveTasks = builder.mMaxActiveTasks;
+        mCancellationGracePeriodMillis = builder.mCancellationGracePeriodMillis;
+        mTaskTimeoutMillis = builder.mTaskTimeoutMillis;
+        mStallTimeoutMillis = builder.mStallTimeoutMillis;
+        mMaxBatchSize = builder.mMaxBatchSize;
+        mBatchLingerMillis = builder.mBatchLingerMillis;
+        mRateLimiter = builder.mRateLimiter;
+        mTaskClassRateLimiters = new HashMap<>(builder.mTaskClassRateLimiters);
+        mBandwidthLimiter = builder.mBandwidthLimiter;
+        mProgressIntervalMillis = builder.mProgressIntervalMillis;
         Serializer<T> serializer = builder.mSerializer;
 
         if (serializer == null) {
@@ -294,17 +747,41 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
 
         // Needs to be initialized with the manager name so that this instance is manager-specific
         mTaskPreferences = new TaskPreferences(mContext, taskName);
-        if (mConditions instanceof NetworkConditionsExtended) {
-            // If we're using the default network util, provide it with the manager-specific preferences
-            ((NetworkConditionsExtended) mConditions).setTaskPreferences(mTaskPreferences);
-        }
+        mConditions = prepareConditions(builder.mBuilderConditions, builder);
         mConditions.setListener(this);
+        mTaskConditions = new HashMap<>();
+        for (Map.Entry<String, Conditions> entry : builder.mTaskConditions.entrySet()) {
+            Conditions taskConditions = prepareConditions(entry.getValue(), builder);
+            taskConditions.setListener(new TaskConditionsListener(entry.getKey()));
+            mTaskConditions.put(entry.getKey(), taskConditions);
+        }
         mIsPaused = mTaskPreferences.isPaused();
 
         // ---- Executor Service ----
-        // Fixed pool holds exactly n threads. It will enqueue the remaining jobs handed to it.
-        ThreadFactory namedThreadFactory = new NamedThreadFactory(taskName);
-        mCachedExecutorService = Executors.newFixedThreadPool(mMaxActiveTasks, namedThreadFactory);
+        mOwnsExecutorService = builder.mExecutorService == null;
+        if (builder.mExecutorService != null) {
+            mCachedExecutorService = builder.mExecutorService;
+        } else if (builder.mSharedExecutor != null) {
+            // The shared executor's lane enqueues everything, at most n of which run at once
+            mCachedExecutorService = builder.mSharedExecutor.newLane(taskName, builder.mSharedExecutorWeight,
+                                                                     builder.mSharedExecutorMinThreads,
+                                                                     mMaxActiveTasks);
+        } else {
+            ThreadFactory threadFactory = builder.mThreadFactory;
+            if (threadFactory == null) {
+                threadFactory = new TaskThreadFactory(taskName, builder.mThreadPriority);
+            }
+            // Fixed pool holds at most n threads. It will enqueue the remaining jobs handed to it.
+            ThreadPoolExecutor threadPoolExecutor =
+                    new ThreadPoolExecutor(mMaxActiveTasks, mMaxActiveTasks, builder.mThreadIdleTimeoutMillis,
+                                           TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                                           threadFactory);
+            if (builder.mThreadIdleTimeoutMillis > 0) {
+                // Lets an idle manager give all of its threads back
+                threadPoolExecutor.allowCoreThreadTimeOut(true);
+            }
+            mCachedExecutorService = threadPoolExecutor;
+        }
 
         // ---- Persistence ----
         // Synchronous load from SQLite. Not very performant but required for simplified in-memory cache
@@ -366,16 +843,31 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
     private final TaskStateListener<T> mTaskListener = new TaskStateListener<T>(getTaskClass()) {
         @Override
         void onTaskStarted(@NonNull T task) {
-            broadcastTaskEvent(task, TaskConstants.EVENT_STARTED);
+            synchronized (mExecutionLock) {
+                mExecutingCount++;
+            }
+            TaskPoolEntry taskPoolEntry = sTaskPool.get(task.getId());
+            if (taskPoolEntry != null && taskPoolEntry.mTask == task) {
+                taskPoolEntry.mStartedAtMillis = SystemClock.elapsedRealtime();
+                TaskWatchdog.getInstance().watch(task, taskPoolEntry.mCancellationToken,
+                                                 getTimeoutMillis(task.getTimeoutMillis(), mTaskTimeoutMillis),
+                                                 getTimeoutMillis(task.getStallTimeoutMillis(),
+                                                                  mStallTimeoutMillis),
+                                                 mWatchdogListener);
+            }
+            broadcastTaskEvent(task, TaskEventType.STARTED);
         }
 
         @Override
         void onTaskRetry(@NonNull T task) {
-            broadcastTaskEvent(task, TaskConstants.EVENT_RETRY);
+            broadcastTaskEvent(task, TaskEventType.RETRY);
         }
 
         @Override
         public void onTaskStateChange(@NonNull T task) {
+            if (isAbandoned(task)) {
+                return;
+            }
             mTaskCache.upsert(task);
             // After a retry, lets make sure the service is running
             serviceCleanup(false);
@@ -383,12 +875,17 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
 
         @Override
         public void onTaskCompleted(@NonNull T task) {
+            if (isAbandoned(task)) {
+                // The task finished during its grace period but has already been
+                // removed, don't write it back to the cache.
+                return;
+            }
             logSuccess(task);
             mTaskCache.upsert(task);
 
             // Just remove from the task pool. We're currently executing in that thread.
-            sTaskPool.remove(task.getId());
-            broadcastTaskEvent(task, TaskConstants.EVENT_SUCCESS);
+            recordExecutionTime(removeFromPool(task.getId()));
+            broadcastTaskEvent(task, TaskEventType.SUCCESS);
             serviceCleanup(true);
         }
 
@@ -405,15 +902,106 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
                 // task is in error.
                 return;
             }
+            if (isAbandoned(task)) {
+                return;
+            }
             logFailure(task, taskError);
             mTaskCache.upsert(task);
 
             // Just remove from the task pool. We're currently executing in that thread.
-            sTaskPool.remove(task.getId());
+            recordExecutionTime(removeFromPool(task.getId()));
+            broadcastTaskFailureEvent(task, taskError);
+            serviceCleanup(false);
+        }
+
+        @Override
+        void onTaskExecutionFinished(@NonNull T task, @NonNull CancellationToken cancellationToken) {
+            TaskWatchdog.getInstance().unwatch(cancellationToken);
+            synchronized (mExecutionLock) {
+                mExecutingCount--;
+                // Wakes up a drain waiting for the running tasks
+                mExecutionLock.notifyAll();
+            }
+            CancellationToken.Reason reason = cancellationToken.getReason();
+            if (reason != CancellationToken.Reason.PAUSE && reason != CancellationToken.Reason.TIMEOUT &&
+                reason != CancellationToken.Reason.STALL) {
+                return;
+            }
+            // A resume skips tasks that are still winding down from a pause, and so does a retry
+            // of a task that timed out, so pick this one up now that it has returned if it should
+            // run and we're allowed to run again.
+            if (task.shouldRun() && !mIsPaused && areDeviceConditionsMet() && areTaskConditionsMet(task) &&
+                mTaskCache.containsTask(task.getId())) {
+                startTask(task, true);
+            }
+        }
+    };
+
+    /**
+     * @return true if the manager has given up on the current execution of the
+     * task because it was cancelled or timed out, so its results are ignored.
+     */
+    private static boolean isAbandoned(@NonNull BaseTask task) {
+        CancellationToken.Reason reason = task.getCancellationToken().getReason();
+        return reason != null && reason != CancellationToken.Reason.PAUSE;
+    }
+
+    private final TaskWatchdog.Listener mWatchdogListener = new TaskWatchdog.Listener() {
+        @Override
+        public void onTimeout(@NonNull BaseTask timedOutTask,
+                              @NonNull CancellationToken cancellationToken,
+                              @NonNull CancellationToken.Reason reason) {
+            T task = mTaskCache.get(timedOutTask.getId());
+            TaskPoolEntry taskPoolEntry = sTaskPool.get(timedOutTask.getId());
+            if (task == null || taskPoolEntry == null || taskPoolEntry.mCancellationToken != cancellationToken ||
+                !sTaskPool.remove(task.getId(), taskPoolEntry)) {
+                // That execution has already left the pool
+                return;
+            }
+            taskPoolEntry.release();
+            if (!taskPoolEntry.interrupt(reason)) {
+                // It was paused or cancelled in the meantime
+                return;
+            }
+            TaskError taskError;
+            if (reason == CancellationToken.Reason.STALL) {
+                taskError = new TaskError(TaskError.DOMAIN_TURNSTILE, TaskError.CODE_STALLED,
+                                          "Task stopped reporting progress");
+            } else {
+                taskError = new TaskError(TaskError.DOMAIN_TURNSTILE, TaskError.CODE_TIMEOUT,
+                                          "Task ran past its timeout");
+            }
+            task.setTaskError(taskError);
+            task.setState(BaseTask.TaskState.ERROR);
+            logFailure(task, taskError);
+            mTaskCache.upsert(task);
             broadcastTaskFailureEvent(task, taskError);
             serviceCleanup(false);
         }
     };
+
+    private static long getTimeoutMillis(long taskTimeoutMillis, long defaultTimeoutMillis) {
+        if (taskTimeoutMillis == 0) {
+            return defaultTimeoutMillis;
+        }
+        return Math.max(0, taskTimeoutMillis);
+    }
+
+    private void recordExecutionTime(@Nullable TaskPoolEntry taskPoolEntry) {
+        if (taskPoolEntry == null || taskPoolEntry.mStartedAtMillis == 0) {
+            return;
+        }
+        long durationMillis = SystemClock.elapsedRealtime() - taskPoolEntry.mStartedAtMillis;
+        synchronized (mDurationLock) {
+            long averageMillis = mAverageTaskDurationMillis;
+            if (averageMillis < 0) {
+                mAverageTaskDurationMillis = durationMillis;
+            } else {
+                mAverageTaskDurationMillis = averageMillis +
+                                             Math.round(DURATION_SMOOTHING_FACTOR * (durationMillis - averageMillis));
+            }
+        }
+    }
     // </editor-fold>
 
     // -----------------------------------------------------------------------------------------------------
@@ -469,7 +1057,7 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
      */
     public boolean tasksRemaining() {
         // If there are tasks in the cache that `shouldRun()`
-        return !mTaskCache.getTasksToRun().isEmpty();
+        return mTaskCache.hasTasksToRun();
     }
 
     /**
@@ -503,14 +1091,145 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
      * @return true if the task is queued, false otherwise.
      */
     public boolean isQueued(@NonNull String taskId) {
-        if (sTaskPool.size() > mMaxActiveTasks && isInTaskPool(taskId)) {
-            T task = mTaskCache.get(taskId);
-            Future future = sTaskPool.get(taskId);
-            if (task != null && future != null) {
-                return !isExecuting(taskId) && !future.isDone() && !future.isCancelled() && task.isReady();
+        return getQueuedEntry(taskId) != null;
+    }
+
+    /**
+     * Gets the position of a task in this manager's queue,
+     * where 1 means the task will start as soon as a thread
+     * is available.
+     * <p/>
+     * The position is taken from the order the tasks were handed
+     * to the executor. That is the order they start in for the
+     * manager's own pool and for a {@link SharedTaskExecutor} lane,
+     * which are both first in, first out. An executor passed to
+     * {@link Builder#withExecutorService(ExecutorService)} may start
+     * them in another order. Other managers on a shared executor and
+     * the helpers of a {@link SubTaskGroup} can take a thread first,
+     * so the position is the order rather than a promise of when.
+     *
+     * @param taskId the id of the task to check.
+     * @return the 1-based position of the task, or -1 if the
+     * task isn't queued (it is executing, finished or unknown).
+     */
+    public int getQueuePosition(@NonNull String taskId) {
+        int tasksAhead = getTasksAheadCount(taskId);
+        return tasksAhead < 0 ? -1 : tasksAhead + 1;
+    }
+
+    /**
+     * Gets the number of tasks that will start before the provided
+     * task. Tasks that are already executing aren't counted and
+     * the tasks of a batch start together, so a batch counts once.
+     * See {@link #getQueuePosition(String)} for how the order is
+     * determined.
+     *
+     * @param taskId the id of the task to check.
+     * @return the number of queued tasks ahead of this one, or -1
+     * if the task isn't queued.
+     */
+    public int getTasksAheadCount(@NonNull String taskId) {
+        TaskPoolEntry queuedEntry = getQueuedEntry(taskId);
+        if (queuedEntry == null) {
+            return -1;
+        }
+        int tasksAhead = 0;
+        Set<Future> batchesAhead = new HashSet<>();
+        for (TaskPoolEntry taskPoolEntry : sTaskPool.values()) {
+            if (isAhead(taskPoolEntry, queuedEntry) && isFirstOfBatch(taskPoolEntry, batchesAhead)) {
+                tasksAhead++;
             }
         }
-        return false;
+        return tasksAhead;
+    }
+
+    /**
+     * Estimates how long it will be until the provided task starts
+     * executing. The estimate is based on a moving average of how
+     * long this manager's recent tasks took to execute, how long
+     * the executing tasks have been running for, and how many
+     * tasks are ahead of this one. It assumes that this manager
+     * has all of its threads to itself, see {@link #getQueuePosition(String)}.
+     *
+     * @param taskId the id of the task to check.
+     * @return the estimated time in milliseconds, 0 if the task
+     * is executing, or -1 if the task isn't queued or no task has
+     * finished yet so there is nothing to base the estimate on.
+     */
+    public long getEstimatedStartDelayMillis(@NonNull String taskId) {
+        TaskPoolEntry queuedEntry = getQueuedEntry(taskId);
+        if (queuedEntry == null) {
+            TaskPoolEntry taskPoolEntry = sTaskPool.get(taskId);
+            return taskPoolEntry != null && taskPoolEntry.mManager == this && taskPoolEntry.isExecuting() ? 0 : -1;
+        }
+        long averageMillis = mAverageTaskDurationMillis;
+        if (averageMillis < 0) {
+            return -1;
+        }
+        long nowMillis = SystemClock.elapsedRealtime();
+        // The time from now until each thread is free again
+        PriorityQueue<Long> threadsFreeInMillis = new PriorityQueue<>(mMaxActiveTasks);
+        int tasksAhead = 0;
+        // A batch runs on a single thread
+        Set<Future> batchesSeen = new HashSet<>();
+        for (TaskPoolEntry taskPoolEntry : sTaskPool.values()) {
+            if (taskPoolEntry.mManager != this) {
+                continue;
+            }
+            long startedAtMillis = taskPoolEntry.mStartedAtMillis;
+            if (taskPoolEntry.isExecuting()) {
+                if (isFirstOfBatch(taskPoolEntry, batchesSeen)) {
+                    threadsFreeInMillis.add(Math.max(0, averageMillis - (nowMillis - startedAtMillis)));
+                }
+            } else if (isAhead(taskPoolEntry, queuedEntry) && isFirstOfBatch(taskPoolEntry, batchesSeen)) {
+                tasksAhead++;
+            }
+        }
+        while (threadsFreeInMillis.size() > mMaxActiveTasks) {
+            // Only possible while a finishing task is being replaced, the soonest one is already done
+            threadsFreeInMillis.poll();
+        }
+        while (threadsFreeInMillis.size() < mMaxActiveTasks) {
+            threadsFreeInMillis.add(0L);
+        }
+        // Hand each task ahead of this one to whichever thread frees up first
+        for (int i = 0; i < tasksAhead; i++) {
+            threadsFreeInMillis.add(threadsFreeInMillis.poll() + averageMillis);
+        }
+        return threadsFreeInMillis.peek();
+    }
+
+    /**
+     * @return the moving average of how long this manager's tasks
+     * have recently taken to execute in milliseconds, or -1 if no
+     * task has finished yet.
+     */
+    public long getAverageTaskDurationMillis() {
+        return mAverageTaskDurationMillis;
+    }
+
+    @Nullable
+    private TaskPoolEntry getQueuedEntry(@NonNull String taskId) {
+        TaskPoolEntry taskPoolEntry = sTaskPool.get(taskId);
+        if (taskPoolEntry == null || taskPoolEntry.mManager != this || !taskPoolEntry.isQueued()) {
+            return null;
+        }
+        return taskPoolEntry;
+    }
+
+    private boolean isAhead(@NonNull TaskPoolEntry taskPoolEntry, @NonNull TaskPoolEntry queuedEntry) {
+        return taskPoolEntry.mManager == this &&
+               taskPoolEntry.mSequence < queuedEntry.mSequence &&
+               // The rest of its own batch starts together with it
+               taskPoolEntry.mFuture != queuedEntry.mFuture &&
+               taskPoolEntry.isQueued();
+    }
+
+    /**
+     * @return false if another task of the same batch was already seen.
+     */
+    private static boolean isFirstOfBatch(@NonNull TaskPoolEntry taskPoolEntry, @NonNull Set<Future> batchesSeen) {
+        return !taskPoolEntry.mIsBatched || batchesSeen.add(taskPoolEntry.mFuture);
     }
 
     // </editor-fold>
@@ -528,9 +1247,11 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
      * use {@link #addTask(BaseTask, TaskCallback)}
      *
      * @param task the task to add to the manager
+     * @return a handle to wait for the task or observe it.
      */
-    public void addTask(@NonNull T task) {
-        addTask(task, null);
+    @NonNull
+    public TaskHandle<T> addTask(@NonNull T task) {
+        return addTask(task, null);
     }
 
     /**
@@ -542,19 +1263,80 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
      * @param callback the callback to receive notification
      *                 of success and error when inserting the
      *                 task into the {@link TaskCache}.
+     * @return a handle to wait for the task or observe it. If a task with
+     * the same id was already added, this is the handle of that task. If
+     * the manager didn't take the task, the handle has already failed
+     * with {@link TaskError#CODE_REJECTED}.
      */
-    public void addTask(@NonNull T task, @Nullable TaskCallback callback) {
-        if (!mTaskCache.containsTask(task.getId())) {
-            if (mTaskCache.insert(task, callback)) {
-                broadcastTaskEvent(task, TaskConstants.EVENT_ADDED);
-                // Starts task execution
+    @NonNull
+    public TaskHandle<T> addTask(@NonNull T task, @Nullable TaskCallback callback) {
+        if (mIsShutdown) {
+            TaskLogger.getLogger().e("Task added to a manager that has been shut down");
+            if (callback != null) {
+                callback.onFailure(new Exception("Manager has been shut down"));
+            }
+            return rejectedTaskHandle(task, "Manager has been shut down");
+        }
+        if (!mTaskCache.containsTask(task.getId())) {
+            // The handle goes into the index first so that it can't miss any event
+            TaskHandle<T> taskHandle = new TaskHandle<>(task, this);
+            mTaskHandles.put(task.getId(), taskHandle);
+            if (mTaskCache.insert(task, callback)) {
+                broadcastTaskEvent(task, TaskEventType.ADDED);
+                // Starts task execution
                 startTask(task, false);
+                return taskHandle;
             }
+            mTaskHandles.remove(task.getId(), taskHandle);
+            return rejectedTaskHandle(task, "Task has no ID");
         } else {
             if (callback != null) {
                 callback.onFailure(new Exception("Task already added to database"));
             }
+            TaskHandle<T> taskHandle = getTaskHandle(task.getId());
+            return taskHandle != null ? taskHandle : rejectedTaskHandle(task, "Task already added to database");
+        }
+    }
+
+    /**
+     * Gets a handle to a task that is in the manager, e.g. one that was
+     * added before the app was restarted, or to the next attempt of a
+     * task whose earlier handle failed. The handle of a task that has
+     * already succeeded or failed is done right away.
+     *
+     * @param taskId the id of the task.
+     * @return the handle, or null if the manager doesn't have the task.
+     */
+    @Nullable
+    public TaskHandle<T> getTaskHandle(@NonNull String taskId) {
+        TaskHandle<T> taskHandle = mTaskHandles.get(taskId);
+        if (taskHandle != null) {
+            return taskHandle;
+        }
+        T task = mTaskCache.get(taskId);
+        if (task == null) {
+            return null;
+        }
+        taskHandle = new TaskHandle<>(task, this);
+        if (task.isComplete()) {
+            taskHandle.onSuccess();
+            return taskHandle;
         }
+        if (task.isError() && !isInTaskPool(taskId)) {
+            TaskError taskError = task.getTaskError();
+            taskHandle.onFailure(taskError != null ? taskError :
+                                 new TaskError(TaskError.DOMAIN_TURNSTILE, 0, "Task failed"));
+            return taskHandle;
+        }
+        TaskHandle<T> existingHandle = mTaskHandles.putIfAbsent(taskId, taskHandle);
+        return existingHandle != null ? existingHandle : taskHandle;
+    }
+
+    @NonNull
+    private TaskHandle<T> rejectedTaskHandle(@NonNull T task, @NonNull String message) {
+        TaskHandle<T> taskHandle = new TaskHandle<>(task, null);
+        taskHandle.onFailure(new TaskError(TaskError.DOMAIN_TURNSTILE, TaskError.CODE_REJECTED, message));
+        return taskHandle;
     }
 
     // Eventually with failure states we can call this with isResume = false to start over
@@ -563,36 +1345,238 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
             TaskLogger.getLogger().e("Task with an empty ID passed to startTask. Will not add it.");
             return;
         }
+        if (mIsShutdown) {
+            // The task stays persisted and is picked up by the next manager
+            return;
+        }
 
         // We set the context on the task
         task.setContext(mContext);
         task.setStateListener(mTaskListener);
-        task.setConditions(mConditions);
+        task.setConditions(getConditionsFor(task));
+        task.setBandwidthLimiter(mBandwidthLimiter);
+        task.setSubTaskExecutor(mCachedExecutorService);
 
         // Only kick off the task if there is internet (and it's not paused)
         // If no network, it's persisted elsewhere so this won't effect it starting later
-        // We also don't want to re-add a task if it's already in the queue (since overwriting the value
-        // in the hashmap won't cancel the task that's running. This way we should never be able to have
-        // two of the same task running at once)
-        if ((!mIsPaused && areDeviceConditionsMet()) && !sTaskPool.containsKey(task.getId())) {
-            task.setIsRetry(isResume);
-            Future taskFuture = mCachedExecutorService.submit(task);
-            sTaskPool.put(task.getId(), taskFuture);
-            // Let's ensure the service is running - it's okay to call this method excessively 2/29/16 [KV]
-            startService();
-        } else {
+        if (mIsPaused || !areDeviceConditionsMet()) {
             // The manager is suspended for one of the above cases in the `if`. Broadcast out the fact that
             // we can't actually add this task 3/1/16 [KV]
             broadcastIsManagerSuspended();
+            return;
+        }
+        if (!areTaskConditionsMet(task)) {
+            // The task stays pending and is started once its own conditions return
+            return;
+        }
+        // We also don't want to re-add a task if it's already in the queue (since overwriting the value
+        // in the hashmap won't cancel the task that's running. This way we should never be able to have
+        // two of the same task running at once). The check and the submit happen under one lock since a
+        // resume and a task that finished stopping can both try to start the same task.
+        synchronized (mStartTaskLock) {
+            if (mIsShutdown || sTaskPool.containsKey(task.getId()) || task.isRunning()) {
+                return;
+            }
+            long rateLimitDelayMillis = acquireStartPermit(task);
+            if (rateLimitDelayMillis > 0) {
+                // The task stays in the cache as a task to run, the deferred dispatch will pick it up
+                // once a permit is available. This way we never park an executor thread in a sleep.
+                // The service is still started below, so the process lives until the dispatch runs.
+                scheduleDeferredDispatch(rateLimitDelayMillis);
+            } else {
+                task.setIsRetry(isResume);
+                // Each execution gets a fresh token, a stopped execution keeps its cancelled one
+                CancellationToken cancellationToken = new CancellationToken();
+                task.setCancellationToken(cancellationToken);
+                if (mMaxBatchSize > 1 && task instanceof BatchableTask) {
+                    if (!addToBatch(task, cancellationToken)) {
+                        // The batch was opened by an earlier task, which already started the service
+                        return;
+                    }
+                } else {
+                    Future taskFuture = mCachedExecutorService.submit(task);
+                    sTaskPool.put(task.getId(),
+                                  new TaskPoolEntry(this, task, taskFuture, cancellationToken,
+                                                    mCancellationGracePeriodMillis, false));
+                    mTaskCache.setDispatched(task.getId(), true);
+                }
+            }
+        }
+        // Let's ensure the service is running - it's okay to call this method excessively 2/29/16 [KV]
+        startService();
+    }
+
+    /**
+     * A group of {@link BatchableTask}s with the same batch key that
+     * run together on one executor thread. All of the tasks share
+     * the batch's future in the task pool.
+     */
+    private final class Batch implements Runnable {
+
+        @NonNull
+        final String mBatchKey;
+        // Guarded by mStartTaskLock
+        @NonNull
+        final List<T> mTasks = new ArrayList<>();
+        boolean mIsDispatched;
+        @NonNull
+        final FutureTask<Void> mFuture = new FutureTask<>(this, null);
+
+        Batch(@NonNull String batchKey) {
+            mBatchKey = batchKey;
+        }
+
+        @Override
+        public void run() {
+            runBatch(this);
+        }
+    }
+
+    /**
+     * Adds the task to the open batch for its key, opening a new batch if
+     * there isn't one. Must be called while holding {@link #mStartTaskLock}.
+     *
+     * @return true if a new batch was opened for the task.
+     */
+    private boolean addToBatch(@NonNull T task, @NonNull CancellationToken cancellationToken) {
+        String batchKey = ((BatchableTask<?>) task).getBatchKey();
+        Batch batch = mOpenBatches.get(batchKey);
+        boolean isNewBatch = batch == null;
+        if (isNewBatch) {
+            batch = new Batch(batchKey);
+            mOpenBatches.put(batchKey, batch);
+            final Batch lingeringBatch = batch;
+            BroadcastHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mStartTaskLock) {
+                        // No-op if the batch filled up in the meantime
+                        dispatchBatch(lingeringBatch);
+                    }
+                }
+            }, mBatchLingerMillis);
+        }
+        for (Iterator<T> iterator = batch.mTasks.iterator(); iterator.hasNext(); ) {
+            if (task.getId().equals(iterator.next().getId())) {
+                // Paused and resumed while the batch was still open, it must only run once
+                iterator.remove();
+            }
+        }
+        batch.mTasks.add(task);
+        sTaskPool.put(task.getId(), new TaskPoolEntry(this, task, batch.mFuture, cancellationToken,
+                                                      mCancellationGracePeriodMillis, true));
+        mTaskCache.setDispatched(task.getId(), true);
+        if (batch.mTasks.size() >= mMaxBatchSize) {
+            dispatchBatch(batch);
+        }
+        return isNewBatch;
+    }
+
+    /**
+     * Hands the batch to the executor. Must be called while holding {@link #mStartTaskLock}.
+     */
+    private void dispatchBatch(@NonNull Batch batch) {
+        if (batch.mIsDispatched) {
+            return;
+        }
+        batch.mIsDispatched = true;
+        if (mOpenBatches.get(batch.mBatchKey) == batch) {
+            mOpenBatches.remove(batch.mBatchKey);
+        }
+        mCachedExecutorService.execute(batch.mFuture);
+    }
+
+    private void runBatch(@NonNull Batch batch) {
+        List<T> tasks;
+        synchronized (mStartTaskLock) {
+            tasks = new ArrayList<>(batch.mTasks);
+        }
+        BatchableTask.runBatch(tasks);
+        // Tasks that reported a result, were cancelled or were paused have left the pool already.
+        // Release the ones the batch didn't report on so that they run again.
+        for (T task : tasks) {
+            TaskPoolEntry taskPoolEntry = sTaskPool.get(task.getId());
+            if (taskPoolEntry != null && taskPoolEntry.mFuture == batch.mFuture &&
+                sTaskPool.remove(task.getId(), taskPoolEntry)) {
+                TaskLogger.getLogger().d("Batch didn't report a result for task " + task.getId());
+                taskPoolEntry.release();
+            }
         }
     }
 
+    /**
+     * Acquires the permits needed to start the provided task from the
+     * manager-wide and the task class rate limiters.
+     *
+     * @return 0 if the task may start now, otherwise the time in
+     * milliseconds until the permits should be available.
+     */
+    private long acquireStartPermit(@NonNull T task) {
+        RateLimiter classRateLimiter = getTaskClassRateLimiter(task);
+        if (mRateLimiter == null && classRateLimiter == null) {
+            return 0;
+        }
+        // Check both before acquiring from either so that we don't use up a permit we can't use
+        long delayMillis = Math.max(mRateLimiter != null ? mRateLimiter.getDelayMillis(1) : 0,
+                                    classRateLimiter != null ? classRateLimiter.getDelayMillis(1) : 0);
+        if (delayMillis > 0) {
+            return delayMillis;
+        }
+        if (classRateLimiter != null && !classRateLimiter.tryAcquire()) {
+            return Math.max(1, classRateLimiter.getDelayMillis(1));
+        }
+        if (mRateLimiter != null && !mRateLimiter.tryAcquire()) {
+            if (classRateLimiter != null) {
+                // The limiter may be shared and was drained in between, give the class permit back
+                classRateLimiter.release(1);
+            }
+            return Math.max(1, mRateLimiter.getDelayMillis(1));
+        }
+        return 0;
+    }
+
+    @Nullable
+    private RateLimiter getTaskClassRateLimiter(@NonNull T task) {
+        if (mTaskClassRateLimiters.isEmpty()) {
+            return null;
+        }
+        // Walk up from the concrete class so that the most specific registration wins
+        for (Class<?> taskClass = task.getClass(); taskClass != null; taskClass = taskClass.getSuperclass()) {
+            RateLimiter rateLimiter = mTaskClassRateLimiters.get(taskClass);
+            if (rateLimiter != null) {
+                return rateLimiter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedules a single pass over the tasks that still need to run. This is
+     * used when tasks are held back by a {@link RateLimiter}.
+     */
+    private void scheduleDeferredDispatch(long delayMillis) {
+        if (mIsDispatchScheduled.compareAndSet(false, true)) {
+            BroadcastHandler.postDelayed(mDeferredDispatchRunnable, delayMillis);
+        }
+    }
+
+    private final Runnable mDeferredDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsDispatchScheduled.set(false);
+            if (!mIsPaused && areDeviceConditionsMet()) {
+                startTasksNotInPool();
+            }
+        }
+    };
+
     /**
      * Cancel the thread for that task and remove it from
-     * the local database. Note that the task won't be
-     * notified and will just be rudely interrupted, so
-     * if you need to do cleanup, you will need to do that
-     * manually.
+     * the local database. The task's {@link CancellationToken}
+     * is cancelled with {@link CancellationToken.Reason#CANCEL}
+     * and the thread is interrupted once the cancellation grace
+     * period has passed, so if you need to do cleanup, you will
+     * need to do that manually.
      */
     public void cancelTask(@NonNull String id) {
         T task = mTaskCache.get(id);
@@ -603,7 +1587,7 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         mTaskCache.remove(id);
         // Since we just cancelled a thread, let's check to see if it still has any left
         if (task != null) {
-            broadcastTaskEvent(task, TaskConstants.EVENT_CANCELLED);
+            broadcastTaskEvent(task, TaskEventType.CANCELED);
         }
         serviceCleanup(false);
     }
@@ -617,6 +1601,13 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
     public void cancelAll() {
         removeAllFromTaskPool();
         mTaskCache.removeAll();
+        mProgressStates.clear();
+        for (String taskId : mTaskHandles.keySet()) {
+            TaskHandle<T> taskHandle = mTaskHandles.remove(taskId);
+            if (taskHandle != null) {
+                taskHandle.onCanceled();
+            }
+        }
         serviceCleanup(false);
     }
 
@@ -631,10 +1622,19 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         T task = mTaskCache.get(taskId);
 
         if (task != null) {
-            broadcastTaskEvent(task, TaskConstants.EVENT_MANAGER_RETRY);
+            broadcastTaskEvent(task, TaskEventType.MANAGER_RETRY);
             TaskLogger.getLogger().d("Retrying task with id: " + taskId);
+            if (!task.isRunning()) {
+                // A timed out execution that has returned leaves its cancelled token behind, which
+                // would silence the change below. One that's still winding down keeps it until it
+                // returns, and is started again from onTaskExecutionFinished.
+                task.setCancellationToken(new CancellationToken());
+            }
             // Run the task again
             task.updateStateForRetry();
+            // A task loaded from the database has no state listener until it's started, so the
+            // change above doesn't reach the cache on its own and the task wouldn't count as one to run
+            mTaskCache.upsert(task);
             startTask(task, true);
         } else {
             // The task that we're trying to retry isn't in the local db. That shouldn't be possible
@@ -650,26 +1650,37 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
     // <editor-fold desc="Task Pool Management (pause/resume)">
 
     protected static void removeAllFromTaskPool() {
-        for (Future future : sTaskPool.values()) {
-            future.cancel(true);
+        for (String id : sTaskPool.keySet()) {
+            removeFromTaskPool(id);
         }
-        sTaskPool.clear();
     }
 
     protected static void removeFromTaskPool(@NonNull String id) {
-        if (sTaskPool.containsKey(id)) {
-            Future taskFuture = sTaskPool.get(id);
-            taskFuture.cancel(true);
-            sTaskPool.remove(id);
+        TaskPoolEntry taskPoolEntry = removeFromPool(id);
+        if (taskPoolEntry != null) {
+            taskPoolEntry.stop(CancellationToken.Reason.CANCEL);
         }
     }
 
+    /**
+     * Removes the entry from the task pool without stopping the task
+     * and marks it as no longer dispatched in its manager's cache.
+     */
+    @Nullable
+    private static TaskPoolEntry removeFromPool(@NonNull String id) {
+        TaskPoolEntry taskPoolEntry = sTaskPool.remove(id);
+        if (taskPoolEntry != null) {
+            taskPoolEntry.release();
+        }
+        return taskPoolEntry;
+    }
+
     @Deprecated
     public void userPauseAll() {
         mIsPaused = true;
         mTaskPreferences.setIsPaused(true);
         pauseAll();
-        broadcastManagerEvent(TaskConstants.EVENT_ALL_TASKS_PAUSED);
+        broadcastManagerEvent(ManagerEvent.ALL_TASKS_PAUSED);
     }
 
     @Deprecated
@@ -681,7 +1692,7 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         mIsPaused = false;
         mTaskPreferences.setIsPaused(false);
         if (resumeAll()) {
-            broadcastManagerEvent(TaskConstants.EVENT_ALL_TASKS_RESUMED);
+            broadcastManagerEvent(ManagerEvent.ALL_TASKS_RESUMED);
         }
     }
 
@@ -717,55 +1728,118 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
 
     private void pauseForConditions() {
         TaskLogger.getLogger().d("Pause for network");
-        broadcastManagerEvent(TaskConstants.EVENT_CONDITIONS_LOST);
+        broadcastManagerEvent(ManagerEvent.CONDITIONS_LOST);
         pauseAll();
     }
 
     private void resumeForConditions() {
         TaskLogger.getLogger().d("Resume for network");
         if (resumeAll()) {
-            broadcastManagerEvent(TaskConstants.EVENT_CONDITIONS_RETURNED);
+            broadcastManagerEvent(ManagerEvent.CONDITIONS_RETURNED);
         }
     }
 
     private void pauseAll() {
-        // Issues interrupts to all threads
-        for (Map.Entry<String,Future> entry : sTaskPool.entrySet()){
-            T task = getTask(entry.getKey());
-            if(task != null){
-                broadcastTaskEvent(task, TaskConstants.EVENT_PAUSED);
+        pauseTasks(null);
+    }
+
+    /**
+     * Asks this manager's tasks to stop, they'll be interrupted after the grace period.
+     * The pool is shared, so tasks belonging to other managers are left alone.
+     *
+     * @param conditionsName if not null, only the tasks that depend on the conditions
+     *                       with this name are paused.
+     */
+    private void pauseTasks(@Nullable String conditionsName) {
+        for (Map.Entry<String, TaskPoolEntry> entry : sTaskPool.entrySet()) {
+            TaskPoolEntry taskPoolEntry = entry.getValue();
+            if (taskPoolEntry.mManager == this &&
+                (conditionsName == null || conditionsName.equals(taskPoolEntry.mTask.getConditionsName()))) {
+                pauseEntry(entry.getKey(), taskPoolEntry);
             }
-            entry.getValue().cancel(true);
         }
-        sTaskPool.clear();
+    }
+
+    /**
+     * Pauses this manager's tasks that are still waiting for an executor
+     * thread, the ones that are running are left alone.
+     */
+    private void pauseQueuedTasks() {
+        for (Map.Entry<String, TaskPoolEntry> entry : sTaskPool.entrySet()) {
+            TaskPoolEntry taskPoolEntry = entry.getValue();
+            if (taskPoolEntry.mManager == this && taskPoolEntry.isQueued()) {
+                pauseEntry(entry.getKey(), taskPoolEntry);
+            }
+        }
+    }
+
+    /**
+     * Pauses the tasks that are still in the pool for the batch with the provided future.
+     */
+    private void pauseBatch(@NonNull Future batchFuture) {
+        for (Map.Entry<String, TaskPoolEntry> entry : sTaskPool.entrySet()) {
+            TaskPoolEntry taskPoolEntry = entry.getValue();
+            if (taskPoolEntry.mFuture == batchFuture) {
+                pauseEntry(entry.getKey(), taskPoolEntry);
+            }
+        }
+    }
+
+    private void pauseEntry(@NonNull String id, @NonNull TaskPoolEntry taskPoolEntry) {
+        if (!sTaskPool.remove(id, taskPoolEntry)) {
+            // Another thread already took it out of the pool
+            return;
+        }
+        taskPoolEntry.release();
+        T task = getTask(id);
+        if (task != null) {
+            broadcastTaskEvent(task, TaskEventType.PAUSED);
+        }
+        taskPoolEntry.stop(CancellationToken.Reason.PAUSE);
     }
 
     // Returns if it was able to actually resume
     // Won't resume if currently paused or no network (or if it's already resuming)
     private boolean resumeAll() {
-        if (broadcastIsManagerSuspended() || isResuming) {
+        if (broadcastIsManagerSuspended() || !mIsResuming.compareAndSet(false, true)) {
             // If we're paused or don't actually have network, broadcast that state and don't continue
             return false;
         }
-        isResuming = true;
-        // Only resume for network if the tasks aren't paused and it's not in the process of resuming
-        // Issues interrupts to all threads
-        for (Future future : sTaskPool.values()) {
-            future.cancel(true);
+        try {
+            // Only start what isn't already active. Tasks that are queued or running are left alone so
+            // that a spurious conditions change doesn't abort in-flight work, and calling this repeatedly
+            // is a no-op.
+            for (T task : mTaskCache.getTasksToRun()) {
+                if (!isActive(task)) {
+                    startTask(task, true);
+                }
+            }
+        } finally {
+            mIsResuming.set(false);
         }
-        // Clear the task pool because all the necessary tasks will be re-added
-        sTaskPool.clear();
-        // TODO: iterate through all threads with the task id and stop them 11/5/15 [KV]
-        // I've seen threads survive the service dying
-        // http://stackoverflow.com/questions/6667496/get-reference-to-thread-object-from-its-id
+        return true;
+    }
 
-        // We then re-add all these unfinished tasks
-        for (T task : mTaskCache.getTasksToRun()) {
-            startTask(task, true);
+    /**
+     * Determines if the task is queued or executing. Pool entries whose
+     * future has finished without the task reporting a result are stale
+     * and are removed here so that the task can be started again.
+     *
+     * @return true if the task shouldn't be started again right now.
+     */
+    private boolean isActive(@NonNull T task) {
+        TaskPoolEntry taskPoolEntry = sTaskPool.get(task.getId());
+        if (taskPoolEntry != null) {
+            if (!taskPoolEntry.mFuture.isDone()) {
+                return true;
+            }
+            if (sTaskPool.remove(task.getId(), taskPoolEntry)) {
+                taskPoolEntry.release();
+            }
         }
-        isResuming = false;
-
-        return true;
+        // A task that was paused may still be winding down after leaving the pool. It will be
+        // started again from onTaskExecutionFinished once it returns.
+        return task.isRunning();
     }
 
     // This returns if it's possible to resume/start a task
@@ -775,10 +1849,10 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         // TODO: Update the notification 11/6/15 [KV]
         if (mIsPaused) {
             isSuspended = true;
-            broadcastManagerEvent(TaskConstants.EVENT_CONDITIONS_LOST);
+            broadcastManagerEvent(ManagerEvent.CONDITIONS_LOST);
         } else if (!areDeviceConditionsMet()) {
             isSuspended = true;
-            broadcastManagerEvent(TaskConstants.EVENT_CONDITIONS_LOST);
+            broadcastManagerEvent(ManagerEvent.CONDITIONS_LOST);
         }
         return isSuspended;
     }
@@ -799,21 +1873,14 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
      */
     private void serviceCleanup(boolean taskCompleted) {
         // Check if there's anything in the db that needs to run
-        if (!tasksRemaining()) {
+        if (mIsShutdown) {
+            // Whatever is left will run the next time a manager is created
+            killService(taskCompleted);
+        } else if (!tasksRemaining()) {
             // If no tasks in the cache (set to shouldRun) or task pool, kill the service
             killService(taskCompleted);
         } else {
-            boolean addTaskCalled = false;
-            // There are still tasks that need to be run, so if
-            // they're not already running (not in the task pool)
-            // then let's kick them off 2/29/16 [KV]
-            for (T task : getTasksToRun()) {
-                if (!isInTaskPool(task.getId())) {
-                    // If there is an unfinished task that isn't in the task pool, we'll have to add it
-                    startTask(task, true);
-                    addTaskCalled = true;
-                }
-            }
+            boolean addTaskCalled = startTasksNotInPool();
             if (!addTaskCalled) {
                 // If we added a task, startService has already been called.
                 // If we didn't add a task, we should still issue a call to
@@ -825,6 +1892,42 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         }
     }
 
+    /**
+     * Starts every task that should run but isn't in the
+     * task pool yet. The {@link TaskCache} keeps track of
+     * these as they change, so this only touches the pending
+     * tasks rather than every task in the cache.
+     *
+     * @return true if {@link #startTask(BaseTask, boolean)} was
+     * called for any task.
+     */
+    private boolean startTasksNotInPool() {
+        if (!mTaskCache.hasPendingTasks()) {
+            return false;
+        }
+        if (broadcastIsManagerSuspended()) {
+            // None of the pending tasks can be started, the state has been broadcast once
+            // rather than once per task.
+            return true;
+        }
+        boolean addTaskCalled = false;
+        // There are still tasks that need to be run, so if
+        // they're not already running (not in the task pool)
+        // then let's kick them off 2/29/16 [KV]
+        for (T task : mTaskCache.getPendingTasks()) {
+            if (!isInTaskPool(task.getId()) && !task.isRunning() && areTaskConditionsMet(task)) {
+                // If there is an unfinished task that isn't in the task pool, we'll have to add it
+                startTask(task, true);
+                addTaskCalled = true;
+                if (mIsDispatchScheduled.get()) {
+                    // We're being rate limited, the rest will be started by the deferred dispatch
+                    break;
+                }
+            }
+        }
+        return addTaskCalled;
+    }
+
     /**
      * This method will start the {@link BaseTaskService} based on the
      * {@link #getServiceClass()}.
@@ -841,9 +1944,134 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
 
     private void killService(boolean taskCompleted) {
         if (taskCompleted) {
-            broadcastManagerEvent(TaskConstants.EVENT_ALL_TASKS_FINISHED);
+            if (mAggregateProgress.reset()) {
+                mManagerEventListeners.dispatch(mAggregateProgressCall);
+            }
+            broadcastManagerEvent(ManagerEvent.ALL_TASKS_FINISHED);
         } else {
-            broadcastManagerEvent(TaskConstants.EVENT_KILL_SERVICE);
+            broadcastManagerEvent(ManagerEvent.KILL_SERVICE);
+        }
+    }
+    // </editor-fold>
+
+    // -----------------------------------------------------------------------------------------------------
+    // Shutdown
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Shutdown">
+
+    /**
+     * Stops admitting tasks and waits for the running ones to finish:
+     * <ol>
+     * <li>{@link #addTask(BaseTask, TaskCallback)} fails and nothing is started or resumed anymore.</li>
+     * <li>Tasks that are still queued are paused right away.</li>
+     * <li>Running tasks get until the timeout to finish. The ones that don't are paused
+     * and get the cancellation grace period to checkpoint and return. They are then
+     * interrupted and get another second to return. With the default grace period
+     * of 0 they are interrupted right away.</li>
+     * <li>The writes to the database that are queued by then are flushed.</li>
+     * </ol>
+     * Paused tasks stay persisted and are resumed the next time a manager is
+     * created for them. Threads and the database are kept, use
+     * {@link #shutdown(long, TimeUnit)} to release those as well.
+     * <p/>
+     * This blocks, so it must not be called from the main thread.
+     *
+     * @param timeout how long to wait for running tasks to finish.
+     * @param unit    the unit of the timeout.
+     * @return true if every task returned and the writes were flushed in time.
+     */
+    @WorkerThread
+    public boolean drain(long timeout, @NonNull TimeUnit unit) {
+        TaskLogger.getLogger().d("Draining " + getManagerName());
+        mIsShutdown = true;
+        synchronized (mStartTaskLock) {
+            // Once startTask releases the lock it sees the flag, so nothing gets added after this.
+            // Open batches are handed to the executor, their tasks are paused below and get skipped.
+            for (Batch batch : new ArrayList<>(mOpenBatches.values())) {
+                dispatchBatch(batch);
+            }
+        }
+        pauseQueuedTasks();
+        boolean isFinished = awaitExecutions(unit.toMillis(timeout));
+        if (!isFinished) {
+            TaskLogger.getLogger().d("Pausing tasks that didn't finish in time");
+            pauseAll();
+            // The tasks still need a moment to return once they're interrupted at the end of the grace period
+            isFinished = awaitExecutions(mCancellationGracePeriodMillis + INTERRUPT_TIMEOUT_MILLIS);
+        }
+        boolean isFlushed = mTaskCache.flush(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        return isFinished && isFlushed;
+    }
+
+    /**
+     * Drains the manager with {@link #drain(long, TimeUnit)} and then releases
+     * its resources: the executor's threads are stopped unless the executor was
+     * handed to {@link Builder#withExecutorService(ExecutorService)}, the database is closed
+     * and the conditions no longer call back into the manager. The manager can't
+     * be used anymore afterwards, create a new one to pick up the remaining tasks.
+     * <p/>
+     * This blocks, so it must not be called from the main thread.
+     *
+     * @param timeout how long to wait for running tasks to finish.
+     * @param unit    the unit of the timeout.
+     * @return true if every task returned and the writes were flushed in time.
+     */
+    @WorkerThread
+    public boolean shutdown(long timeout, @NonNull TimeUnit unit) {
+        boolean isDrained = drain(timeout, unit);
+        mConditions.setListener(null);
+        for (Conditions taskConditions : mTaskConditions.values()) {
+            taskConditions.setListener(null);
+        }
+        if (mOwnsExecutorService) {
+            // Only tasks that ignored the pause are still around, and they were already interrupted
+            mCachedExecutorService.shutdownNow();
+        }
+        mTaskCache.close();
+        killService(false);
+        TaskLogger.getLogger().d("Shut down " + getManagerName());
+        return isDrained;
+    }
+
+    /**
+     * Shuts the manager down without waiting for running tasks to
+     * finish, they're paused and get the cancellation grace period
+     * to checkpoint before they're interrupted. See {@link #shutdown(long, TimeUnit)}.
+     */
+    @WorkerThread
+    public void shutdown() {
+        shutdown(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if {@link #drain(long, TimeUnit)} or {@link #shutdown()}
+     * has been called, so the manager doesn't take any more tasks.
+     */
+    public boolean isShutdown() {
+        return mIsShutdown;
+    }
+
+    /**
+     * Waits for this manager's executing tasks to return.
+     *
+     * @return false if some are still running once the timeout has passed.
+     */
+    private boolean awaitExecutions(long timeoutMillis) {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (mExecutionLock) {
+            while (mExecutingCount > 0) {
+                long waitNanos = deadlineNanos - System.nanoTime();
+                if (waitNanos <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(mExecutionLock, waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
         }
     }
     // </editor-fold>
@@ -868,6 +2096,10 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
      */
     public void setWifiOnly(boolean wifiOnly) {
         mTaskPreferences.setWifiOnly(wifiOnly);
+        if (mConditions instanceof DebouncedConditions) {
+            // The preference changes the wrapped conditions without them telling their listener
+            ((DebouncedConditions) mConditions).refresh();
+        }
         if (!wifiOnly) {
             resumeAllIfNecessary();
         }
@@ -883,10 +2115,114 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         return mConditions;
     }
 
+    /**
+     * Hands the manager-specific preferences to the conditions and wraps them
+     * in {@link DebouncedConditions} if the builder asked for it.
+     */
+    @NonNull
+    private Conditions prepareConditions(@NonNull Conditions conditions, @NonNull Builder<T> builder) {
+        provideTaskPreferences(conditions);
+        if (builder.mConditionsLossDelayMillis > 0 || builder.mConditionsRegainDelayMillis > 0 ||
+            builder.mMaxConditionsFlapsPerMinute > 0) {
+            return new DebouncedConditions(conditions, builder.mConditionsLossDelayMillis,
+                                           builder.mConditionsRegainDelayMillis, TimeUnit.MILLISECONDS,
+                                           builder.mMaxConditionsFlapsPerMinute);
+        }
+        return conditions;
+    }
+
+    private void provideTaskPreferences(@NonNull Conditions conditions) {
+        if (conditions instanceof NetworkConditionsExtended) {
+            // If we're using the default network util, provide it with the manager-specific preferences
+            ((NetworkConditionsExtended) conditions).setTaskPreferences(mTaskPreferences);
+        } else if (conditions instanceof CompositeConditions) {
+            for (Conditions combinedConditions : ((CompositeConditions) conditions).getConditions()) {
+                provideTaskPreferences(combinedConditions);
+            }
+        }
+    }
+
     public final boolean areDeviceConditionsMet() {
         return mConditions.areConditionsMet();
     }
 
+    /**
+     * Gets the conditions a task depends on besides the manager's.
+     *
+     * @param name the name the conditions were registered with.
+     * @return the conditions, or null if none were registered with that name.
+     */
+    @Nullable
+    public final Conditions getTaskConditions(@NonNull String name) {
+        return mTaskConditions.get(name);
+    }
+
+    /**
+     * @return the conditions the task depends on, its own if it
+     * has any, otherwise the manager's.
+     */
+    @NonNull
+    private Conditions getConditionsFor(@NonNull T task) {
+        String conditionsName = task.getConditionsName();
+        if (conditionsName != null) {
+            Conditions taskConditions = mTaskConditions.get(conditionsName);
+            if (taskConditions != null) {
+                return taskConditions;
+            }
+        }
+        return mConditions;
+    }
+
+    /**
+     * @return true if the task's own conditions are met, or if
+     * it only depends on the manager's conditions.
+     */
+    private boolean areTaskConditionsMet(@NonNull T task) {
+        String conditionsName = task.getConditionsName();
+        if (conditionsName == null) {
+            return true;
+        }
+        Conditions taskConditions = mTaskConditions.get(conditionsName);
+        if (taskConditions == null) {
+            TaskLogger.getLogger().e("No conditions registered with name " + conditionsName +
+                                     " for task " + task.getId());
+            return true;
+        }
+        return taskConditions.areConditionsMet();
+    }
+
+    /**
+     * Pauses or resumes only the tasks that depend on
+     * the conditions the listener was registered for.
+     */
+    private final class TaskConditionsListener implements Conditions.Listener {
+
+        @NonNull
+        private final String mConditionsName;
+
+        TaskConditionsListener(@NonNull String conditionsName) {
+            mConditionsName = conditionsName;
+        }
+
+        @Override
+        public void onConditionsChange(boolean conditionsMet) {
+            TaskLogger.getLogger().d("Task conditions " + mConditionsName + " changed: " + conditionsMet);
+            if (!conditionsMet) {
+                pauseTasks(mConditionsName);
+                return;
+            }
+            if (mIsPaused || !areDeviceConditionsMet()) {
+                // The manager's conditions still hold every task back
+                return;
+            }
+            for (T task : mTaskCache.getPendingTasks()) {
+                if (mConditionsName.equals(task.getConditionsName())) {
+                    startTask(task, true);
+                }
+            }
+        }
+    }
+
     @Override
     public void onConditionsChange(boolean conditionsMet) {
         TaskLogger.getLogger().d("Network change");
@@ -954,13 +2290,62 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
         public void onAdditionalManagerEvent(@NonNull String event) {
         }
 
+        /**
+         * Called when {@link BaseTaskManager#getAggregateProgress()} changes.
+         */
+        public void onAggregateProgress(int progress) {
+        }
+
     }
 
     /**
      * A listener for task lifecycle events. Register it with
      * the manager to be notified when these events occur.
      */
-    public static abstract class TaskEventListener<T> {
+    public static abstract class TaskEventListener<T> implements TaskEvent.Listener<T> {
+
+        /**
+         * Calls the callback for the type of the event.
+         */
+        @Override
+        public void onTaskEvent(@NonNull TaskEvent<T> event) {
+            T task = event.getTask();
+            // A switch over an enum is a jump table indexed by the ordinal
+            switch (event.getType()) {
+                case ADDED:
+                    onAdded(task);
+                    break;
+                case STARTED:
+                    onStarted(task);
+                    break;
+                case PAUSED:
+                    onPaused(task);
+                    break;
+                case PROGRESS:
+                    onProgress(task, event.getProgress());
+                    break;
+                case SUCCESS:
+                    onSuccess(task);
+                    break;
+                case CANCELED:
+                    onCanceled(task);
+                    break;
+                case FAILURE:
+                    //noinspection ConstantConditions
+                    onFailure(task, event.getError());
+                    break;
+                case RETRY:
+                    onRetry(task);
+                    break;
+                case MANAGER_RETRY:
+                    onManagerRetry(task);
+                    break;
+                case ADDITIONAL:
+                    //noinspection ConstantConditions
+                    onAdditionalTaskEvent(task, event.getName());
+                    break;
+            }
+        }
 
         public void onAdded(@NonNull T task) {
         }
@@ -1009,144 +2394,417 @@ public abstract class BaseTaskManager<T extends BaseTask> implements Conditions.
 
     }
 
-    private final Set<TaskEventListener<T>> mTaskEventListeners = new HashSet<>();
-    private final Set<ManagerEventListener> mManagerEventListeners = new HashSet<>();
+    private final ListenerList<TaskEvent.Listener<T>> mTaskEventListeners = new ListenerList<>();
+    private final ListenerList<ManagerEventListener> mManagerEventListeners = new ListenerList<>();
+    // The listeners of single tasks, by task id. Sending an event only reads the map,
+    // adding and removing are locked so a list isn't dropped while a listener joins it
+    private final ConcurrentHashMap<String, ListenerList<TaskEvent.Listener<T>>> mTaskIdListeners =
+            new ConcurrentHashMap<>();
+    private final Object mTaskIdListenersLock = new Object();
+    // The version of the last task event that was sent
+    private final AtomicLong mTaskEventVersion = new AtomicLong();
 
-    public synchronized void registerTaskEventListener(@NonNull TaskEventListener<T> listener) {
-        mTaskEventListeners.add(listener);
+    /**
+     * Registers a listener that is called on the main thread. It can be a
+     * {@link TaskEventListener}, or a {@link TaskEvent.Listener} that gets
+     * every event through a single method.
+     */
+    public void registerTaskEventListener(@NonNull TaskEvent.Listener<T> listener) {
+        registerTaskEventListener(listener, DispatchExecutors.mainThread());
+    }
+
+    /**
+     * Registers a listener that is called on the executor, e.g. one of
+     * {@link DispatchExecutors} so that it doesn't wait on the main thread.
+     * Registering a listener again changes its executor.
+     */
+    public void registerTaskEventListener(@NonNull TaskEvent.Listener<T> listener, @NonNull Executor executor) {
+        mTaskEventListeners.add(listener, executor);
     }
 
-    public synchronized void unregisterTaskEventListener(@NonNull TaskEventListener<T> listener) {
+    /**
+     * Unregisters the listener, including when it was registered with a filter.
+     */
+    public void unregisterTaskEventListener(@NonNull TaskEvent.Listener<T> listener) {
         mTaskEventListeners.remove(listener);
+        mTaskEventListeners.remove(FilteredListener.key(listener));
     }
 
-    public synchronized void registerManagerEventListener(@NonNull ManagerEventListener listener) {
-        mManagerEventListeners.add(listener);
+    /**
+     * Registers a listener that is called on the main thread, and returns a
+     * snapshot of the tasks, see
+     * {@link #registerTaskEventListenerWithSnapshot(TaskEvent.Listener, Executor)}.
+     */
+    @NonNull
+    public TaskSnapshot<T> registerTaskEventListenerWithSnapshot(@NonNull TaskEvent.Listener<T> listener) {
+        return registerTaskEventListenerWithSnapshot(listener, DispatchExecutors.mainThread());
     }
 
-    public synchronized void unregisterManagerEventListener(@NonNull ManagerEventListener listener) {
+    /**
+     * Registers a listener that is called on the executor, and returns a
+     * snapshot of the tasks at the moment it started listening. Nothing that
+     * happens after the snapshot is missed: the listener gets the events with
+     * a version greater than {@link TaskSnapshot#getVersion()}. A change that
+     * races with the snapshot may be both in it and sent as an event.
+     * <p/>
+     * The listener replaces any other registration of it with this manager, and
+     * is unregistered with {@link #unregisterTaskEventListener(TaskEvent.Listener)}.
+     */
+    @NonNull
+    public TaskSnapshot<T> registerTaskEventListenerWithSnapshot(@NonNull TaskEvent.Listener<T> listener,
+                                                                 @NonNull Executor executor) {
+        // Events sent before the listener was added can't reach it, the ones after it
+        // are sent until the snapshot's version is known and then left to the filter
+        VersionFilter filter = new VersionFilter(mTaskEventVersion.get());
+        mTaskEventListeners.add(new FilteredListener<>(listener, filter), executor);
+        // States change before their events get a version, so the snapshot has every
+        // change up to this version
+        long version = mTaskEventVersion.get();
+        TaskSnapshot<T> snapshot = new TaskSnapshot<>(version, mTaskCache.getTasks());
+        filter.mMinVersion = version;
+        return snapshot;
+    }
+
+    /**
+     * Matches the events after a version.
+     */
+    private static final class VersionFilter implements TaskEvent.Filter<Object> {
+
+        volatile long mMinVersion;
+
+        VersionFilter(long minVersion) {
+            mMinVersion = minVersion;
+        }
+
+        @Override
+        public boolean matches(@NonNull TaskEvent<?> event) {
+            return event.getVersion() > mMinVersion;
+        }
+    }
+
+    /**
+     * Registers a listener that only gets the events the filter matches, e.g.
+     * one of {@link TaskEventFilters}. It is called on the main thread.
+     */
+    public void registerTaskEventListener(@NonNull TaskEvent.Filter<? super T> filter,
+                                          @NonNull TaskEvent.Listener<T> listener) {
+        registerTaskEventListener(filter, listener, DispatchExecutors.mainThread());
+    }
+
+    /**
+     * Registers a listener that only gets the events the filter matches, and
+     * is called on the executor. The filter is checked before the event is
+     * handed to the executor, so it isn't woken up for other events.
+     */
+    public void registerTaskEventListener(@NonNull TaskEvent.Filter<? super T> filter,
+                                          @NonNull TaskEvent.Listener<T> listener, @NonNull Executor executor) {
+        mTaskEventListeners.add(new FilteredListener<>(listener, filter), executor);
+    }
+
+    /**
+     * Registers a listener for the events of a single task. It is called on the main thread.
+     */
+    public void registerTaskEventListener(@NonNull String taskId, @NonNull TaskEvent.Listener<T> listener) {
+        registerTaskEventListener(taskId, listener, DispatchExecutors.mainThread());
+    }
+
+    /**
+     * Registers a listener for the events of a single task, called on the executor.
+     * The listeners are kept per task, so the events of other tasks cost it nothing.
+     * It stays registered until {@link #unregisterTaskEventListener(String, TaskEvent.Listener)},
+     * even once the task is done.
+     */
+    public void registerTaskEventListener(@NonNull String taskId, @NonNull TaskEvent.Listener<T> listener,
+                                          @NonNull Executor executor) {
+        synchronized (mTaskIdListenersLock) {
+            ListenerList<TaskEvent.Listener<T>> listeners = mTaskIdListeners.get(taskId);
+            if (listeners == null) {
+                listeners = new ListenerList<>();
+                mTaskIdListeners.put(taskId, listeners);
+            }
+            listeners.add(listener, executor);
+        }
+    }
+
+    public void unregisterTaskEventListener(@NonNull String taskId, @NonNull TaskEvent.Listener<T> listener) {
+        synchronized (mTaskIdListenersLock) {
+            ListenerList<TaskEvent.Listener<T>> listeners = mTaskIdListeners.get(taskId);
+            if (listeners == null) {
+                return;
+            }
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                mTaskIdListeners.remove(taskId);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener that is called on the main thread.
+     */
+    public void registerManagerEventListener(@NonNull ManagerEventListener listener) {
+        registerManagerEventListener(listener, DispatchExecutors.mainThread());
+    }
+
+    /**
+     * Registers a listener that is called on the executor, e.g. one of
+     * {@link DispatchExecutors} so that it doesn't wait on the main thread.
+     * Registering a listener again changes its executor.
+     */
+    public void registerManagerEventListener(@NonNull ManagerEventListener listener, @NonNull Executor executor) {
+        mManagerEventListeners.add(listener, executor);
+    }
+
+    public void unregisterManagerEventListener(@NonNull ManagerEventListener listener) {
         mManagerEventListeners.remove(listener);
     }
 
     // Entire pool based events (paused, resumed)
-    private synchronized void broadcastManagerEvent(final @ManagerEvent @NonNull String event) {
-        BroadcastHandler.post(new Runnable() {
+    private void broadcastManagerEvent(@NonNull ManagerEvent event) {
+        mManagerEventListeners.dispatch(event);
+    }
+
+    public void broadcastAdditionalManagerEvent(@NonNull final String event) {
+        mManagerEventListeners.dispatch(new ListenerList.Call<ManagerEventListener>() {
             @Override
-            public void run() {
-                for (ManagerEventListener listener : mManagerEventListeners) {
-                    switch (event) {
-                        case TaskConstants.EVENT_RESUME_IF_NECESSARY:
-                            listener.onResumeIfNecessary();
-                            break;
-                        case TaskConstants.EVENT_ALL_TASKS_FINISHED:
-                            listener.onAllTasksFinished();
-                            break;
-                        case TaskConstants.EVENT_KILL_SERVICE:
-                            listener.onKillService();
-                            break;
-                        case TaskConstants.EVENT_CONDITIONS_LOST:
-                            listener.onConditionsLost();
-                            break;
-                        case TaskConstants.EVENT_CONDITIONS_RETURNED:
-                            listener.onConditionsReturned();
-                            break;
-                        case TaskConstants.EVENT_ALL_TASKS_PAUSED:
-                            listener.onAllTasksPaused();
-                            break;
-                        case TaskConstants.EVENT_ALL_TASKS_RESUMED:
-                            listener.onAllTasksResumed();
-                            break;
-                        default:
-                            listener.onAdditionalManagerEvent(event);
-                            break;
-                    }
-                }
+            public void call(@NonNull ManagerEventListener listener) {
+                listener.onAdditionalManagerEvent(event);
             }
         });
     }
 
-    public synchronized void broadcastAdditionalManagerEvent(@NonNull final String event) {
-        BroadcastHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                for (ManagerEventListener listener : mManagerEventListeners) {
-                    listener.onAdditionalManagerEvent(event);
+    private void broadcastTaskEvent(@NonNull T task, @NonNull TaskEventType type) {
+        switch (type) {
+            case ADDED:
+                if (task.shouldRun()) {
+                    updateAggregateProgress(task, task.getProgress());
+                }
+                break;
+            case STARTED:
+            case RETRY:
+            case MANAGER_RETRY:
+                updateAggregateProgress(task, task.getProgress());
+                break;
+            case CANCELED:
+                if (mAggregateProgress.remove(task.getId())) {
+                    mManagerEventListeners.dispatch(mAggregateProgressCall);
+                }
+                break;
+        }
+        boolean isSuccess = type == TaskEventType.SUCCESS;
+        if (isSuccess || type == TaskEventType.CANCELED) {
+            TaskHandle<T> taskHandle = mTaskHandles.remove(task.getId());
+            if (taskHandle != null) {
+                if (isSuccess) {
+                    taskHandle.onSuccess();
+                } else {
+                    taskHandle.onCanceled();
                 }
             }
-        });
+            // Queued before the event so that every listener gets the last progress first
+            finishProgress(task, isSuccess);
+        }
+        sendTaskEvent(TaskEvent.obtain(type, task, TaskEvent.NO_PROGRESS, null, null), false);
     }
 
-    private synchronized void broadcastTaskEvent(final @NonNull T task,
-                                                 final @TaskEvent @NonNull String event) {
-        BroadcastHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                for (TaskEventListener<T> listener : mTaskEventListeners) {
-                    switch (event) {
-                        case TaskConstants.EVENT_STARTED:
-                            listener.onStarted(task);
-                            break;
-                        case TaskConstants.EVENT_SUCCESS:
-                            listener.onSuccess(task);
-                            break;
-                        case TaskConstants.EVENT_RETRY:
-                            listener.onRetry(task);
-                            break;
-                        case TaskConstants.EVENT_MANAGER_RETRY:
-                            listener.onManagerRetry(task);
-                            break;
-                        case TaskConstants.EVENT_ADDED:
-                            listener.onAdded(task);
-                            break;
-                        case TaskConstants.EVENT_CANCELLED:
-                            listener.onCanceled(task);
-                            break;
-                        case TaskConstants.EVENT_PAUSED:
-                            listener.onPaused(task);
-                            break;
-                        default:
-                            listener.onAdditionalTaskEvent(task, event);
-                            break;
-                    }
-                }
+    public void broadcastAdditionalTaskEvent(@NonNull T task, @NonNull String event) {
+        sendTaskEvent(TaskEvent.obtain(TaskEventType.ADDITIONAL, task, TaskEvent.NO_PROGRESS, null, event), false);
+    }
+
+    private void broadcastTaskFailureEvent(@NonNull T task, @NonNull TaskError error) {
+        TaskHandle<T> taskHandle = mTaskHandles.remove(task.getId());
+        if (taskHandle != null) {
+            taskHandle.onFailure(error);
+        }
+        finishProgress(task, false);
+        if (mAggregateProgress.remove(task.getId())) {
+            mManagerEventListeners.dispatch(mAggregateProgressCall);
+        }
+        sendTaskEvent(TaskEvent.obtain(TaskEventType.FAILURE, task, TaskEvent.NO_PROGRESS, error, null), false);
+    }
 
+    private void updateAggregateProgress(@NonNull T task, int progress) {
+        if (mAggregateProgress.update(task.getId(), task.getProgressWeight(), progress)) {
+            mManagerEventListeners.dispatch(mAggregateProgressCall);
+        }
+    }
+
+    /**
+     * The progress of the tasks that were added or started since the queue was
+     * last empty, weighted by {@link BaseTask#getProgressWeight()}. A finished
+     * task counts as 100, and a failed or canceled task doesn't count. It is kept
+     * up to date as the progress comes in, so it is cheap to call, and
+     * {@link ManagerEventListener#onAggregateProgress(int)} is called when it changes.
+     *
+     * @return the progress, between 0 and 100.
+     */
+    public int getAggregateProgress() {
+        return mAggregateProgress.getProgress();
+    }
+
+    /**
+     * Hands the event to the listeners and gives up the sender's hold on it.
+     *
+     * @param isOnMainThread true if the main thread listeners can be called right away.
+     */
+    private void sendTaskEvent(@NonNull TaskEvent<T> event, boolean isOnMainThread) {
+        // Must come before the listeners are read, see registerTaskEventListenerWithSnapshot
+        event.setVersion(mTaskEventVersion.incrementAndGet());
+        ListenerList<TaskEvent.Listener<T>> taskListeners = mTaskIdListeners.get(event.getTask().getId());
+        if (isOnMainThread) {
+            mTaskEventListeners.dispatchOnMainThread(event.mCall);
+            if (taskListeners != null) {
+                taskListeners.dispatchOnMainThread(event.mCall);
             }
-        });
+        } else {
+            mTaskEventListeners.dispatch(event.mCall);
+            if (taskListeners != null) {
+                taskListeners.dispatch(event.mCall);
+            }
+        }
+        event.release();
     }
 
-    public synchronized void broadcastAdditionalTaskEvent(@NonNull final T task,
-                                                          @NonNull final String event) {
-        BroadcastHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                for (TaskEventListener<T> listener : mTaskEventListeners) {
-                    listener.onAdditionalTaskEvent(task, event);
-                }
+    /**
+     * Records the progress of the task. Only the latest progress of each task
+     * is kept, and it is delivered at most once per progress interval, so a task
+     * that reports progress for every buffer doesn't flood the main thread.
+     */
+    private void broadcastTaskProgressEvent(final @NonNull T task, final int progress) {
+        ProgressState progressState = mProgressStates.get(task.getId());
+        if (progressState == null) {
+            ProgressState newProgressState = new ProgressState(task);
+            progressState = mProgressStates.putIfAbsent(task.getId(), newProgressState);
+            if (progressState == null) {
+                progressState = newProgressState;
             }
-        });
+        }
+        if (progressState.mPendingProgress.getAndSet(progress) != NO_PROGRESS) {
+            // Replaced a progress that is waiting to be delivered
+            return;
+        }
+        mPendingProgressStates.add(progressState);
+        if (mIsProgressFlushScheduled.compareAndSet(false, true)) {
+            // Racy read of the last flush, the worst case is a flush that comes a bit early
+            long delayMillis = mLastProgressFlushMillis + mProgressIntervalMillis - SystemClock.uptimeMillis();
+            BroadcastHandler.postDelayed(mProgressFlushRunnable, Math.max(0, delayMillis));
+        }
     }
 
-    private synchronized void broadcastTaskFailureEvent(final @NonNull T task,
-                                                        final @NonNull TaskError error) {
-        BroadcastHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                for (TaskEventListener<T> listener : mTaskEventListeners) {
-                    listener.onFailure(task, error);
+    private static final int NO_PROGRESS = -1;
+
+    /**
+     * The progress of a single task.
+     */
+    private final class ProgressState {
+
+        @NonNull
+        final T mTask;
+        // The progress that hasn't been delivered yet, or NO_PROGRESS
+        final AtomicInteger mPendingProgress = new AtomicInteger(NO_PROGRESS);
+        // Guarded by the state itself, which is only held to pick the progress, never while dispatching it
+        int mDeliveredProgress = NO_PROGRESS;
+
+        ProgressState(@NonNull T task) {
+            mTask = task;
+        }
+    }
+
+    private final Runnable mProgressFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mLastProgressFlushMillis = SystemClock.uptimeMillis();
+            // Reset before draining, progress that arrives from now on schedules the next flush
+            mIsProgressFlushScheduled.set(false);
+            ProgressState progressState;
+            while ((progressState = mPendingProgressStates.poll()) != null) {
+                int progress;
+                boolean isAggregateChanged;
+                synchronized (progressState) {
+                    progress = progressState.mPendingProgress.getAndSet(NO_PROGRESS);
+                    if (!claimProgressLocked(progressState, progress)) {
+                        continue;
+                    }
+                    isAggregateChanged = updateAggregateProgressLocked(progressState, progress);
                 }
+                dispatchProgress(progressState.mTask, progress, isAggregateChanged, true);
             }
-        });
+        }
+    };
+
+    /**
+     * Marks the progress as delivered, must be called while holding the state.
+     *
+     * @return false if there is nothing new to deliver.
+     */
+    private boolean claimProgressLocked(@NonNull ProgressState progressState, int progress) {
+        if (progress == NO_PROGRESS || progress == progressState.mDeliveredProgress) {
+            return false;
+        }
+        progressState.mDeliveredProgress = progress;
+        return true;
     }
 
-    private synchronized void broadcastTaskProgressEvent(final @NonNull T task, final int progress) {
-        BroadcastHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                for (TaskEventListener<T> listener : mTaskEventListeners) {
-                    listener.onProgress(task, progress);
-                }
+    /**
+     * Updates the aggregate progress in the order the progress was claimed in, must be
+     * called while holding the state. It calls no listeners, so it's safe to hold the state.
+     *
+     * @return true if the aggregate progress changed.
+     */
+    private boolean updateAggregateProgressLocked(@NonNull ProgressState progressState, int progress) {
+        T task = progressState.mTask;
+        return mAggregateProgress.update(task.getId(), task.getProgressWeight(), progress);
+    }
+
+    /**
+     * Hands the progress that was claimed to the listeners. This happens after the
+     * state has been let go of, so listeners can't block the other thread that
+     * delivers progress. A flush that claimed its progress just before the task
+     * finished may hand it out after the final progress. The main thread listeners
+     * still get it first, since the flush runs on the main thread and the final
+     * progress is posted behind it, and the task handle ignores it once it's done.
+     *
+     * @param isOnMainThread true if the main thread listeners can be called right away.
+     */
+    private void dispatchProgress(@NonNull T task, int progress, boolean isAggregateChanged,
+                                  boolean isOnMainThread) {
+        if (isAggregateChanged) {
+            mManagerEventListeners.dispatch(mAggregateProgressCall);
+        }
+        sendTaskEvent(TaskEvent.obtain(TaskEventType.PROGRESS, task, progress, null, null), isOnMainThread);
+        TaskHandle<T> taskHandle = mTaskHandles.get(task.getId());
+        if (taskHandle != null) {
+            taskHandle.onProgress(progress);
+        }
+    }
+
+    /**
+     * Hands the progress of a task that is done to the listeners before the
+     * event that says so. A successful task always ends with a progress of 100.
+     */
+    private void finishProgress(@NonNull T task, boolean isSuccess) {
+        ProgressState progressState = mProgressStates.remove(task.getId());
+        if (progressState == null) {
+            if (!isSuccess) {
+                return;
             }
-        });
+            progressState = new ProgressState(task);
+        }
+        int progress;
+        boolean isAggregateChanged;
+        synchronized (progressState) {
+            // It may still be queued, the flush will find nothing left to deliver. A successful
+            // task goes straight to 100, any progress before it would be coalesced anyway.
+            progress = progressState.mPendingProgress.getAndSet(NO_PROGRESS);
+            if (isSuccess) {
+                progress = 100;
+            }
+            if (!claimProgressLocked(progressState, progress)) {
+                return;
+            }
+            isAggregateChanged = updateAggregateProgressLocked(progressState, progress);
+        }
+        dispatchProgress(task, progress, isAggregateChanged, false);
     }
     // </editor-fold>
 }
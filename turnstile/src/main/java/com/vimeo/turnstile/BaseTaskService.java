@@ -182,6 +182,13 @@ public abstract class BaseTaskService<T extends BaseTask> extends Service {
 
     }
 
+    /**
+     * @see BaseTaskManager#getAggregateProgress()
+     */
+    protected void onAggregateProgress(int progress) {
+
+    }
+
     protected void taskAdded() {
 
     }
@@ -257,6 +264,11 @@ public abstract class BaseTaskService<T extends BaseTask> extends Service {
         public void onAdditionalManagerEvent(@NonNull String event) {
             handleAdditionalEvents(event);
         }
+
+        @Override
+        public void onAggregateProgress(int progress) {
+            BaseTaskService.this.onAggregateProgress(progress);
+        }
     };
 
     private void registerReceivers() {
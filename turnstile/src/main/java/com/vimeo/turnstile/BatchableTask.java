@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.vimeo.turnstile.utils.TaskLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link BaseTask} that can be run together with other compatible tasks,
+ * e.g. small API calls that the server accepts in one request. When the
+ * manager is built with {@link BaseTaskManager.Builder#withBatching(int, long, java.util.concurrent.TimeUnit)},
+ * ready tasks with the same {@link #getBatchKey()} are collected for up to
+ * the linger time, or until the batch is full, and are then handed to a
+ * single {@link #executeBatch(List)} call on one executor thread.
+ * <p/>
+ * Each task in the batch is still a task of its own: the batch must call
+ * {@link #onTaskCompleted()} or {@link #onTaskFailure(TaskError)} on every
+ * task in it, and each one gets its own events and its own database update.
+ * Tasks the batch doesn't report on are run again later. If the batch throws,
+ * the tasks it didn't report on fail with {@link TaskError#CODE_BATCH_FAILED}.
+ * If one task times out or stalls, the batch's thread is interrupted and the
+ * other tasks in it are paused, to run again once the batch has returned.
+ * <p/>
+ * Tasks that aren't batched, e.g. because batching isn't enabled, run as a
+ * batch of one.
+ *
+ * @param <B> the type of the task itself, so that {@link #executeBatch(List)}
+ *            can call the task's protected methods on every task in the batch.
+ */
+public abstract class BatchableTask<B extends BatchableTask<B>> extends BaseTask {
+
+    private static final long serialVersionUID = -3790347006254722512L;
+
+    public BatchableTask(@NonNull String id) {
+        super(id);
+    }
+
+    /**
+     * Only tasks with the same key are run in the same batch, e.g.
+     * the endpoint that the task talks to.
+     *
+     * @return the key, must not change while the task is queued.
+     */
+    @NonNull
+    public abstract String getBatchKey();
+
+    /**
+     * Runs a batch of tasks. This is called on one of the tasks of the
+     * batch, which is also part of the list.
+     *
+     * @param batch the tasks to run, all with the same batch key.
+     */
+    @WorkerThread
+    protected abstract void executeBatch(@NonNull List<B> batch);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void execute() {
+        executeBatch(Collections.singletonList((B) this));
+    }
+
+    /**
+     * Runs the tasks as one batch. Tasks that have been asked to stop
+     * before the batch started are left out.
+     */
+    @SuppressWarnings("unchecked")
+    static void runBatch(@NonNull List<? extends BaseTask> tasks) {
+        List<BatchableTask> batch = new ArrayList<>(tasks.size());
+        List<CancellationToken> cancellationTokens = new ArrayList<>(tasks.size());
+        for (BaseTask task : tasks) {
+            if (!task.isCancellationRequested()) {
+                cancellationTokens.add(task.beginExecution());
+                batch.add((BatchableTask) task);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            TaskLogger.getLogger().d("Running batch of " + batch.size() + " tasks");
+            batch.get(0).executeBatch(batch);
+        } catch (RuntimeException e) {
+            TaskLogger.getLogger().e("Batch failed", e);
+            for (BatchableTask task : batch) {
+                if (!task.isComplete() && !task.isError()) {
+                    task.onTaskFailure(new TaskError(TaskError.DOMAIN_TURNSTILE, TaskError.CODE_BATCH_FAILED,
+                                                     "Batch failed", e));
+                }
+            }
+        } finally {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).endExecution(cancellationTokens.get(i));
+            }
+        }
+    }
+}
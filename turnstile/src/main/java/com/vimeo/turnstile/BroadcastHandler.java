@@ -20,4 +20,12 @@ final class BroadcastHandler {
         HANDLER.post(runnable);
     }
 
+    public static void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+        HANDLER.postDelayed(runnable, delayMillis);
+    }
+
+    public static void removeCallbacks(@NonNull Runnable runnable) {
+        HANDLER.removeCallbacks(runnable);
+    }
+
 }
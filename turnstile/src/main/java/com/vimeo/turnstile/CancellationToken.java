@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * A token handed to each execution of a {@link BaseTask} which tells
+ * the task that the manager would like it to stop. Tasks should check
+ * it at convenient points, e.g. between chunks of an upload, and return
+ * from {@link BaseTask#execute()} when it has been cancelled. This lets
+ * a task keep the progress it made, where an interrupt would throw away
+ * whatever IO is in flight.
+ * <p/>
+ * Tasks that don't check the token are interrupted once the grace
+ * period set with {@link BaseTaskManager.Builder#withCancellationGracePeriod(long, java.util.concurrent.TimeUnit)}
+ * has passed.
+ */
+public final class CancellationToken {
+
+    /**
+     * Why the task is being asked to stop.
+     */
+    public enum Reason {
+        /**
+         * The task will be run again later, e.g. the manager was paused
+         * or the conditions were lost. Work that was completed should be
+         * kept so that the task can pick up from there.
+         */
+        PAUSE,
+
+        /**
+         * The task has been cancelled and removed from the manager. It
+         * will not be run again.
+         */
+        CANCEL,
+
+        /**
+         * The task ran past its deadline and has been moved to the error
+         * state, see {@link BaseTaskManager.Builder#withTaskTimeout(long, java.util.concurrent.TimeUnit)}.
+         */
+        TIMEOUT,
+
+        /**
+         * The task stopped reporting progress and has been moved to the error
+         * state, see {@link BaseTaskManager.Builder#withStallTimeout(long, java.util.concurrent.TimeUnit)}.
+         */
+        STALL
+    }
+
+    @Nullable
+    private volatile Reason mReason;
+
+    /**
+     * Requests the task to stop. Only the first request is kept.
+     *
+     * @param reason the reason the task is being stopped.
+     * @return true if this call cancelled the token, false if it
+     * had already been cancelled.
+     */
+    synchronized boolean cancel(@NonNull Reason reason) {
+        if (mReason != null) {
+            return false;
+        }
+        mReason = reason;
+        return true;
+    }
+
+    /**
+     * @return true if the task has been asked to stop.
+     */
+    public boolean isCancelled() {
+        return mReason != null;
+    }
+
+    /**
+     * @return the reason the task has been asked to stop,
+     * or null if it hasn't been.
+     */
+    @Nullable
+    public Reason getReason() {
+        return mReason;
+    }
+
+    /**
+     * Convenience for tasks that would rather unwind with an exception.
+     *
+     * @throws CancellationException if the task has been asked to stop.
+     */
+    public void throwIfCancelled() {
+        Reason reason = mReason;
+        if (reason != null) {
+            throw new CancellationException("Task stopped: " + reason);
+        }
+    }
+}
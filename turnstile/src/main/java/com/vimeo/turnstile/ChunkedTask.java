@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.vimeo.turnstile.utils.TaskLogger;
+
+/**
+ * A {@link BaseTask} whose work is split into a sequence of units, or
+ * chunks, e.g. the parts of a large upload. The task only describes the
+ * chunks and how to run one of them, and this class takes care of:
+ * <ol>
+ * <li>Running the chunks in order, starting after the last committed one.</li>
+ * <li>Committing the number of completed chunks, which is persisted with
+ * the task through the {@link com.vimeo.turnstile.database.TaskCache}.</li>
+ * <li>Reporting progress from the number of completed chunks.</li>
+ * <li>Stopping between chunks when the {@link CancellationToken} is cancelled.</li>
+ * </ol>
+ * A chunked task that is paused, loses its conditions or is killed with
+ * the process picks up from the last committed chunk the next time it
+ * runs instead of starting over.
+ * <p/>
+ * The committed chunk count is a regular (non-transient) field, so it is
+ * persisted by the default serializer. A custom {@link Serializer} must
+ * persist it as well for tasks to resume after process death.
+ */
+public abstract class ChunkedTask extends BaseTask {
+
+    private static final long serialVersionUID = 4208125330925734372L;
+
+    /**
+     * The number of chunks that have completed. Chunks before this
+     * are never run again unless the task is reset.
+     */
+    private volatile int mCommittedChunkCount;
+
+    public ChunkedTask(@NonNull String id) {
+        super(id);
+    }
+
+    // -----------------------------------------------------------------------------------------------------
+    // Chunk Definition
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Chunk Definition">
+
+    /**
+     * The total number of chunks this task is made of. This is called
+     * each time the task starts executing, so it may depend on state
+     * that is only available then (e.g. the size of a file), but it
+     * must not change once chunks have been committed.
+     *
+     * @return the number of chunks, 0 if there is nothing to do.
+     */
+    @WorkerThread
+    protected abstract int getChunkCount();
+
+    /**
+     * Runs a single chunk. A chunk is only committed once this returns
+     * true, so it may be run again after a pause or a crash and should
+     * be safe to repeat.
+     *
+     * @param chunkIndex the index of the chunk, starting at 0.
+     * @return true if the chunk completed. Return false to stop the
+     * task without committing the chunk, after calling
+     * {@link #onTaskFailure(TaskError)} if it failed.
+     */
+    @WorkerThread
+    protected abstract boolean executeChunk(int chunkIndex);
+
+    /**
+     * How many chunks to complete before each commit. Every commit
+     * writes the task to the database, so tasks with many small chunks
+     * may want to commit less often at the cost of repeating up to
+     * this many chunks after a crash. Defaults to 1.
+     *
+     * @return the number of chunks per commit, at least 1.
+     */
+    protected int getChunksPerCommit() {
+        return 1;
+    }
+
+    /**
+     * Called once every chunk has completed. Defaults to marking the
+     * task as completed, override to do any final work first.
+     */
+    @WorkerThread
+    protected void onAllChunksCompleted() {
+        onTaskCompleted();
+    }
+    // </editor-fold>
+
+    // -----------------------------------------------------------------------------------------------------
+    // Task Execution
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Task Execution">
+
+    @Override
+    protected final void execute() {
+        int chunkCount = getChunkCount();
+        int chunksPerCommit = Math.max(1, getChunksPerCommit());
+        CancellationToken cancellationToken = getCancellationToken();
+        int completedChunkCount = mCommittedChunkCount;
+        if (completedChunkCount > 0) {
+            TaskLogger.getLogger().d("Resuming task " + getId() + " at chunk " + completedChunkCount + "/" + chunkCount);
+            onTaskProgress(getProgress(completedChunkCount, chunkCount));
+        }
+        try {
+            while (completedChunkCount < chunkCount) {
+                if (cancellationToken.isCancelled()) {
+                    return;
+                }
+                if (!executeChunk(completedChunkCount)) {
+                    return;
+                }
+                completedChunkCount++;
+                if (completedChunkCount % chunksPerCommit == 0 || completedChunkCount == chunkCount) {
+                    commit(completedChunkCount);
+                }
+                onTaskProgress(getProgress(completedChunkCount, chunkCount));
+            }
+        } finally {
+            if (completedChunkCount != mCommittedChunkCount) {
+                // Keep the chunks that completed since the last commit when we stop early
+                commit(completedChunkCount);
+            }
+        }
+        onAllChunksCompleted();
+    }
+
+    private void commit(int completedChunkCount) {
+        mCommittedChunkCount = completedChunkCount;
+        // The manager persists the task on every state change
+        onTaskChange();
+    }
+
+    private static int getProgress(int completedChunkCount, int chunkCount) {
+        if (chunkCount <= 0) {
+            return 100;
+        }
+        return (int) (100L * completedChunkCount / chunkCount);
+    }
+    // </editor-fold>
+
+    // -----------------------------------------------------------------------------------------------------
+    // Chunk State
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Chunk State">
+
+    /**
+     * @return the number of chunks that have been committed.
+     */
+    public final int getCommittedChunkCount() {
+        return mCommittedChunkCount;
+    }
+
+    /**
+     * Forgets every committed chunk so that the next execution starts
+     * from the beginning, e.g. if the data being uploaded has changed.
+     * Must not be called while the task is running.
+     */
+    protected final void resetChunks() {
+        mCommittedChunkCount = 0;
+        onTaskChange();
+    }
+    // </editor-fold>
+}
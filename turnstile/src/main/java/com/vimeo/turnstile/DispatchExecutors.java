@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executors listeners can be registered with, see
+ * {@link BaseTaskManager#registerTaskEventListener(BaseTaskManager.TaskEventListener, Executor)}.
+ * Any other executor works as well, but events only arrive in order
+ * if it runs its commands in order.
+ */
+public final class DispatchExecutors {
+
+    private static final Executor MAIN_THREAD = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            BroadcastHandler.post(runnable);
+        }
+    };
+
+    private static final Executor CALLING_THREAD = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private static Executor sBackground;
+
+    private DispatchExecutors() {
+    }
+
+    /**
+     * Runs listeners on the main thread, in order. This is
+     * what listeners are registered with by default.
+     */
+    @NonNull
+    public static Executor mainThread() {
+        return MAIN_THREAD;
+    }
+
+    /**
+     * Runs listeners right away on the thread that raised the event,
+     * which is usually a task's executor thread. Listeners must be quick
+     * and mustn't block, and events raised on different threads may
+     * arrive at the same time.
+     */
+    @NonNull
+    public static Executor callingThread() {
+        return CALLING_THREAD;
+    }
+
+    /**
+     * Runs listeners on a single background thread, in order. The
+     * thread is shared by every manager and exits when it is idle.
+     */
+    @NonNull
+    public static synchronized Executor background() {
+        if (sBackground == null) {
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                                           new TaskThreadFactory("turnstile-events",
+                                                                 Process.THREAD_PRIORITY_BACKGROUND));
+            executor.allowCoreThreadTimeOut(true);
+            sBackground = executor;
+        }
+        return sBackground;
+    }
+
+    static boolean isMainThread(@NonNull Executor executor) {
+        return executor == MAIN_THREAD;
+    }
+}
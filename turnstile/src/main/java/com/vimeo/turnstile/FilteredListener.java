@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A listener that only wants the events that its filter matches. Two of
+ * them are equal if they wrap the same listener, so the listener alone is
+ * enough to unregister it.
+ */
+final class FilteredListener<T> implements TaskEvent.Listener<T> {
+
+    @NonNull
+    final TaskEvent.Listener<T> mListener;
+    @NonNull
+    private final TaskEvent.Filter<? super T> mFilter;
+
+    FilteredListener(@NonNull TaskEvent.Listener<T> listener, @NonNull TaskEvent.Filter<? super T> filter) {
+        mListener = listener;
+        mFilter = filter;
+    }
+
+    /**
+     * A key that finds the registration of the listener, whatever its filter.
+     */
+    @NonNull
+    static <T> FilteredListener<T> key(@NonNull TaskEvent.Listener<T> listener) {
+        return new FilteredListener<>(listener, TaskEventFilters.all());
+    }
+
+    boolean matches(@NonNull TaskEvent<T> event) {
+        return mFilter.matches(event);
+    }
+
+    @Override
+    public void onTaskEvent(@NonNull TaskEvent<T> event) {
+        mListener.onTaskEvent(event);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof FilteredListener && mListener.equals(((FilteredListener<?>) o).mListener);
+    }
+
+    @Override
+    public int hashCode() {
+        return mListener.hashCode();
+    }
+}
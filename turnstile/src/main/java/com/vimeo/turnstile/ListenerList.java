@@ -0,0 +1,239 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A copy-on-write list of listeners and the executors they're called on.
+ * Registering and dispatching never lock: dispatching works on a snapshot
+ * of the array, and changes swap in a new array.
+ */
+final class ListenerList<L> {
+
+    /**
+     * Calls one method of a listener.
+     */
+    interface Call<L> {
+
+        void call(@NonNull L listener);
+    }
+
+    /**
+     * A call that is told when it is handed to another thread and when that
+     * thread is done with it, so that the call can be reused afterwards.
+     */
+    interface RecyclableCall<L> extends Call<L> {
+
+        void retain();
+
+        void release();
+    }
+
+    /**
+     * A call that only some of the listeners want. It is asked on the
+     * thread that dispatches, so the others' executors aren't woken up.
+     */
+    interface ConditionalCall<L> extends Call<L> {
+
+        boolean accepts(@NonNull L listener);
+    }
+
+    private static final class Registration<L> {
+
+        @NonNull
+        final L mListener;
+        @NonNull
+        final Executor mExecutor;
+        // Cleared on unregister, so a call that is already queued is skipped
+        volatile boolean mIsRegistered = true;
+
+        Registration(@NonNull L listener, @NonNull Executor executor) {
+            mListener = listener;
+            mExecutor = executor;
+        }
+    }
+
+    private static final Registration[] EMPTY = new Registration[0];
+
+    @SuppressWarnings("unchecked")
+    private final AtomicReference<Registration<L>[]> mRegistrations =
+            new AtomicReference<Registration<L>[]>(EMPTY);
+
+    /**
+     * Adds the listener, or changes its executor if it was already added.
+     */
+    @SuppressWarnings("unchecked")
+    void add(@NonNull L listener, @NonNull Executor executor) {
+        Registration<L> registration = new Registration<>(listener, executor);
+        while (true) {
+            Registration<L>[] registrations = mRegistrations.get();
+            int index = indexOf(registrations, listener);
+            Registration<L>[] newRegistrations;
+            if (index >= 0) {
+                newRegistrations = registrations.clone();
+                newRegistrations[index] = registration;
+            } else {
+                newRegistrations = new Registration[registrations.length + 1];
+                System.arraycopy(registrations, 0, newRegistrations, 0, registrations.length);
+                newRegistrations[registrations.length] = registration;
+            }
+            if (mRegistrations.compareAndSet(registrations, newRegistrations)) {
+                if (index >= 0) {
+                    registrations[index].mIsRegistered = false;
+                }
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void remove(@NonNull L listener) {
+        while (true) {
+            Registration<L>[] registrations = mRegistrations.get();
+            int index = indexOf(registrations, listener);
+            if (index < 0) {
+                return;
+            }
+            Registration<L>[] newRegistrations = new Registration[registrations.length - 1];
+            System.arraycopy(registrations, 0, newRegistrations, 0, index);
+            System.arraycopy(registrations, index + 1, newRegistrations, index, newRegistrations.length - index);
+            if (mRegistrations.compareAndSet(registrations, newRegistrations)) {
+                registrations[index].mIsRegistered = false;
+                return;
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return mRegistrations.get().length == 0;
+    }
+
+    /**
+     * Hands the call to every listener's executor. All of the
+     * main thread listeners share a single message.
+     */
+    void dispatch(@NonNull Call<L> call) {
+        dispatch(call, false);
+    }
+
+    /**
+     * Like {@link #dispatch(Call)}, but calls the main thread listeners
+     * right away. Must only be called on the main thread.
+     */
+    void dispatchOnMainThread(@NonNull Call<L> call) {
+        dispatch(call, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(@NonNull final Call<L> call, boolean isOnMainThread) {
+        final Registration<L>[] registrations = mRegistrations.get();
+        final RecyclableCall<L> recyclableCall = call instanceof RecyclableCall ? (RecyclableCall<L>) call : null;
+        ConditionalCall<L> conditionalCall = call instanceof ConditionalCall ? (ConditionalCall<L>) call : null;
+        // Which of the main thread listeners turned the call down, null if none did
+        boolean[] rejected = null;
+        boolean hasMainThreadListeners = false;
+        for (int i = 0; i < registrations.length; i++) {
+            final Registration<L> registration = registrations[i];
+            boolean isMainThread = DispatchExecutors.isMainThread(registration.mExecutor);
+            if (conditionalCall != null && !conditionalCall.accepts(registration.mListener)) {
+                if (isMainThread) {
+                    if (rejected == null) {
+                        rejected = new boolean[registrations.length];
+                    }
+                    rejected[i] = true;
+                }
+                continue;
+            }
+            if (isMainThread) {
+                hasMainThreadListeners = true;
+                continue;
+            }
+            if (recyclableCall != null) {
+                recyclableCall.retain();
+            }
+            registration.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (registration.mIsRegistered) {
+                            call.call(registration.mListener);
+                        }
+                    } finally {
+                        if (recyclableCall != null) {
+                            recyclableCall.release();
+                        }
+                    }
+                }
+            });
+        }
+        if (!hasMainThreadListeners) {
+            return;
+        }
+        if (isOnMainThread) {
+            callMainThreadListeners(registrations, rejected, call);
+            return;
+        }
+        final boolean[] mainThreadRejected = rejected;
+        if (recyclableCall != null) {
+            recyclableCall.retain();
+        }
+        BroadcastHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callMainThreadListeners(registrations, mainThreadRejected, call);
+                } finally {
+                    if (recyclableCall != null) {
+                        recyclableCall.release();
+                    }
+                }
+            }
+        });
+    }
+
+    private static <L> void callMainThreadListeners(@NonNull Registration<L>[] registrations,
+                                                    @Nullable boolean[] rejected, @NonNull Call<L> call) {
+        for (int i = 0; i < registrations.length; i++) {
+            Registration<L> registration = registrations[i];
+            if (registration.mIsRegistered && DispatchExecutors.isMainThread(registration.mExecutor) &&
+                (rejected == null || !rejected[i])) {
+                call.call(registration.mListener);
+            }
+        }
+    }
+
+    private static <L> int indexOf(@NonNull Registration<L>[] registrations, @NonNull L listener) {
+        for (int i = 0; i < registrations.length; i++) {
+            if (registrations[i].mListener.equals(listener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
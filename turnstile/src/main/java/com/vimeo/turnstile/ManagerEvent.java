@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+
+import com.vimeo.turnstile.BaseTaskManager.ManagerEventListener;
+
+/**
+ * The events of a whole manager. Each one calls its own listener method,
+ * so sending one neither allocates nor compares strings.
+ */
+enum ManagerEvent implements ListenerList.Call<ManagerEventListener> {
+    RESUME_IF_NECESSARY {
+        @Override
+        public void call(@NonNull ManagerEventListener listener) {
+            listener.onResumeIfNecessary();
+        }
+    },
+    ALL_TASKS_FINISHED {
+        @Override
+        public void call(@NonNull ManagerEventListener listener) {
+            listener.onAllTasksFinished();
+        }
+    },
+    KILL_SERVICE {
+        @Override
+        public void call(@NonNull ManagerEventListener listener) {
+            listener.onKillService();
+        }
+    },
+    CONDITIONS_LOST {
+        @Override
+        public void call(@NonNull ManagerEventListener listener) {
+            listener.onConditionsLost();
+        }
+    },
+    CONDITIONS_RETURNED {
+        @Override
+        public void call(@NonNull ManagerEventListener listener) {
+            listener.onConditionsReturned();
+        }
+    },
+    ALL_TASKS_PAUSED {
+        @Override
+        public void call(@NonNull ManagerEventListener listener) {
+            listener.onAllTasksPaused();
+        }
+    },
+    ALL_TASKS_RESUMED {
+        @Override
+        public void call(@NonNull ManagerEventListener listener) {
+            listener.onAllTasksResumed();
+        }
+    }
+}
@@ -33,9 +33,9 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
+import android.os.SystemClock;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.annotation.PluralsRes;
 import android.support.annotation.RequiresApi;
 import android.support.annotation.StringRes;
@@ -48,6 +48,11 @@ import android.support.annotation.StringRes;
  */
 public abstract class NotificationTaskService<T extends BaseTask> extends BaseTaskService<T> {
 
+    /**
+     * The default for {@link #getNotificationUpdateIntervalMillis()}.
+     */
+    public static final long DEFAULT_NOTIFICATION_UPDATE_INTERVAL_MILLIS = 1000;
+
     /**
      * Unique id for the notification. We use it on notification start and to cancel it.
      */
@@ -62,13 +67,22 @@ public abstract class NotificationTaskService<T extends BaseTask> extends BaseTa
     private NotificationManager mNotificationManager;
     private Notification.Builder mProgressNotificationBuilder;
     private boolean mNotificationShowing;
+    private long mLastNotifyMillis;
+    private boolean mIsNotifyScheduled;
+    // The progress on the bar, or -1 while it is indeterminate
+    private int mShownProgress = -1;
 
     // ---- Task Counts ----
     private int mFinishedCount;
     private int mTotalTaskCount;
 
-    @Nullable
-    private String mTaskIdToListenOn;
+    private final Runnable mNotifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsNotifyScheduled = false;
+            notifyNow();
+        }
+    };
 
     // -----------------------------------------------------------------------------------------------------
     // Lifecycle
@@ -188,6 +202,17 @@ public abstract class NotificationTaskService<T extends BaseTask> extends BaseTa
      */
     @DrawableRes
     protected abstract int getProgressIconDrawable();
+
+    /**
+     * The shortest time between two updates of the progress notification.
+     * Every update is a call into the system, which drops updates that come
+     * too fast anyway, so changes in between are combined into one update.
+     *
+     * @return the interval in milliseconds, {@link #DEFAULT_NOTIFICATION_UPDATE_INTERVAL_MILLIS} by default.
+     */
+    protected long getNotificationUpdateIntervalMillis() {
+        return DEFAULT_NOTIFICATION_UPDATE_INTERVAL_MILLIS;
+    }
     // </editor-fold>
 
     // -----------------------------------------------------------------------------------------------------
@@ -206,6 +231,10 @@ public abstract class NotificationTaskService<T extends BaseTask> extends BaseTa
     @Override
     protected void onKillService() {
         mNotificationShowing = false;
+        mIsNotifyScheduled = false;
+        // The next notification is a new one, so it must show its progress
+        mShownProgress = -1;
+        BroadcastHandler.removeCallbacks(mNotifyRunnable);
         super.onKillService();
     }
 
@@ -222,24 +251,15 @@ public abstract class NotificationTaskService<T extends BaseTask> extends BaseTa
     }
 
     @Override
-    protected void onTaskProgress(@NonNull T task, int progress) {
-        if (mTaskIdToListenOn == null) {
-            mTaskIdToListenOn = task.getId();
-        }
-        if (mTaskIdToListenOn.equals(task.getId())) {
-            updateProgress(progress);
-        }
-        super.onTaskProgress(task, progress);
+    protected void onAggregateProgress(int progress) {
+        updateProgress(progress);
+        super.onAggregateProgress(progress);
     }
 
     @Override
     protected void onTaskSuccess(@NonNull T task) {
         mFinishedCount++;
         updateProgressContentText();
-        if (mTaskIdToListenOn != null && mTaskIdToListenOn.equals(task.getId())) {
-            // Null out this task id since we're no longer listening for it 3/2/16 [KV]
-            mTaskIdToListenOn = null;
-        }
 
         showOrUpdateNotificationFinish();
         super.onTaskSuccess(task);
@@ -263,6 +283,7 @@ public abstract class NotificationTaskService<T extends BaseTask> extends BaseTa
         // This is when the user will know their upload should be running
         startForeground(mProgressNotificationId, mProgressNotificationBuilder.build());
         mNotificationShowing = true;
+        mLastNotifyMillis = SystemClock.uptimeMillis();
     }
 
     /**
@@ -296,9 +317,13 @@ public abstract class NotificationTaskService<T extends BaseTask> extends BaseTa
     }
 
     /**
-     * Just update the progress on the bar
+     * Just update the progress on the bar, to the weighted progress of all of the tasks
      */
     private void updateProgress(int progress) {
+        if (progress == mShownProgress) {
+            return;
+        }
+        mShownProgress = progress;
         mProgressNotificationBuilder.setProgress(100, progress, false);
         notifyIfShowing();
     }
@@ -369,9 +394,28 @@ public abstract class NotificationTaskService<T extends BaseTask> extends BaseTa
         return getString(R.string.notification_progress, mFinishedCount, mTotalTaskCount);
     }
 
+    /**
+     * Updates the notification if it's showing, at most once per
+     * {@link #getNotificationUpdateIntervalMillis()}. The builder keeps every
+     * change, so a delayed update shows all of them.
+     */
     private void notifyIfShowing() {
+        if (!mNotificationShowing || mIsNotifyScheduled) {
+            return;
+        }
+        long delayMillis = mLastNotifyMillis + getNotificationUpdateIntervalMillis() - SystemClock.uptimeMillis();
+        if (delayMillis <= 0) {
+            notifyNow();
+        } else {
+            mIsNotifyScheduled = true;
+            BroadcastHandler.postDelayed(mNotifyRunnable, delayMillis);
+        }
+    }
+
+    private void notifyNow() {
         if (mNotificationShowing) {
             // Only actually call build if it's showing
+            mLastNotifyMillis = SystemClock.uptimeMillis();
             mNotificationManager.notify(mProgressNotificationId, mProgressNotificationBuilder.build());
         }
     }
@@ -0,0 +1,174 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket used to limit how often work is allowed to happen.
+ * The bucket holds at most the number of permits it was created with
+ * and refills continuously at a rate of that many permits per interval,
+ * so short bursts up to the capacity are allowed while the long term
+ * rate is held to the configured value.
+ * <p/>
+ * The {@link BaseTaskManager} uses it in two ways:
+ * <ol>
+ * <li>To limit how many tasks are started per interval, see
+ * {@link BaseTaskManager.Builder#withRateLimiter(RateLimiter)}. Tasks
+ * that can't get a permit are held in the queue and are started once one
+ * is available; no executor thread is spent waiting.</li>
+ * <li>To limit throughput from inside a task, see
+ * {@link BaseTaskManager.Builder#withBandwidthLimiter(RateLimiter)} and
+ * {@link BaseTask#acquireBandwidth(int)}.</li>
+ * </ol>
+ * A single instance may be shared between several managers if they all
+ * talk to the same rate limited API.
+ */
+public final class RateLimiter {
+
+    private final double mCapacity;
+    private final double mPermitsPerMilli;
+
+    private double mAvailablePermits;
+    private long mLastRefillMillis;
+
+    /**
+     * Creates a rate limiter that allows {@code permits} permits to be
+     * acquired every {@code interval}. The bucket starts out full.
+     *
+     * @param permits  the number of permits per interval, also the
+     *                 largest burst that will be allowed. Must be
+     *                 greater than 0.
+     * @param interval the length of the interval, must be greater than 0.
+     * @param unit     the unit of the interval.
+     */
+    public RateLimiter(int permits, long interval, @NonNull TimeUnit unit) {
+        long intervalMillis = unit.toMillis(interval);
+        if (permits <= 0 || intervalMillis <= 0) {
+            throw new IllegalArgumentException("Permits and interval must both be greater than 0");
+        }
+        mCapacity = permits;
+        mPermitsPerMilli = permits / (double) intervalMillis;
+        mAvailablePermits = permits;
+        mLastRefillMillis = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Convenience factory for a limiter allowing {@code permitsPerSecond}
+     * permits every second, e.g. bytes per second for a bandwidth limit.
+     */
+    @NonNull
+    public static RateLimiter perSecond(int permitsPerSecond) {
+        return new RateLimiter(permitsPerSecond, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Acquires a single permit if one is available without waiting.
+     *
+     * @return true if the permit was acquired, false otherwise.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Acquires the given number of permits if they are all available
+     * without waiting. Either all of the permits are acquired or none.
+     *
+     * @param permits the number of permits to acquire.
+     * @return true if the permits were acquired, false otherwise.
+     */
+    public synchronized boolean tryAcquire(int permits) {
+        refill();
+        if (mAvailablePermits >= permits) {
+            mAvailablePermits -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The time until the given number of permits will be available.
+     *
+     * @param permits the number of permits, clamped to the capacity
+     *                of the bucket.
+     * @return the delay in milliseconds, 0 if the permits are
+     * available right now.
+     */
+    public synchronized long getDelayMillis(int permits) {
+        refill();
+        double missing = Math.min(permits, mCapacity) - mAvailablePermits;
+        if (missing <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(missing / mPermitsPerMilli);
+    }
+
+    /**
+     * Blocks the calling thread until the given number of permits have
+     * been acquired. Requests larger than the capacity of the bucket are
+     * acquired in several steps, so this is safe to call with buffer sized
+     * amounts when limiting bandwidth.
+     *
+     * @param permits the number of permits to acquire.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    @WorkerThread
+    public void acquire(int permits) throws InterruptedException {
+        int remaining = permits;
+        while (remaining > 0) {
+            int step = (int) Math.min(remaining, (long) mCapacity);
+            long delay = getDelayMillis(step);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            } else if (tryAcquire(step)) {
+                remaining -= step;
+            }
+        }
+    }
+
+    /**
+     * Returns permits that were acquired but not used, e.g. when a second
+     * limiter refused the same start. The bucket never grows past its capacity.
+     *
+     * @param permits the number of permits to give back.
+     */
+    synchronized void release(int permits) {
+        refill();
+        mAvailablePermits = Math.min(mCapacity, mAvailablePermits + permits);
+    }
+
+    private void refill() {
+        long now = SystemClock.elapsedRealtime();
+        long elapsed = now - mLastRefillMillis;
+        if (elapsed > 0) {
+            mAvailablePermits = Math.min(mCapacity, mAvailablePermits + elapsed * mPermitsPerMilli);
+            mLastRefillMillis = now;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.utils.TaskLogger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of worker threads that several {@link BaseTaskManager} instances
+ * can share instead of each one creating its own fixed thread pool. The
+ * pool never runs more than its thread budget at once, however many
+ * managers use it, and the default budget is based on the number of
+ * processors on the device.
+ * <p/>
+ * Each manager gets its own {@link Lane}, which is a queue with a weight,
+ * a minimum and a maximum number of threads. Workers aren't tied to a lane,
+ * so when a thread is free it takes the next task from whichever lane is
+ * furthest below its share:
+ * <ol>
+ * <li>Lanes running fewer tasks than their minimum are served first, and
+ * threads are held back so that those minimums can always be met.</li>
+ * <li>Otherwise the lane with the fewest running tasks relative to its
+ * weight is served. Ties go to the lane that was served least recently.</li>
+ * <li>A lane never runs more than its maximum number of tasks.</li>
+ * </ol>
+ * Threads are created as work arrives and exit after they have been idle
+ * for {@link #KEEP_ALIVE_MILLIS}.
+ * <p/>
+ * Managers opt in with {@link BaseTaskManager.Builder#withSharedExecutor(SharedTaskExecutor, int, int)}.
+ */
+public final class SharedTaskExecutor {
+
+    private static final String THREAD_NAME = "turnstile-shared";
+    private static final long KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static SharedTaskExecutor sDefaultInstance;
+
+    private final int mMaxThreads;
+    @NonNull
+    private final ThreadFactory mThreadFactory;
+
+    // Everything below is guarded by mLock
+    private final Object mLock = new Object();
+    @NonNull
+    private final List<Lane> mLanes = new ArrayList<>();
+    private int mThreadCount;
+    private int mIdleThreadCount;
+    private int mBusyThreadCount;
+    // The number of runnables waiting in all of the lanes
+    private int mQueuedCount;
+    private long mServeCount;
+
+    /**
+     * Gets the process-wide instance, which runs at most
+     * one task per processor (and never fewer than two).
+     */
+    @NonNull
+    public static synchronized SharedTaskExecutor getDefault() {
+        if (sDefaultInstance == null) {
+            sDefaultInstance = new SharedTaskExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        }
+        return sDefaultInstance;
+    }
+
+    /**
+     * @param maxThreads the total number of tasks that may run at
+     *                   once across all lanes, must be greater than 0.
+     */
+    public SharedTaskExecutor(int maxThreads) {
+        this(maxThreads, new TaskThreadFactory(THREAD_NAME, Process.THREAD_PRIORITY_DEFAULT));
+    }
+
+    /**
+     * @param maxThreads    the total number of tasks that may run at
+     *                      once across all lanes, must be greater than 0.
+     * @param threadFactory creates the worker threads, e.g. a
+     *                      {@link TaskThreadFactory} with background priority.
+     */
+    public SharedTaskExecutor(int maxThreads, @NonNull ThreadFactory threadFactory) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be greater than 0");
+        }
+        mMaxThreads = maxThreads;
+        mThreadFactory = threadFactory;
+    }
+
+    /**
+     * @return the total number of tasks that may run at once.
+     */
+    public int getMaxThreads() {
+        return mMaxThreads;
+    }
+
+    /**
+     * Creates a new lane. The {@link BaseTaskManager} creates its own
+     * lane when it is built with a shared executor, so this is only
+     * needed to run other work under the same budget.
+     *
+     * @param name       the name of the lane, used for logging.
+     * @param weight     the share of the threads this lane gets relative
+     *                   to the other lanes, must be greater than 0.
+     * @param minThreads the number of threads this lane is guaranteed when
+     *                   it has work. The minimums of all lanes can't add up
+     *                   to more than the budget.
+     * @param maxThreads the most tasks this lane may run at once.
+     */
+    @NonNull
+    public Lane newLane(@NonNull String name, int weight, int minThreads, int maxThreads) {
+        if (weight <= 0 || minThreads < 0 || maxThreads <= 0 || minThreads > maxThreads) {
+            throw new IllegalArgumentException("Invalid lane " + name + ": weight=" + weight +
+                                               ", minThreads=" + minThreads + ", maxThreads=" + maxThreads);
+        }
+        synchronized (mLock) {
+            int reservedThreads = minThreads;
+            for (Lane lane : mLanes) {
+                reservedThreads += lane.mMinThreads;
+            }
+            if (reservedThreads > mMaxThreads) {
+                throw new IllegalArgumentException("Lane " + name + " would reserve " + reservedThreads +
+                                                   " threads but only " + mMaxThreads + " are available");
+            }
+            Lane lane = new Lane(name, weight, minThreads, maxThreads);
+            mLanes.add(lane);
+            return lane;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------
+    // Scheduling
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Scheduling">
+
+    private void enqueue(@NonNull Lane lane, @NonNull Runnable runnable) {
+        synchronized (mLock) {
+            if (lane.mIsShutdown) {
+                throw new RejectedExecutionException("Lane " + lane.mName + " has been shut down");
+            }
+            lane.mQueue.add(runnable);
+            mQueuedCount++;
+            if (mIdleThreadCount > 0) {
+                mLock.notifyAll();
+            }
+            // A burst can queue more than the threads that aren't running anything can pick up. Those
+            // include threads that were just started or woken up and haven't taken their work yet.
+            if (mQueuedCount > mThreadCount - mBusyThreadCount && mThreadCount < mMaxThreads) {
+                mThreadCount++;
+                mThreadFactory.newThread(mWorker).start();
+            }
+        }
+    }
+
+    /**
+     * Picks the lane the next free thread should take a task
+     * from. Must be called while holding the lock.
+     *
+     * @return the lane, or null if no lane may run anything now.
+     */
+    @Nullable
+    private Lane nextLaneLocked() {
+        Lane nextLane = null;
+        // Lanes below their minimum come first
+        for (Lane lane : mLanes) {
+            if (lane.hasWorkLocked() && lane.mActiveCount < lane.mMinThreads && isBehind(lane, nextLane)) {
+                nextLane = lane;
+            }
+        }
+        if (nextLane != null) {
+            return nextLane;
+        }
+        // Hold back enough threads to meet the minimums of lanes that aren't using them yet
+        int reservedThreads = 0;
+        for (Lane lane : mLanes) {
+            reservedThreads += Math.max(0, lane.mMinThreads - lane.mActiveCount);
+        }
+        if (mMaxThreads - mBusyThreadCount <= reservedThreads) {
+            return null;
+        }
+        for (Lane lane : mLanes) {
+            if (lane.hasWorkLocked() && lane.mActiveCount < lane.mMaxThreads && isBehind(lane, nextLane)) {
+                nextLane = lane;
+            }
+        }
+        return nextLane;
+    }
+
+    /**
+     * @return true if the lane has fewer running tasks relative to its
+     * weight than the current candidate.
+     */
+    private static boolean isBehind(@NonNull Lane lane, @Nullable Lane candidate) {
+        if (candidate == null) {
+            return true;
+        }
+        long share = (long) lane.mActiveCount * candidate.mWeight;
+        long candidateShare = (long) candidate.mActiveCount * lane.mWeight;
+        return share < candidateShare || (share == candidateShare && lane.mLastServed < candidate.mLastServed);
+    }
+
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Lane lane;
+                Runnable runnable;
+                synchronized (mLock) {
+                    long idleSinceMillis = System.currentTimeMillis();
+                    while (true) {
+                        lane = nextLaneLocked();
+                        if (lane != null) {
+                            break;
+                        }
+                        long waitMillis = KEEP_ALIVE_MILLIS - (System.currentTimeMillis() - idleSinceMillis);
+                        if (waitMillis <= 0) {
+                            mThreadCount--;
+                            return;
+                        }
+                        mIdleThreadCount++;
+                        try {
+                            mLock.wait(waitMillis);
+                        } catch (InterruptedException e) {
+                            // Only a stray interrupt left over from a cancelled task, keep working
+                        } finally {
+                            mIdleThreadCount--;
+                        }
+                    }
+                    runnable = lane.mQueue.poll();
+                    mQueuedCount--;
+                    lane.mActiveCount++;
+                    lane.mLastServed = ++mServeCount;
+                    mBusyThreadCount++;
+                }
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    // FutureTask already captures task failures, this would be a bug in a plain runnable
+                    TaskLogger.getLogger().e("Uncaught exception in lane " + lane.mName, e);
+                } finally {
+                    // Clear an interrupt from a cancelled task so it doesn't leak into the next one
+                    Thread.interrupted();
+                    synchronized (mLock) {
+                        lane.mActiveCount--;
+                        mBusyThreadCount--;
+                        lane.removeIfTerminatedLocked();
+                        // Freeing a thread may let any lane run again
+                        mLock.notifyAll();
+                    }
+                }
+            }
+        }
+    };
+    // </editor-fold>
+
+    /**
+     * A queue of work with its own share of the {@link SharedTaskExecutor}.
+     * It can be used like any other {@link java.util.concurrent.ExecutorService}.
+     * Shutting down a lane only affects the lane, not the shared threads.
+     */
+    public final class Lane extends AbstractExecutorService {
+
+        @NonNull
+        final String mName;
+        final int mWeight;
+        final int mMinThreads;
+        final int mMaxThreads;
+
+        // Guarded by the executor's lock
+        final ArrayDeque<Runnable> mQueue = new ArrayDeque<>();
+        int mActiveCount;
+        long mLastServed;
+        boolean mIsShutdown;
+
+        Lane(@NonNull String name, int weight, int minThreads, int maxThreads) {
+            mName = name;
+            mWeight = weight;
+            mMinThreads = minThreads;
+            mMaxThreads = maxThreads;
+        }
+
+        boolean hasWorkLocked() {
+            return !mQueue.isEmpty();
+        }
+
+        @NonNull
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return the number of tasks from this lane running right now.
+         */
+        public int getActiveCount() {
+            synchronized (mLock) {
+                return mActiveCount;
+            }
+        }
+
+        /**
+         * @return the number of tasks waiting in this lane.
+         */
+        public int getQueuedCount() {
+            synchronized (mLock) {
+                return mQueue.size();
+            }
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            enqueue(this, command);
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (mLock) {
+                mIsShutdown = true;
+                removeIfTerminatedLocked();
+            }
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (mLock) {
+                mIsShutdown = true;
+                List<Runnable> pending = new ArrayList<>(mQueue);
+                mQueuedCount -= mQueue.size();
+                mQueue.clear();
+                removeIfTerminatedLocked();
+                return pending;
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (mLock) {
+                return mIsShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (mLock) {
+                return isTerminatedLocked();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            long deadlineMillis = System.currentTimeMillis() + unit.toMillis(timeout);
+            synchronized (mLock) {
+                while (!isTerminatedLocked()) {
+                    long waitMillis = deadlineMillis - System.currentTimeMillis();
+                    if (waitMillis <= 0) {
+                        return false;
+                    }
+                    mLock.wait(waitMillis);
+                    removeIfTerminatedLocked();
+                }
+                return true;
+            }
+        }
+
+        private boolean isTerminatedLocked() {
+            return mIsShutdown && mActiveCount == 0 && mQueue.isEmpty();
+        }
+
+        private void removeIfTerminatedLocked() {
+            if (isTerminatedLocked()) {
+                // Gives its reserved threads back to the other lanes
+                mLanes.remove(this);
+                mLock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.vimeo.turnstile.utils.TaskLogger;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A group of parts that a {@link BaseTask} runs concurrently from inside
+ * {@link BaseTask#execute()}, e.g. the parts of a multipart upload. Create
+ * one with {@link BaseTask#newSubTaskGroup(int)}, {@link #add(Part)} the
+ * parts and then call {@link #runAll()}.
+ * <p/>
+ * The parts run on the task's own thread plus at most {@code maxParallelism - 1}
+ * helpers submitted to the manager's executor, so they count against the
+ * same concurrency budget as the tasks. The task's thread keeps running
+ * parts itself rather than waiting on helpers that may still be queued,
+ * so the group can't deadlock when every thread of the manager is busy;
+ * it only waits for parts that another thread is already running.
+ * <p/>
+ * If a part fails, the parts that haven't started are skipped and the
+ * threads running the others are interrupted. The parts are also stopped
+ * when the task's {@link CancellationToken} is cancelled, and interrupted
+ * when the task's thread is interrupted.
+ */
+public final class SubTaskGroup {
+
+    /**
+     * A single unit of work in a {@link SubTaskGroup}.
+     */
+    public static abstract class Part {
+
+        private SubTaskGroup mGroup;
+        private int mIndex;
+
+        /**
+         * Runs the part. Throwing fails the whole group.
+         */
+        @WorkerThread
+        protected abstract void run() throws Exception;
+
+        /**
+         * Reports the progress of this part. The group reports the
+         * average progress of all its parts to the task.
+         *
+         * @param progress the progress, between 0 and 100.
+         */
+        protected final void onProgress(int progress) {
+            mGroup.onPartProgress(mIndex, progress);
+        }
+
+        /**
+         * @return true if another part has failed or the task has been
+         * asked to stop. Long running parts should check this and return.
+         */
+        protected final boolean isCancelled() {
+            return mGroup.isCancelled();
+        }
+    }
+
+    @NonNull
+    private final BaseTask mTask;
+    @Nullable
+    private final Executor mExecutor;
+    private final int mMaxParallelism;
+
+    @NonNull
+    private final List<Part> mParts = new ArrayList<>();
+    private boolean mHasRun;
+
+    // ---- Part State ----
+    // Guarded by mLock
+    private final Object mLock = new Object();
+    private int mNextPartIndex;
+    private int mRunningPartCount;
+    private int mCompletedPartCount;
+    @NonNull
+    private final Set<Thread> mRunningThreads = new HashSet<>();
+    @Nullable
+    private Exception mFailure;
+    private volatile boolean mIsFailed;
+    private volatile boolean mIsInterrupted;
+
+    // ---- Progress ----
+    // Guarded by mProgressLock
+    private final Object mProgressLock = new Object();
+    private int[] mPartProgress;
+    private int mReportedProgress = -1;
+
+    SubTaskGroup(@NonNull BaseTask task, @Nullable Executor executor, int maxParallelism) {
+        if (maxParallelism <= 0) {
+            throw new IllegalArgumentException("maxParallelism must be greater than 0");
+        }
+        mTask = task;
+        mExecutor = executor;
+        mMaxParallelism = maxParallelism;
+    }
+
+    /**
+     * Adds a part to the group. Parts start in the order they are added.
+     *
+     * @throws IllegalStateException if the group has already run.
+     */
+    @NonNull
+    public SubTaskGroup add(@NonNull Part part) {
+        if (mHasRun) {
+            throw new IllegalStateException("Parts can't be added once the group has run");
+        }
+        part.mGroup = this;
+        part.mIndex = mParts.size();
+        mParts.add(part);
+        return this;
+    }
+
+    /**
+     * Runs every part and returns once they have all finished or been
+     * skipped. This must be called from the task's thread and may only
+     * be called once.
+     *
+     * @return true if every part completed, false if a part failed (see
+     * {@link #getFailure()}) or the task was asked to stop.
+     * @throws InterruptedException if the task's thread is interrupted
+     *                              while waiting for the other parts. The
+     *                              parts that are still running are interrupted
+     *                              as well and have returned by the time this
+     *                              is thrown.
+     */
+    @WorkerThread
+    public boolean runAll() throws InterruptedException {
+        if (mHasRun) {
+            throw new IllegalStateException("A group can only run once");
+        }
+        mHasRun = true;
+        int partCount = mParts.size();
+        synchronized (mProgressLock) {
+            mPartProgress = new int[partCount];
+        }
+        int helperCount = Math.min(mMaxParallelism, partCount) - 1;
+        for (int i = 0; i < helperCount && mExecutor != null; i++) {
+            try {
+                mExecutor.execute(mHelper);
+            } catch (RejectedExecutionException e) {
+                // The manager is shutting down, this thread will run the remaining parts
+                break;
+            }
+        }
+        runParts();
+        synchronized (mLock) {
+            // Every part has been claimed or the group was cancelled, so no new parts
+            // will start. Wait for the ones other threads are still running.
+            while (mRunningPartCount > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    if (mIsFailed && !mTask.isCancellationRequested()) {
+                        // Sent by a failed part before this thread started waiting
+                        continue;
+                    }
+                    if (!mIsInterrupted) {
+                        // The task is being stopped, so stop the helpers too rather than
+                        // returning while they still run parts on other threads
+                        mIsInterrupted = true;
+                        for (Thread thread : mRunningThreads) {
+                            thread.interrupt();
+                        }
+                    }
+                }
+            }
+            if (mIsInterrupted) {
+                throw new InterruptedException("Interrupted while waiting for the parts of task " + mTask.getId());
+            }
+            if (mIsFailed && !mTask.isCancellationRequested()) {
+                // Only clear the interrupt we may have sent this thread for a failed part
+                Thread.interrupted();
+            }
+            return !mIsFailed && !mTask.isCancellationRequested() && mCompletedPartCount == partCount;
+        }
+    }
+
+    /**
+     * @return the exception of the first part that failed, or null.
+     */
+    @Nullable
+    public Exception getFailure() {
+        synchronized (mLock) {
+            return mFailure;
+        }
+    }
+
+    boolean isCancelled() {
+        return mIsFailed || mIsInterrupted || mTask.isCancellationRequested();
+    }
+
+    private final Runnable mHelper = new Runnable() {
+        @Override
+        public void run() {
+            runParts();
+            // Don't leak an interrupt meant for a part into the executor's next task
+            Thread.interrupted();
+        }
+    };
+
+    /**
+     * Claims and runs parts until there are none left or the group is cancelled.
+     */
+    private void runParts() {
+        Thread currentThread = Thread.currentThread();
+        while (true) {
+            Part part;
+            synchronized (mLock) {
+                // Claiming and counting the part as running happen together so
+                // that the waiting thread never misses a part that is starting
+                if (isCancelled() || mNextPartIndex >= mParts.size()) {
+                    return;
+                }
+                part = mParts.get(mNextPartIndex++);
+                mRunningPartCount++;
+                mRunningThreads.add(currentThread);
+            }
+            Exception failure = null;
+            try {
+                part.run();
+            } catch (Exception e) {
+                failure = e;
+            }
+            synchronized (mLock) {
+                mRunningThreads.remove(currentThread);
+                mRunningPartCount--;
+                if (failure == null) {
+                    mCompletedPartCount++;
+                } else if (!mIsFailed) {
+                    TaskLogger.getLogger().e("Part " + part.mIndex + " of task " + mTask.getId() + " failed", failure);
+                    mFailure = failure;
+                    mIsFailed = true;
+                    for (Thread thread : mRunningThreads) {
+                        thread.interrupt();
+                    }
+                }
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private void onPartProgress(int index, int progress) {
+        synchronized (mProgressLock) {
+            mPartProgress[index] = progress;
+            long sum = 0;
+            for (int partProgress : mPartProgress) {
+                sum += partProgress;
+            }
+            int totalProgress = (int) (sum / mPartProgress.length);
+            if (totalProgress != mReportedProgress) {
+                mReportedProgress = totalProgress;
+                mTask.onTaskProgress(totalProgress);
+            }
+        }
+    }
+}
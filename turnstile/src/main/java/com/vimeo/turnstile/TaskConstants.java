@@ -23,11 +23,6 @@
  */
 package com.vimeo.turnstile;
 
-import android.support.annotation.StringDef;
-
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-
 /**
  * Constants used throughout the library.
  * <p/>
@@ -43,39 +38,6 @@ final class TaskConstants {
     public static final String TASK_ID = "TASK_ID";
     public static final String TASK_ERROR = "TASK_ERROR";
 
-    // ---- Broadcast Events ----
-    @Retention(RetentionPolicy.SOURCE)
-    @StringDef({
-            EVENT_PROGRESS, EVENT_SUCCESS, EVENT_FAILURE, EVENT_RETRY, EVENT_MANAGER_RETRY, EVENT_ADDED, EVENT_CANCELLED,
-            EVENT_STARTED, EVENT_PAUSED
-    })
-    public @interface TaskEvent {}
-
-    @Retention(RetentionPolicy.SOURCE)
-    @StringDef({
-            EVENT_RESUME_IF_NECESSARY, EVENT_ALL_TASKS_FINISHED, EVENT_KILL_SERVICE, EVENT_CONDITIONS_LOST,
-            EVENT_CONDITIONS_RETURNED, EVENT_ALL_TASKS_PAUSED, EVENT_ALL_TASKS_RESUMED
-    })
-    public @interface ManagerEvent {}
-
-    public static final String EVENT_PROGRESS = "EVENT_PROGRESS";
-    public static final String EVENT_SUCCESS = "EVENT_SUCCESS";
-    public static final String EVENT_FAILURE = "EVENT_FAILURE";
-    public static final String EVENT_RETRY = "EVENT_RETRY";
-    public static final String EVENT_MANAGER_RETRY = "EVENT_MANAGER_RETRY";
-    public static final String EVENT_ADDED = "EVENT_ADDED";
-    public static final String EVENT_STARTED = "EVENT_STARTED";
-    public static final String EVENT_CANCELLED = "EVENT_CANCELLED";
-    public static final String EVENT_PAUSED = "EVENT_PAUSED";
-
-    public static final String EVENT_RESUME_IF_NECESSARY = "EVENT_RESUME_IF_NECESSARY";
-    public static final String EVENT_ALL_TASKS_FINISHED = "EVENT_ALL_TASKS_FINISHED";
-    public static final String EVENT_KILL_SERVICE = "KILL_SERVICE";
-    public static final String EVENT_CONDITIONS_LOST = "EVENT_CONDITIONS_LOST";
-    public static final String EVENT_CONDITIONS_RETURNED = "EVENT_CONDITIONS_RETURNED";
-    public static final String EVENT_ALL_TASKS_PAUSED = "EVENT_ALL_TASKS_PAUSED";
-    public static final String EVENT_ALL_TASKS_RESUMED = "EVENT_ALL_TASKS_RESUMED";
-
     private TaskConstants() {
     }
 }
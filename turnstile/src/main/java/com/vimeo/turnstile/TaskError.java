@@ -114,6 +114,32 @@ public class TaskError implements Serializable {
 
     private static final long serialVersionUID = -6263900550627688906L;
 
+    /**
+     * The domain of errors that are raised by the {@link BaseTaskManager}
+     * rather than by the task itself.
+     */
+    public static final String DOMAIN_TURNSTILE = "turnstile";
+
+    /**
+     * The task ran past its deadline and was interrupted.
+     */
+    public static final int CODE_TIMEOUT = -1;
+
+    /**
+     * The task didn't report progress within its stall timeout and was interrupted.
+     */
+    public static final int CODE_STALLED = -2;
+
+    /**
+     * The batch the task was run in threw before the task's result was reported.
+     */
+    public static final int CODE_BATCH_FAILED = -3;
+
+    /**
+     * The manager didn't take the task, e.g. because it has been shut down.
+     */
+    public static final int CODE_REJECTED = -4;
+
     /**
      * The domain under which this error occurred.
      * Examples: Network, Throwable
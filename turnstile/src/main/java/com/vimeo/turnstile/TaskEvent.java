@@ -0,0 +1,211 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single event of a task. Progress events are pooled and reused once
+ * every listener has been called, so a listener mustn't hold on to a
+ * {@link TaskEventType#PROGRESS} event, it should copy what it needs.
+ * Every other event can be kept.
+ */
+public final class TaskEvent<T> {
+
+    /**
+     * A listener for every event of the tasks of a manager. {@link
+     * BaseTaskManager.TaskEventListener} implements this with a callback
+     * for each type.
+     */
+    public interface Listener<T> {
+
+        void onTaskEvent(@NonNull TaskEvent<T> event);
+    }
+
+    /**
+     * Decides which events a listener gets, see {@link TaskEventFilters}.
+     * It is called on the thread that sends the event, so it must be quick.
+     */
+    public interface Filter<T> {
+
+        boolean matches(@NonNull TaskEvent<? extends T> event);
+    }
+
+    public static final int NO_PROGRESS = -1;
+
+    private static final int MAX_POOL_SIZE = 16;
+
+    private static final Object sPoolLock = new Object();
+    @Nullable
+    private static TaskEvent<?> sPool;
+    private static int sPoolSize;
+
+    private TaskEventType mType;
+    private T mTask;
+    private int mProgress;
+    @Nullable
+    private TaskError mError;
+    @Nullable
+    private String mName;
+    private long mVersion;
+
+    private final boolean mIsPooled;
+    // One for the sender, plus one for each message that still has to call listeners
+    private final AtomicInteger mReferences = new AtomicInteger();
+    @Nullable
+    private TaskEvent<?> mNext;
+
+    // Created once per event object, so that sending a pooled event allocates nothing
+    final DispatchCall mCall = new DispatchCall();
+
+    @SuppressWarnings("unchecked")
+    final class DispatchCall implements ListenerList.RecyclableCall<Listener<T>>, ListenerList.ConditionalCall<Listener<T>> {
+
+        @Override
+        public void call(@NonNull Listener<T> listener) {
+            listener.onTaskEvent(TaskEvent.this);
+        }
+
+        @Override
+        public boolean accepts(@NonNull Listener<T> listener) {
+            return !(listener instanceof FilteredListener) || ((FilteredListener<T>) listener).matches(TaskEvent.this);
+        }
+
+        @Override
+        public void retain() {
+            mReferences.incrementAndGet();
+        }
+
+        @Override
+        public void release() {
+            TaskEvent.this.release();
+        }
+    }
+
+    private TaskEvent(boolean isPooled) {
+        mIsPooled = isPooled;
+    }
+
+    /**
+     * Returns an event that is owned by the caller until {@link #release()}.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    static <T> TaskEvent<T> obtain(@NonNull TaskEventType type, @NonNull T task, int progress,
+                                   @Nullable TaskError error, @Nullable String name) {
+        TaskEvent<T> event = null;
+        if (type == TaskEventType.PROGRESS) {
+            synchronized (sPoolLock) {
+                if (sPool != null) {
+                    event = (TaskEvent<T>) sPool;
+                    sPool = event.mNext;
+                    event.mNext = null;
+                    sPoolSize--;
+                }
+            }
+            if (event == null) {
+                event = new TaskEvent<>(true);
+            }
+        } else {
+            event = new TaskEvent<>(false);
+        }
+        event.mType = type;
+        event.mTask = task;
+        event.mProgress = progress;
+        event.mError = error;
+        event.mName = name;
+        event.mReferences.set(1);
+        return event;
+    }
+
+    void release() {
+        if (mReferences.decrementAndGet() != 0 || !mIsPooled) {
+            return;
+        }
+        mTask = null;
+        mError = null;
+        mName = null;
+        synchronized (sPoolLock) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    @NonNull
+    public TaskEventType getType() {
+        return mType;
+    }
+
+    @NonNull
+    public T getTask() {
+        return mTask;
+    }
+
+    /**
+     * @return the position of the event in the manager's stream of events,
+     * greater for every event that is sent. See {@link TaskSnapshot#getVersion()}.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    void setVersion(long version) {
+        mVersion = version;
+    }
+
+    /**
+     * @return the progress of a {@link TaskEventType#PROGRESS} event,
+     * otherwise {@link #NO_PROGRESS}.
+     */
+    public int getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * @return the error of a {@link TaskEventType#FAILURE} event.
+     */
+    @Nullable
+    public TaskError getError() {
+        return mError;
+    }
+
+    /**
+     * @return the name of an {@link TaskEventType#ADDITIONAL} event.
+     */
+    @Nullable
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskEvent{" + mType + ", " + mTask + '}';
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+
+import com.vimeo.turnstile.BaseTask.TaskState;
+
+import java.util.EnumSet;
+
+/**
+ * Common filters for {@link BaseTaskManager#registerTaskEventListener(TaskEvent.Filter, TaskEvent.Listener)}.
+ */
+public final class TaskEventFilters {
+
+    private static final TaskEvent.Filter<Object> ALL = new TaskEvent.Filter<Object>() {
+        @Override
+        public boolean matches(@NonNull TaskEvent<?> event) {
+            return true;
+        }
+    };
+
+    private TaskEventFilters() {
+    }
+
+    /**
+     * Matches every event.
+     */
+    @NonNull
+    public static TaskEvent.Filter<Object> all() {
+        return ALL;
+    }
+
+    /**
+     * Matches the events of the given types.
+     */
+    @NonNull
+    public static TaskEvent.Filter<Object> ofTypes(@NonNull TaskEventType type, @NonNull TaskEventType... types) {
+        final EnumSet<TaskEventType> typeSet = EnumSet.of(type, types);
+        return new TaskEvent.Filter<Object>() {
+            @Override
+            public boolean matches(@NonNull TaskEvent<?> event) {
+                return typeSet.contains(event.getType());
+            }
+        };
+    }
+
+    /**
+     * Matches the events of tasks that are in one of the given states
+     * when the event is sent.
+     */
+    @NonNull
+    public static TaskEvent.Filter<BaseTask> inStates(@NonNull TaskState state, @NonNull TaskState... states) {
+        final EnumSet<TaskState> stateSet = EnumSet.of(state, states);
+        return new TaskEvent.Filter<BaseTask>() {
+            @Override
+            public boolean matches(@NonNull TaskEvent<? extends BaseTask> event) {
+                return stateSet.contains(event.getTask().getTaskState());
+            }
+        };
+    }
+}
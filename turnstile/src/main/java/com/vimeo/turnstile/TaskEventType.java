@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+/**
+ * The kinds of {@link TaskEvent} a manager sends.
+ */
+public enum TaskEventType {
+    ADDED,
+    STARTED,
+    PAUSED,
+    PROGRESS,
+    SUCCESS,
+    CANCELED,
+    FAILURE,
+    /**
+     * The task is retried, either automatically or by the manager.
+     */
+    RETRY,
+    /**
+     * The task was told to retry by {@link BaseTaskManager#retryTask(String)}.
+     */
+    MANAGER_RETRY,
+    /**
+     * An event sent with {@link BaseTaskManager#broadcastAdditionalTaskEvent(BaseTask, String)},
+     * see {@link TaskEvent#getName()}.
+     */
+    ADDITIONAL
+}
@@ -0,0 +1,369 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A handle to a single task, returned by {@link BaseTaskManager#addTask(BaseTask)}.
+ * It lets the caller wait for that task, or be called back about it, without
+ * listening to the events of every other task.
+ * <p/>
+ * The handle is done once the task succeeds, fails or is cancelled:
+ * <ul>
+ * <li>{@link #get()} returns the task after a success, throws an
+ * {@link ExecutionException} after a failure and a
+ * {@link CancellationException} after a cancellation.</li>
+ * <li>{@link Callback}s added before or after that are called once
+ * with the outcome, on the executor they were added with.</li>
+ * </ul>
+ * A failed task may be retried, but the handle stays failed. Use
+ * {@link BaseTaskManager#getTaskHandle(String)} to get a handle
+ * for the next attempt.
+ */
+public final class TaskHandle<T extends BaseTask> implements Future<T> {
+
+    /**
+     * Receives the progress and the outcome of a single task.
+     * Only one of the outcome methods is ever called.
+     */
+    public static abstract class Callback<T> {
+
+        public void onProgress(@NonNull T task, int progress) {
+        }
+
+        public void onSuccess(@NonNull T task) {
+        }
+
+        public void onFailure(@NonNull T task, @NonNull TaskError error) {
+        }
+
+        public void onCanceled(@NonNull T task) {
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS,
+        FAILURE,
+        CANCELED
+    }
+
+    private static final class Registration<T> {
+
+        @NonNull
+        final Callback<? super T> mCallback;
+        @NonNull
+        final Executor mExecutor;
+
+        Registration(@NonNull Callback<? super T> callback, @NonNull Executor executor) {
+            mCallback = callback;
+            mExecutor = executor;
+        }
+    }
+
+    @NonNull
+    private final T mTask;
+    // Null for the handles of tasks the manager rejected
+    @Nullable
+    private final BaseTaskManager<T> mManager;
+
+    // Everything below is guarded by mLock
+    private final Object mLock = new Object();
+    @NonNull
+    private final List<Registration<T>> mRegistrations = new ArrayList<>();
+    @Nullable
+    private Outcome mOutcome;
+    @Nullable
+    private TaskError mTaskError;
+    private int mProgress = -1;
+
+    TaskHandle(@NonNull T task, @Nullable BaseTaskManager<T> manager) {
+        mTask = task;
+        mManager = manager;
+    }
+
+    @NonNull
+    public String getTaskId() {
+        return mTask.getId();
+    }
+
+    @NonNull
+    public T getTask() {
+        return mTask;
+    }
+
+    /**
+     * @return the last progress passed to the callbacks, or -1
+     * if the task hasn't reported any progress yet.
+     */
+    public int getProgress() {
+        synchronized (mLock) {
+            return mProgress;
+        }
+    }
+
+    /**
+     * @return the error the task failed with, or null if it hasn't failed.
+     */
+    @Nullable
+    public TaskError getTaskError() {
+        synchronized (mLock) {
+            return mTaskError;
+        }
+    }
+
+    /**
+     * Adds a callback that is called on the main thread.
+     *
+     * @see #addCallback(Callback, Executor)
+     */
+    public void addCallback(@NonNull Callback<? super T> callback) {
+        addCallback(callback, DispatchExecutors.mainThread());
+    }
+
+    /**
+     * Adds a callback for the progress and the outcome of the task. If the
+     * handle is already done, the outcome is passed to the callback right
+     * away. Progress is coalesced by the manager, see
+     * {@link BaseTaskManager.Builder#withProgressInterval(long, TimeUnit)},
+     * and a success is always preceded by a progress of 100. Progress is only
+     * ordered if the executor runs its commands in order, e.g. a single thread.
+     *
+     * @param callback the callback.
+     * @param executor the executor the callback is called on.
+     */
+    public void addCallback(@NonNull Callback<? super T> callback, @NonNull Executor executor) {
+        Registration<T> registration = new Registration<T>(callback, executor);
+        Outcome outcome;
+        TaskError taskError;
+        synchronized (mLock) {
+            outcome = mOutcome;
+            taskError = mTaskError;
+            if (outcome == null) {
+                mRegistrations.add(registration);
+                return;
+            }
+        }
+        dispatchOutcome(registration, outcome, taskError);
+    }
+
+    public void removeCallback(@NonNull Callback<? super T> callback) {
+        synchronized (mLock) {
+            for (int i = mRegistrations.size() - 1; i >= 0; i--) {
+                if (mRegistrations.get(i).mCallback == callback) {
+                    mRegistrations.remove(i);
+                }
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------
+    // Future
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Future">
+
+    /**
+     * Cancels the task with {@link BaseTaskManager#cancelTask(String)},
+     * which removes it from the manager.
+     *
+     * @param mayInterruptIfRunning ignored, a running task is always asked
+     *                              to stop and interrupted once the
+     *                              cancellation grace period has passed.
+     * @return false if the handle was already done.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone() || mManager == null) {
+            return false;
+        }
+        mManager.cancelTask(mTask.getId());
+        // The manager may not have known the task anymore, e.g. after cancelAll
+        onCanceled();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        synchronized (mLock) {
+            return mOutcome == Outcome.CANCELED;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        synchronized (mLock) {
+            return mOutcome != null;
+        }
+    }
+
+    /**
+     * Waits for the task to succeed. This blocks, so it must
+     * not be called from the main thread.
+     */
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        synchronized (mLock) {
+            while (mOutcome == null) {
+                mLock.wait();
+            }
+            return getResultLocked();
+        }
+    }
+
+    /**
+     * Waits at most the timeout for the task to succeed. This
+     * blocks, so it must not be called from the main thread.
+     */
+    @Override
+    public T get(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (mLock) {
+            while (mOutcome == null) {
+                long waitNanos = deadlineNanos - System.nanoTime();
+                if (waitNanos <= 0) {
+                    throw new TimeoutException("Task " + mTask.getId() + " isn't done yet");
+                }
+                TimeUnit.NANOSECONDS.timedWait(mLock, waitNanos);
+            }
+            return getResultLocked();
+        }
+    }
+
+    @NonNull
+    private T getResultLocked() throws ExecutionException {
+        switch (mOutcome) {
+            case SUCCESS:
+                return mTask;
+            case FAILURE:
+                TaskError taskError = mTaskError;
+                throw new ExecutionException(taskError != null ? taskError.getMessage() : null,
+                                             taskError != null ? taskError.getException() : null);
+            case CANCELED:
+            default:
+                throw new CancellationException("Task " + mTask.getId() + " was cancelled");
+        }
+    }
+    // </editor-fold>
+
+    // -----------------------------------------------------------------------------------------------------
+    // Manager Events
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Manager Events">
+
+    void onProgress(int progress) {
+        List<Registration<T>> registrations;
+        synchronized (mLock) {
+            if (mOutcome != null || mProgress == progress) {
+                return;
+            }
+            mProgress = progress;
+            registrations = new ArrayList<>(mRegistrations);
+        }
+        for (Registration<T> registration : registrations) {
+            dispatchProgress(registration, progress);
+        }
+    }
+
+    private void dispatchProgress(@NonNull final Registration<T> registration, final int progress) {
+        registration.mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                registration.mCallback.onProgress(mTask, progress);
+            }
+        });
+    }
+
+    void onSuccess() {
+        complete(Outcome.SUCCESS, null);
+    }
+
+    void onFailure(@NonNull TaskError taskError) {
+        complete(Outcome.FAILURE, taskError);
+    }
+
+    void onCanceled() {
+        complete(Outcome.CANCELED, null);
+    }
+
+    private void complete(@NonNull Outcome outcome, @Nullable TaskError taskError) {
+        List<Registration<T>> registrations;
+        boolean isFinalProgressMissing;
+        synchronized (mLock) {
+            if (mOutcome != null) {
+                return;
+            }
+            // The last coalesced progress may not have been delivered yet
+            isFinalProgressMissing = outcome == Outcome.SUCCESS && mProgress != 100;
+            if (isFinalProgressMissing) {
+                mProgress = 100;
+            }
+            mOutcome = outcome;
+            mTaskError = taskError;
+            registrations = new ArrayList<>(mRegistrations);
+            mRegistrations.clear();
+            mLock.notifyAll();
+        }
+        for (Registration<T> registration : registrations) {
+            if (isFinalProgressMissing) {
+                dispatchProgress(registration, 100);
+            }
+            dispatchOutcome(registration, outcome, taskError);
+        }
+    }
+
+    private void dispatchOutcome(@NonNull final Registration<T> registration,
+                                 @NonNull final Outcome outcome,
+                                 @Nullable final TaskError taskError) {
+        registration.mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                switch (outcome) {
+                    case SUCCESS:
+                        registration.mCallback.onSuccess(mTask);
+                        break;
+                    case FAILURE:
+                        if (taskError != null) {
+                            registration.mCallback.onFailure(mTask, taskError);
+                        }
+                        break;
+                    case CANCELED:
+                        registration.mCallback.onCanceled(mTask);
+                        break;
+                }
+            }
+        });
+    }
+    // </editor-fold>
+}
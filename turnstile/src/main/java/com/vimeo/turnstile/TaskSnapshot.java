@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.BaseTask.TaskState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tasks of a manager, and their states and progress, at one point in
+ * the stream of {@link TaskEvent}s. See
+ * {@link BaseTaskManager#registerTaskEventListenerWithSnapshot(TaskEvent.Listener, java.util.concurrent.Executor)}.
+ * <p/>
+ * The states and progress are copied, so they don't change when the tasks
+ * do. The tasks are in no particular order.
+ */
+public final class TaskSnapshot<T extends BaseTask> {
+
+    private final long mVersion;
+    @NonNull
+    private final List<T> mTasks;
+    @NonNull
+    private final Map<String, TaskState> mStates;
+    @NonNull
+    private final Map<String, Integer> mProgress;
+
+    TaskSnapshot(long version, @NonNull Map<String, T> tasks) {
+        mVersion = version;
+        mTasks = new ArrayList<>(tasks.size());
+        mStates = new HashMap<>(tasks.size() * 2);
+        mProgress = new HashMap<>(tasks.size() * 2);
+        for (T task : tasks.values()) {
+            mTasks.add(task);
+            mStates.put(task.getId(), task.getTaskState());
+            mProgress.put(task.getId(), task.getProgress());
+        }
+    }
+
+    /**
+     * @return the version of the last event that the snapshot is known
+     * to include. Later events have a greater {@link TaskEvent#getVersion()}.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    @NonNull
+    public List<T> getTasks() {
+        return Collections.unmodifiableList(mTasks);
+    }
+
+    public int size() {
+        return mTasks.size();
+    }
+
+    /**
+     * @return the state the task was in, or null if it wasn't in the manager.
+     */
+    @Nullable
+    public TaskState getTaskState(@NonNull String taskId) {
+        return mStates.get(taskId);
+    }
+
+    /**
+     * @return the progress of the task, or -1 if it wasn't in the manager.
+     */
+    public int getProgress(@NonNull String taskId) {
+        Integer progress = mProgress.get(taskId);
+        return progress != null ? progress : -1;
+    }
+}
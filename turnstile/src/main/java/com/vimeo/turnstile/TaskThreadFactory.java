@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ThreadFactory} for task threads. Threads are numbered so
+ * they can be told apart when profiling, e.g. {@code uploads-1},
+ * {@code uploads-2}, and each thread sets its own Android priority
+ * before it runs anything, since {@link Process#setThreadPriority(int)}
+ * only applies to the calling thread.
+ * <p/>
+ * Use {@link Process#THREAD_PRIORITY_BACKGROUND} for work that
+ * shouldn't compete with the UI thread for CPU.
+ */
+public final class TaskThreadFactory implements ThreadFactory {
+
+    @NonNull
+    private final String mName;
+    private final int mThreadPriority;
+    private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+    /**
+     * @param name           the prefix of the thread names.
+     * @param threadPriority the Android priority of the threads, one of the
+     *                       {@code Process.THREAD_PRIORITY_*} constants.
+     */
+    public TaskThreadFactory(@NonNull String name, int threadPriority) {
+        mName = name;
+        mThreadPriority = threadPriority;
+    }
+
+    @Override
+    public Thread newThread(@NonNull final Runnable runnable) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(mThreadPriority);
+                runnable.run();
+            }
+        }, mName + "-" + mThreadNumber.incrementAndGet());
+        if (thread.isDaemon()) {
+            thread.setDaemon(false);
+        }
+        return thread;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.CancellationToken.Reason;
+import com.vimeo.turnstile.utils.TaskLogger;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single thread shared by every {@link BaseTaskManager} that watches
+ * executing tasks for two things:
+ * <ol>
+ * <li>A wall-clock deadline, measured from when the execution started.</li>
+ * <li>A stall timeout, the longest a task may go without reporting progress.</li>
+ * </ol>
+ * When either one passes, the listener the execution was registered with
+ * is notified once and the execution is no longer watched. The thread only
+ * exists while there are executions to watch.
+ */
+final class TaskWatchdog {
+
+    private static final String THREAD_NAME = "turnstile-watchdog";
+
+    interface Listener {
+
+        /**
+         * Called on the watchdog thread when an execution has run past
+         * its deadline ({@link Reason#TIMEOUT}) or stopped reporting
+         * progress ({@link Reason#STALL}).
+         */
+        void onTimeout(@NonNull BaseTask task, @NonNull CancellationToken cancellationToken, @NonNull Reason reason);
+    }
+
+    private static final class Watch {
+
+        @NonNull
+        final BaseTask mTask;
+        @NonNull
+        final CancellationToken mCancellationToken;
+        final long mStartedAtMillis;
+        final long mDeadlineMillis;
+        final long mStallTimeoutMillis;
+        @NonNull
+        final Listener mListener;
+        @Nullable
+        Reason mReason;
+
+        Watch(@NonNull BaseTask task,
+              @NonNull CancellationToken cancellationToken,
+              long startedAtMillis,
+              long deadlineMillis,
+              long stallTimeoutMillis,
+              @NonNull Listener listener) {
+            mTask = task;
+            mCancellationToken = cancellationToken;
+            mStartedAtMillis = startedAtMillis;
+            mDeadlineMillis = deadlineMillis;
+            mStallTimeoutMillis = stallTimeoutMillis;
+            mListener = listener;
+        }
+
+        /**
+         * @return the time at which this watch expires, in {@link SystemClock#elapsedRealtime()} time.
+         */
+        long getExpiryMillis() {
+            if (mStallTimeoutMillis <= 0) {
+                return mDeadlineMillis;
+            }
+            long lastProgressMillis = Math.max(mStartedAtMillis, mTask.getLastProgressMillis());
+            return Math.min(mDeadlineMillis, lastProgressMillis + mStallTimeoutMillis);
+        }
+    }
+
+    private static TaskWatchdog sInstance;
+
+    // Guarded by mLock
+    private final Object mLock = new Object();
+    // Keyed by the token since that identifies a single execution of a task
+    private final Map<CancellationToken, Watch> mWatches = new IdentityHashMap<>();
+    @Nullable
+    private Thread mThread;
+
+    @NonNull
+    static synchronized TaskWatchdog getInstance() {
+        if (sInstance == null) {
+            sInstance = new TaskWatchdog();
+        }
+        return sInstance;
+    }
+
+    private TaskWatchdog() {
+    }
+
+    /**
+     * Starts watching an execution of a task.
+     *
+     * @param timeoutMillis      the longest the execution may take, 0 for no deadline.
+     * @param stallTimeoutMillis the longest the task may go without reporting
+     *                           progress, 0 for no stall detection.
+     */
+    void watch(@NonNull BaseTask task,
+               @NonNull CancellationToken cancellationToken,
+               long timeoutMillis,
+               long stallTimeoutMillis,
+               @NonNull Listener listener) {
+        if (timeoutMillis <= 0 && stallTimeoutMillis <= 0) {
+            return;
+        }
+        long nowMillis = SystemClock.elapsedRealtime();
+        long deadlineMillis = timeoutMillis > 0 ? nowMillis + timeoutMillis : Long.MAX_VALUE;
+        synchronized (mLock) {
+            mWatches.put(cancellationToken, new Watch(task, cancellationToken, nowMillis, deadlineMillis,
+                                                      stallTimeoutMillis, listener));
+            if (mThread == null) {
+                mThread = new Thread(mWatchdogRunnable, THREAD_NAME);
+                mThread.setDaemon(true);
+                mThread.start();
+            } else {
+                // The new watch may expire before the one the thread is waiting on
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops watching an execution, e.g. because it has returned.
+     */
+    void unwatch(@NonNull CancellationToken cancellationToken) {
+        synchronized (mLock) {
+            // No need to wake the thread, it'll find nothing to do when it next wakes up
+            mWatches.remove(cancellationToken);
+        }
+    }
+
+    private final Runnable mWatchdogRunnable = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                List<Watch> expiredWatches = new ArrayList<>();
+                synchronized (mLock) {
+                    long nowMillis = SystemClock.elapsedRealtime();
+                    long nextExpiryMillis = Long.MAX_VALUE;
+                    for (Iterator<Watch> iterator = mWatches.values().iterator(); iterator.hasNext(); ) {
+                        Watch watch = iterator.next();
+                        if (nowMillis >= watch.mDeadlineMillis) {
+                            watch.mReason = Reason.TIMEOUT;
+                        } else if (nowMillis >= watch.getExpiryMillis()) {
+                            watch.mReason = Reason.STALL;
+                        } else {
+                            nextExpiryMillis = Math.min(nextExpiryMillis, watch.getExpiryMillis());
+                            continue;
+                        }
+                        iterator.remove();
+                        expiredWatches.add(watch);
+                    }
+                    if (expiredWatches.isEmpty()) {
+                        if (mWatches.isEmpty()) {
+                            mThread = null;
+                            return;
+                        }
+                        try {
+                            mLock.wait(Math.max(1, nextExpiryMillis - nowMillis));
+                        } catch (InterruptedException e) {
+                            // Nothing interrupts this thread, check the watches again
+                        }
+                        continue;
+                    }
+                }
+                for (Watch watch : expiredWatches) {
+                    try {
+                        //noinspection ConstantConditions
+                        watch.mListener.onTimeout(watch.mTask, watch.mCancellationToken, watch.mReason);
+                    } catch (RuntimeException e) {
+                        TaskLogger.getLogger().e("Exception while timing out task " + watch.mTask.getId(), e);
+                    }
+                }
+            }
+        }
+    };
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.conditions;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Conditions that are met while the battery is at or above a level,
+ * or while the device is plugged in.
+ */
+public final class BatteryLevelConditions extends BroadcastConditions {
+
+    private final int mMinLevelPercent;
+
+    /**
+     * @param minLevelPercent the lowest battery level, in percent, that
+     *                        tasks may run at while on battery.
+     */
+    public BatteryLevelConditions(@NonNull Context context, @IntRange(from = 0, to = 100) int minLevelPercent) {
+        super(context);
+        mMinLevelPercent = minLevelPercent;
+    }
+
+    @NonNull
+    @Override
+    protected IntentFilter getIntentFilter() {
+        return new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+    }
+
+    @Override
+    protected boolean readConditions(@Nullable Intent intent) {
+        if (intent == null) {
+            // The battery state is unknown, don't hold the tasks back
+            return true;
+        }
+        if (intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return true;
+        }
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level < 0 || scale <= 0 || level * 100 / scale >= mMinLevelPercent;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.conditions;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * {@link Conditions} that are read from the system and kept up to date by
+ * broadcasts. While a listener is set, the value is cached and read again
+ * only when one of the broadcasts arrives, or every
+ * {@link #getRefreshIntervalMillis()} for conditions that can change
+ * without one, so {@link #areConditionsMet()} is a field read. Without a
+ * listener, no receiver is registered and the value is read on every call.
+ */
+public abstract class BroadcastConditions implements Conditions {
+
+    @NonNull
+    final Context mContext;
+    @NonNull
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by this
+    @Nullable
+    private Listener mListener;
+    @Nullable
+    private BroadcastReceiver mReceiver;
+    private volatile boolean mConditionsMet;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            scheduleRefresh();
+        }
+    };
+
+    protected BroadcastConditions(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return the broadcasts that can change the conditions.
+     */
+    @NonNull
+    protected abstract IntentFilter getIntentFilter();
+
+    /**
+     * Reads the conditions from the system.
+     *
+     * @param intent the broadcast that arrived, or the last sticky broadcast
+     *               that matches {@link #getIntentFilter()}, if any.
+     * @return true if the conditions are met.
+     */
+    protected abstract boolean readConditions(@Nullable Intent intent);
+
+    /**
+     * @return how often, in milliseconds, the conditions are read again while
+     * a listener is set, or 0 if the broadcasts announce every change.
+     */
+    protected long getRefreshIntervalMillis() {
+        return 0;
+    }
+
+    @NonNull
+    protected final Context getContext() {
+        return mContext;
+    }
+
+    @Override
+    public boolean areConditionsMet() {
+        synchronized (this) {
+            if (mReceiver != null) {
+                return mConditionsMet;
+            }
+        }
+        // Registering without a receiver only returns the sticky broadcast
+        return readConditions(mContext.registerReceiver(null, getIntentFilter()));
+    }
+
+    @Override
+    public synchronized void setListener(@Nullable Listener listener) {
+        mListener = listener;
+        if (listener != null && mReceiver == null) {
+            mReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    onChange(intent);
+                }
+            };
+            Intent stickyIntent = mContext.registerReceiver(mReceiver, getIntentFilter());
+            mConditionsMet = readConditions(stickyIntent);
+            scheduleRefresh();
+        } else if (listener == null && mReceiver != null) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiver = null;
+            mHandler.removeCallbacks(mRefreshRunnable);
+        }
+    }
+
+    private synchronized void scheduleRefresh() {
+        long intervalMillis = getRefreshIntervalMillis();
+        if (mReceiver != null && intervalMillis > 0) {
+            mHandler.removeCallbacks(mRefreshRunnable);
+            mHandler.postDelayed(mRefreshRunnable, intervalMillis);
+        }
+    }
+
+    /**
+     * Reads the conditions again, for changes that no broadcast announces.
+     * The listener is told if they changed.
+     */
+    public void refresh() {
+        onChange(mContext.registerReceiver(null, getIntentFilter()));
+    }
+
+    private void onChange(@Nullable Intent intent) {
+        Listener listener;
+        boolean conditionsMet = readConditions(intent);
+        synchronized (this) {
+            if (mReceiver == null || conditionsMet == mConditionsMet) {
+                return;
+            }
+            mConditionsMet = conditionsMet;
+            listener = mListener;
+        }
+        if (listener != null) {
+            listener.onConditionsChange(conditionsMet);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.conditions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link Conditions} that combine other conditions, e.g. "unmetered and
+ * charging and storage not low":
+ * <pre>
+ * CompositeConditions.and(new NetworkConditionsExtended(context),
+ *                         new ChargingConditions(context),
+ *                         new StorageConditions(context, minFreeBytes));
+ * </pre>
+ * While a listener is set, the combined value is kept up to date as the
+ * conditions it combines change, so {@link #areConditionsMet()} is a field
+ * read. Since conditions only have a single listener, each of them can
+ * only be combined once.
+ */
+public final class CompositeConditions implements Conditions {
+
+    private enum Operator {
+        AND,
+        OR,
+        NOT
+    }
+
+    @NonNull
+    private final Operator mOperator;
+    @NonNull
+    private final Conditions[] mConditions;
+
+    // Guarded by this
+    @Nullable
+    private Listener mListener;
+    private volatile boolean mConditionsMet;
+
+    private final Listener mConditionsListener = new Listener() {
+        @Override
+        public void onConditionsChange(boolean conditionsMet) {
+            update();
+        }
+    };
+
+    private CompositeConditions(@NonNull Operator operator, @NonNull Conditions... conditions) {
+        mOperator = operator;
+        mConditions = conditions;
+    }
+
+    /**
+     * @return conditions that are met when all of the given ones are.
+     */
+    @NonNull
+    public static CompositeConditions and(@NonNull Conditions first, @NonNull Conditions... others) {
+        return new CompositeConditions(Operator.AND, concat(first, others));
+    }
+
+    /**
+     * @return conditions that are met when any of the given ones are.
+     */
+    @NonNull
+    public static CompositeConditions or(@NonNull Conditions first, @NonNull Conditions... others) {
+        return new CompositeConditions(Operator.OR, concat(first, others));
+    }
+
+    /**
+     * @return conditions that are met when the given ones aren't.
+     */
+    @NonNull
+    public static CompositeConditions not(@NonNull Conditions conditions) {
+        return new CompositeConditions(Operator.NOT, conditions);
+    }
+
+    @NonNull
+    private static Conditions[] concat(@NonNull Conditions first, @NonNull Conditions... others) {
+        Conditions[] conditions = new Conditions[others.length + 1];
+        conditions[0] = first;
+        System.arraycopy(others, 0, conditions, 1, others.length);
+        return conditions;
+    }
+
+    /**
+     * @return the conditions that are combined.
+     */
+    @NonNull
+    public List<Conditions> getConditions() {
+        return Collections.unmodifiableList(Arrays.asList(mConditions));
+    }
+
+    @Override
+    public boolean areConditionsMet() {
+        synchronized (this) {
+            if (mListener != null) {
+                return mConditionsMet;
+            }
+        }
+        return evaluate();
+    }
+
+    @Override
+    public void setListener(@Nullable Listener listener) {
+        synchronized (this) {
+            boolean wasListening = mListener != null;
+            mListener = listener;
+            if (wasListening == (listener != null)) {
+                return;
+            }
+            for (Conditions conditions : mConditions) {
+                conditions.setListener(listener != null ? mConditionsListener : null);
+            }
+            if (listener != null) {
+                mConditionsMet = evaluate();
+            }
+        }
+    }
+
+    private boolean evaluate() {
+        switch (mOperator) {
+            case AND:
+                for (Conditions conditions : mConditions) {
+                    if (!conditions.areConditionsMet()) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (Conditions conditions : mConditions) {
+                    if (conditions.areConditionsMet()) {
+                        return true;
+                    }
+                }
+                return false;
+            case NOT:
+            default:
+                return !mConditions[0].areConditionsMet();
+        }
+    }
+
+    private void update() {
+        Listener listener;
+        boolean conditionsMet;
+        synchronized (this) {
+            listener = mListener;
+            if (listener == null) {
+                return;
+            }
+            conditionsMet = evaluate();
+            if (conditionsMet == mConditionsMet) {
+                return;
+            }
+            mConditionsMet = conditionsMet;
+        }
+        listener.onConditionsChange(conditionsMet);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.conditions;
+
+import android.Manifest.permission;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.ConnectivityManager.NetworkCallback;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+import android.support.annotation.RequiresPermission;
+
+import com.vimeo.turnstile.utils.TaskLogger;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the network for the whole process, so that any number of
+ * {@link NetworkConditions} share a single registration with the system
+ * and read a cached state instead of asking {@link ConnectivityManager}
+ * every time.
+ * <p/>
+ * It uses a {@link NetworkCallback} on Lollipop and above, and the
+ * {@link ConnectivityManager#CONNECTIVITY_ACTION} broadcast before that.
+ * The system is only watched while there are listeners, without them the
+ * state is read again on every call.
+ */
+public final class ConnectivityMonitor {
+
+    /**
+     * Called on the main thread when the network changes.
+     */
+    public interface Listener {
+
+        void onConnectivityChanged(@NonNull ConnectivityMonitor monitor);
+    }
+
+    private static ConnectivityMonitor sInstance;
+
+    @NonNull
+    private final ConnectivityManager mConnectivityManager;
+    @NonNull
+    private final Context mContext;
+    @NonNull
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    // ---- Cached State ----
+    private volatile boolean mIsConnected;
+    private volatile boolean mIsConnectedOrConnecting;
+    private volatile boolean mIsWifi;
+
+    // ---- Registration, guarded by this ----
+    @Nullable
+    private NetworkCallback mNetworkCallback;
+    @Nullable
+    private BroadcastReceiver mConnectivityReceiver;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refreshAndNotify();
+        }
+    };
+
+    @RequiresPermission(permission.ACCESS_NETWORK_STATE)
+    @NonNull
+    public static synchronized ConnectivityMonitor getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new ConnectivityMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    // Package-private so that tests can have a monitor of their own
+    ConnectivityMonitor(@NonNull Context context) {
+        mContext = context;
+        mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        refresh();
+    }
+
+    // -----------------------------------------------------------------------------------------------------
+    // State
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="State">
+
+    /**
+     * @return true if there is a network that is connected.
+     */
+    public boolean isConnected() {
+        refreshIfNotWatching();
+        return mIsConnected;
+    }
+
+    /**
+     * @return true if there is a network that is connected or about to be.
+     * With a {@link NetworkCallback} a network that starts connecting isn't
+     * reported to listeners until it is connected.
+     */
+    public boolean isConnectedOrConnecting() {
+        refreshIfNotWatching();
+        return mIsConnectedOrConnecting;
+    }
+
+    /**
+     * @return true if the connected network is wifi.
+     */
+    public boolean isWifi() {
+        refreshIfNotWatching();
+        return mIsConnected && mIsWifi;
+    }
+
+    private void refreshIfNotWatching() {
+        if (mListeners.isEmpty()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Reads the state of the active network.
+     *
+     * @return true if it changed.
+     */
+    private boolean refresh() {
+        NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+        boolean isConnected = networkInfo != null && networkInfo.isConnected();
+        boolean isConnectedOrConnecting = networkInfo != null && networkInfo.isConnectedOrConnecting();
+        boolean isWifi = networkInfo != null && networkInfo.getType() == ConnectivityManager.TYPE_WIFI;
+        boolean changed = isConnected != mIsConnected ||
+                          isConnectedOrConnecting != mIsConnectedOrConnecting ||
+                          isWifi != mIsWifi;
+        mIsConnected = isConnected;
+        mIsConnectedOrConnecting = isConnectedOrConnecting;
+        mIsWifi = isWifi;
+        return changed;
+    }
+
+    private void refreshAndNotify() {
+        if (!refresh()) {
+            return;
+        }
+        for (Listener listener : mListeners) {
+            listener.onConnectivityChanged(this);
+        }
+    }
+    // </editor-fold>
+
+    // -----------------------------------------------------------------------------------------------------
+    // Listeners
+    // -----------------------------------------------------------------------------------------------------
+    // <editor-fold desc="Listeners">
+
+    /**
+     * Adds a listener, and starts watching the network if it's the first one.
+     */
+    public synchronized void addListener(@NonNull Listener listener) {
+        if (!mListeners.addIfAbsent(listener) || mListeners.size() > 1) {
+            return;
+        }
+        if (VERSION.SDK_INT >= VERSION_CODES.LOLLIPOP && registerNetworkCallback()) {
+            return;
+        }
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                refreshAndNotify();
+            }
+        };
+        mContext.registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        // Catch up on anything that changed while nothing was watching
+        refresh();
+    }
+
+    /**
+     * Removes a listener, and stops watching the network if it was the last one.
+     */
+    public synchronized void removeListener(@NonNull Listener listener) {
+        if (!mListeners.remove(listener) || !mListeners.isEmpty()) {
+            return;
+        }
+        if (mNetworkCallback != null) {
+            mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+            mNetworkCallback = null;
+        }
+        if (mConnectivityReceiver != null) {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+            mConnectivityReceiver = null;
+        }
+        mHandler.removeCallbacks(mRefreshRunnable);
+    }
+
+    /**
+     * @return false if the callback couldn't be registered, which some
+     * Marshmallow devices fail to allow.
+     */
+    @RequiresApi(VERSION_CODES.LOLLIPOP)
+    private boolean registerNetworkCallback() {
+        NetworkCallback networkCallback = new NetworkCallback() {
+            // Called on a system thread, the state is read again on the main thread
+            @Override
+            public void onAvailable(Network network) {
+                mHandler.post(mRefreshRunnable);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                mHandler.post(mRefreshRunnable);
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                mHandler.post(mRefreshRunnable);
+            }
+        };
+        try {
+            if (VERSION.SDK_INT >= VERSION_CODES.N) {
+                mConnectivityManager.registerDefaultNetworkCallback(networkCallback);
+            } else {
+                NetworkRequest request = new NetworkRequest.Builder()
+                        .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                        .build();
+                mConnectivityManager.registerNetworkCallback(request, networkCallback);
+            }
+        } catch (SecurityException e) {
+            TaskLogger.getLogger().e("Unable to register network callback, falling back to broadcast", e);
+            return false;
+        }
+        mNetworkCallback = networkCallback;
+        refresh();
+        return true;
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.conditions;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.utils.TaskLogger;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Conditions} that wrap other conditions and smooth out how
+ * often their changes are reported, so that a flaky network doesn't
+ * pause and resume every task dozens of times a minute:
+ * <ol>
+ * <li>A loss is only reported once the conditions have stayed lost
+ * for the loss delay.</li>
+ * <li>A regain is only reported once the conditions have stayed met
+ * for the regain delay.</li>
+ * <li>Once the maximum number of changes has been reported within a
+ * minute, regains are held back until the oldest of those changes is
+ * more than a minute old. Losses are always reported.</li>
+ * </ol>
+ * The wrapped conditions are only listened to while this has a listener
+ * of its own, and {@link #areConditionsMet()} returns the cached state in
+ * the meantime. Without a listener it reads the wrapped conditions.
+ * Call {@link #refresh()} when they change without telling their
+ * listener, e.g. when a preference they read is updated.
+ * <p/>
+ * While a loss hasn't been confirmed yet, {@link #areConditionsMet()}
+ * already returns false. New tasks aren't started on a network that is
+ * down, but the running ones aren't stopped for a blip. When the blip
+ * ends before the loss is confirmed, the listener is told that the
+ * conditions are met so that the tasks held back during it are started.
+ * <p/>
+ * Use {@link com.vimeo.turnstile.BaseTaskManager.Builder#withConditionsDebounce(long, long, TimeUnit, int)}
+ * to have a manager wrap its conditions.
+ */
+public final class DebouncedConditions implements Conditions {
+
+    private static final long FLAP_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @NonNull
+    private final Conditions mConditions;
+    private final long mLossDelayMillis;
+    private final long mRegainDelayMillis;
+    private final int mMaxFlapsPerMinute;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // The times the last reported changes happened at, only accessed on the main thread
+    private final ArrayDeque<Long> mFlapTimes = new ArrayDeque<>();
+    // Whether a loss is waiting to be confirmed, reset when the wrapped conditions are detached
+    private volatile boolean mIsLossPending;
+
+    // The latest state of the wrapped conditions
+    private volatile boolean mRawConditionsMet;
+    // The state last reported to the listener
+    private volatile boolean mConditionsMet;
+    @Nullable
+    private volatile Listener mListener;
+
+    private final Listener mRawListener = new Listener() {
+        @Override
+        public void onConditionsChange(boolean conditionsMet) {
+            onRawConditionsChange(conditionsMet);
+        }
+    };
+
+    /**
+     * @param conditions        the conditions to wrap.
+     * @param lossDelay         how long the conditions must stay lost before it's reported.
+     * @param regainDelay       how long the conditions must stay met before it's reported.
+     * @param unit              the unit of both delays.
+     * @param maxFlapsPerMinute the most changes to report in a minute, 0 for no limit.
+     */
+    public DebouncedConditions(@NonNull Conditions conditions,
+                               long lossDelay,
+                               long regainDelay,
+                               @NonNull TimeUnit unit,
+                               int maxFlapsPerMinute) {
+        mConditions = conditions;
+        mLossDelayMillis = unit.toMillis(lossDelay);
+        mRegainDelayMillis = unit.toMillis(regainDelay);
+        mMaxFlapsPerMinute = maxFlapsPerMinute;
+    }
+
+    /**
+     * @return the conditions being debounced.
+     */
+    @NonNull
+    public Conditions getConditions() {
+        return mConditions;
+    }
+
+    @Override
+    public boolean areConditionsMet() {
+        if (mListener == null) {
+            // Nothing is debounced while nobody listens
+            return mConditions.areConditionsMet();
+        }
+        return mConditionsMet && mRawConditionsMet;
+    }
+
+    @Override
+    public synchronized void setListener(@Nullable Listener listener) {
+        Listener previousListener = mListener;
+        mListener = listener;
+        if (listener != null && previousListener == null) {
+            // Starts from the current state, nothing that happened while detached is debounced.
+            // It's read after listening so that a change in between isn't missed.
+            mConditions.setListener(mRawListener);
+            mIsLossPending = false;
+            mRawConditionsMet = mConditions.areConditionsMet();
+            mConditionsMet = mRawConditionsMet;
+        } else if (listener == null && previousListener != null) {
+            mConditions.setListener(null);
+            mHandler.removeCallbacks(mEvaluateRunnable);
+            mHandler.removeCallbacks(mCommitRunnable);
+        }
+    }
+
+    /**
+     * Reads the wrapped conditions again, for changes they don't tell
+     * their listener about. A change is debounced like any other.
+     */
+    public void refresh() {
+        if (mListener == null) {
+            return;
+        }
+        boolean rawConditionsMet = mConditions.areConditionsMet();
+        if (rawConditionsMet != mRawConditionsMet) {
+            onRawConditionsChange(rawConditionsMet);
+        }
+    }
+
+    private void onRawConditionsChange(boolean conditionsMet) {
+        mRawConditionsMet = conditionsMet;
+        // Everything else happens on the main thread so that the timers don't need locking
+        mHandler.post(mEvaluateRunnable);
+    }
+
+    private final Runnable mEvaluateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mHandler.removeCallbacks(mCommitRunnable);
+            boolean rawConditionsMet = mRawConditionsMet;
+            if (rawConditionsMet == mConditionsMet) {
+                // Back to the reported state before the change was confirmed, it was just a blip
+                if (mIsLossPending) {
+                    mIsLossPending = false;
+                    // Work may have been held back by areConditionsMet() in the meantime. This isn't
+                    // a change of the reported state, so it doesn't count against the flap limit.
+                    Listener listener = mListener;
+                    if (listener != null) {
+                        listener.onConditionsChange(true);
+                    }
+                }
+                return;
+            }
+            mIsLossPending = !rawConditionsMet;
+            long delayMillis = rawConditionsMet ? mRegainDelayMillis : mLossDelayMillis;
+            mHandler.postDelayed(mCommitRunnable, delayMillis);
+        }
+    };
+
+    private final Runnable mCommitRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean rawConditionsMet = mRawConditionsMet;
+            if (rawConditionsMet == mConditionsMet) {
+                return;
+            }
+            if (rawConditionsMet) {
+                long backoffMillis = getFlapBackoffMillis();
+                if (backoffMillis > 0) {
+                    TaskLogger.getLogger().d("Conditions flapping, holding back regain for " + backoffMillis + "ms");
+                    mHandler.postDelayed(this, backoffMillis);
+                    return;
+                }
+            }
+            mIsLossPending = false;
+            mConditionsMet = rawConditionsMet;
+            mFlapTimes.addLast(SystemClock.elapsedRealtime());
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onConditionsChange(rawConditionsMet);
+            }
+        }
+    };
+
+    /**
+     * @return how long to wait before another change may be reported
+     * without going over the maximum number of changes per minute.
+     */
+    private long getFlapBackoffMillis() {
+        long nowMillis = SystemClock.elapsedRealtime();
+        while (!mFlapTimes.isEmpty() && nowMillis - mFlapTimes.peekFirst() >= FLAP_WINDOW_MILLIS) {
+            mFlapTimes.pollFirst();
+        }
+        if (mMaxFlapsPerMinute <= 0 || mFlapTimes.size() < mMaxFlapsPerMinute) {
+            return 0;
+        }
+        return mFlapTimes.peekFirst() + FLAP_WINDOW_MILLIS - nowMillis;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.conditions;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.PowerManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Conditions that are met while the device isn't in use: its screen
+ * is off, or it is in doze mode on Marshmallow and above.
+ */
+public final class DeviceIdleConditions extends BroadcastConditions {
+
+    @NonNull
+    private final PowerManager mPowerManager;
+
+    public DeviceIdleConditions(@NonNull Context context) {
+        super(context);
+        mPowerManager = (PowerManager) getContext().getSystemService(Context.POWER_SERVICE);
+    }
+
+    @NonNull
+    @Override
+    protected IntentFilter getIntentFilter() {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        if (VERSION.SDK_INT >= VERSION_CODES.M) {
+            filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        }
+        return filter;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    protected boolean readConditions(@Nullable Intent intent) {
+        if (VERSION.SDK_INT >= VERSION_CODES.M && mPowerManager.isDeviceIdleMode()) {
+            return true;
+        }
+        if (VERSION.SDK_INT >= VERSION_CODES.KITKAT_WATCH) {
+            return !mPowerManager.isInteractive();
+        }
+        return !mPowerManager.isScreenOn();
+    }
+}
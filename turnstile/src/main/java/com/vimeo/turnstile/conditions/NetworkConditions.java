@@ -25,57 +25,65 @@ package com.vimeo.turnstile.conditions;
 
 import android.Manifest;
 import android.Manifest.permission;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.net.ConnectivityManager;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.RequiresPermission;
 
-import com.vimeo.turnstile.utils.TaskLogger;
-
 /**
  * Interface which you can implement if you want to provide a custom
  * Network callback.
  * <p/>
+ * Changes are picked up from the shared {@link ConnectivityMonitor}, which
+ * is only watched while a listener is set.
+ * <p/>
  * Created by kylevenn on 9/8/2015
  */
 public abstract class NetworkConditions implements Conditions {
 
     final Context mContext;
+    @NonNull
+    final ConnectivityMonitor mConnectivityMonitor;
     Conditions.Listener mListener;
-    final BroadcastReceiver mNetworkChangeReceiver;
+
+    // Tells the listener that something changed
+    private final ConnectivityMonitor.Listener mConnectivityListener = new ConnectivityMonitor.Listener() {
+        @Override
+        public void onConnectivityChanged(@NonNull ConnectivityMonitor monitor) {
+            Conditions.Listener listener = mListener;
+            if (listener != null) {
+                listener.onConditionsChange(isConnected());
+            }
+        }
+    };
 
     @RequiresPermission(permission.ACCESS_NETWORK_STATE)
     public NetworkConditions(@NonNull Context context) {
         mContext = context;
-
-        // Receiver that just tells this class to tell the listener that something changed
-        mNetworkChangeReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context ctx, Intent intent) {
-                if (mListener == null) {
-                    TaskLogger.getLogger().d("Null listener in network util extended");
-                    return;
-                }
-                mListener.onConditionsChange(isConnected());
-            }
-        };
-
-        // Set the receiver to listen for network connectivity change
-        // TODO: Causes a memory leak, this object is never unregistered and GC'd 10/7/16 [AR]
-        context.getApplicationContext()
-                .registerReceiver(mNetworkChangeReceiver,
-                                  new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        mConnectivityMonitor = ConnectivityMonitor.getInstance(context);
     }
 
+    /**
+     * @return true if the network is suitable for the tasks. Implementations
+     * should read the state from {@link #getConnectivityMonitor()}, which is
+     * cached while a listener is set.
+     */
     @RequiresPermission(Manifest.permission.ACCESS_NETWORK_STATE)
     protected abstract boolean isConnected();
 
+    @NonNull
+    protected final ConnectivityMonitor getConnectivityMonitor() {
+        return mConnectivityMonitor;
+    }
+
     @Override
-    public void setListener(Conditions.Listener listener) {
+    public void setListener(@Nullable Conditions.Listener listener) {
         mListener = listener;
+        if (listener != null) {
+            mConnectivityMonitor.addListener(mConnectivityListener);
+        } else {
+            mConnectivityMonitor.removeListener(mConnectivityListener);
+        }
     }
 
     @Override
@@ -24,8 +24,6 @@
 package com.vimeo.turnstile.conditions;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 
 import com.vimeo.turnstile.conditions.NetworkConditions;
 
@@ -46,10 +44,7 @@ public final class NetworkConditionsBasic extends NetworkConditions {
 
     @Override
     protected boolean isConnected() {
-        ConnectivityManager cm =
-                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo netInfo = cm.getActiveNetworkInfo();
-        return netInfo != null && netInfo.isConnectedOrConnecting();
+        return mConnectivityMonitor.isConnectedOrConnecting();
     }
 
 }
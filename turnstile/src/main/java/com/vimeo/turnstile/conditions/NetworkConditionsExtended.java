@@ -25,8 +25,6 @@ package com.vimeo.turnstile.conditions;
 
 import android.Manifest.permission;
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.support.annotation.RequiresPermission;
 
 import com.vimeo.turnstile.utils.TaskLogger;
@@ -71,14 +69,10 @@ public final class NetworkConditionsExtended extends NetworkConditions {
 
     @Override
     protected boolean isConnected() {
-        ConnectivityManager connManager =
-                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
         if (mTaskPreferences == null || mTaskPreferences.wifiOnly()) {
-            NetworkInfo wifi = connManager.getActiveNetworkInfo();
-            return wifi != null && wifi.getType() == ConnectivityManager.TYPE_WIFI && wifi.isConnected();
+            return mConnectivityMonitor.isWifi();
         } else {
-            NetworkInfo netInfo = connManager.getActiveNetworkInfo();
-            return netInfo != null && netInfo.isConnected();
+            return mConnectivityMonitor.isConnected();
         }
     }
 
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ * <p/>
+ * Copyright (c) 2016 Vimeo
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vimeo.turnstile.conditions;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.StatFs;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conditions that are met while there is at least a given amount of free
+ * space where the app stores its files. The free space is checked again
+ * when the system reports that storage is low or ok again, and every
+ * {@link #REFRESH_INTERVAL_MILLIS} since the system only reports its own
+ * threshold. Call {@link #refresh()} after writing or deleting a large
+ * amount of data to see the change sooner.
+ */
+public final class StorageConditions extends BroadcastConditions {
+
+    /**
+     * How often the free space is checked while a listener is set.
+     */
+    public static final long REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final long mMinFreeBytes;
+    @NonNull
+    private final File mDirectory;
+
+    /**
+     * @param minFreeBytes the free space, in bytes, that the tasks need.
+     */
+    public StorageConditions(@NonNull Context context, long minFreeBytes) {
+        this(context, minFreeBytes, context.getFilesDir());
+    }
+
+    /**
+     * @param minFreeBytes the free space, in bytes, that the tasks need.
+     * @param directory    a directory on the storage the tasks write to.
+     */
+    public StorageConditions(@NonNull Context context, long minFreeBytes, @NonNull File directory) {
+        super(context);
+        mMinFreeBytes = minFreeBytes;
+        mDirectory = directory;
+    }
+
+    @NonNull
+    @Override
+    protected IntentFilter getIntentFilter() {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_DEVICE_STORAGE_LOW);
+        filter.addAction(Intent.ACTION_DEVICE_STORAGE_OK);
+        return filter;
+    }
+
+    @Override
+    protected long getRefreshIntervalMillis() {
+        return REFRESH_INTERVAL_MILLIS;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    protected boolean readConditions(@Nullable Intent intent) {
+        try {
+            StatFs statFs = new StatFs(mDirectory.getPath());
+            long freeBytes;
+            if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2) {
+                freeBytes = statFs.getAvailableBytes();
+            } else {
+                freeBytes = (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
+            }
+            return freeBytes >= mMinFreeBytes;
+        } catch (IllegalArgumentException e) {
+            // The storage isn't there
+            return false;
+        }
+    }
+}
@@ -39,7 +39,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The disk backed cache which represents the {@link T} task list.
@@ -53,6 +55,22 @@ public final class TaskCache<T extends BaseTask> {
 
     @NonNull
     private final ConcurrentHashMap<String, T> mTaskMap = new ConcurrentHashMap<>();
+
+    // ---- Indexes ----
+    // These are kept up to date on every write to the map so that scheduling
+    // decisions never have to walk every task in the cache.
+    // Ids of the tasks that returned true from shouldRun() when they were last written
+    @NonNull
+    private final Set<String> mTaskIdsToRun = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Ids of the tasks that the manager has handed to its executor
+    @NonNull
+    private final Set<String> mDispatchedTaskIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Ids of the tasks that should run but haven't been handed to the executor
+    @NonNull
+    private final Set<String> mPendingTaskIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Guards writes to the map along with the indexes so they can't disagree
+    private final Object mIndexLock = new Object();
+
     @NonNull
     private final TaskDatabase<T> mDatabase;
     private final Handler mMainThread = new Handler(Looper.getMainLooper());
@@ -80,7 +98,7 @@ public final class TaskCache<T extends BaseTask> {
         mDatabase = new TaskDatabase<>(context, taskName, serializer);
         List<T> tasks = mDatabase.getAllTasks();
         for (T task : tasks) {
-            mTaskMap.put(task.getId(), task);
+            put(task);
         }
     }
 
@@ -144,6 +162,10 @@ public final class TaskCache<T extends BaseTask> {
      * Gets a list of all tasks that need to be run,
      * as specified by the task itself in the
      * {@link BaseTask#shouldRun()} method.
+     * <p/>
+     * {@link BaseTask#shouldRun()} is evaluated each time
+     * a task is written to the cache, so tasks must report
+     * changes to it through their state change callbacks.
      *
      * @return A non-null list of the tasks that
      * should be run, may be empty if no tasks need
@@ -151,17 +173,96 @@ public final class TaskCache<T extends BaseTask> {
      */
     @NonNull
     public List<T> getTasksToRun() {
-        // Get all the tasks that are ready to be run that aren't of type error
-        // Don't included failed uploads since that will require user action
-        // TODO: Eventually we'll query for not paused as well
-        List<T> taskList = new ArrayList<>();
-        for (T task : mTaskMap.values()) {
-            if (task.shouldRun()) {
+        return getTasksForIds(mTaskIdsToRun);
+    }
+
+    /**
+     * Determines if there are any tasks that need to be run
+     * without building a list of them.
+     *
+     * @return true if at least one task should be run.
+     */
+    public boolean hasTasksToRun() {
+        return !mTaskIdsToRun.isEmpty();
+    }
+
+    /**
+     * @return the number of tasks that need to be run.
+     */
+    public int getTasksToRunCount() {
+        return mTaskIdsToRun.size();
+    }
+
+    /**
+     * Gets the tasks that should be run but haven't been
+     * marked as dispatched with {@link #setDispatched(String, boolean)}.
+     *
+     * @return A non-null list of the tasks waiting to be
+     * handed to an executor.
+     */
+    @NonNull
+    public List<T> getPendingTasks() {
+        return getTasksForIds(mPendingTaskIds);
+    }
+
+    /**
+     * @return true if there are tasks that should be run
+     * but haven't been dispatched.
+     */
+    public boolean hasPendingTasks() {
+        return !mPendingTaskIds.isEmpty();
+    }
+
+    /**
+     * Marks a task as handed to (or released from) the executor
+     * so that the pending tasks can be tracked without a scan.
+     *
+     * @param taskId     the id of the task.
+     * @param dispatched true if the task has been submitted
+     *                   for execution, false once it no longer is.
+     */
+    public void setDispatched(@NonNull String taskId, boolean dispatched) {
+        synchronized (mIndexLock) {
+            if (dispatched) {
+                mDispatchedTaskIds.add(taskId);
+                mPendingTaskIds.remove(taskId);
+            } else {
+                mDispatchedTaskIds.remove(taskId);
+                if (mTaskIdsToRun.contains(taskId)) {
+                    mPendingTaskIds.add(taskId);
+                }
+            }
+        }
+    }
+
+    @NonNull
+    private List<T> getTasksForIds(@NonNull Set<String> taskIds) {
+        List<T> taskList = new ArrayList<>(taskIds.size());
+        for (String taskId : taskIds) {
+            T task = mTaskMap.get(taskId);
+            if (task != null) {
                 taskList.add(task);
             }
         }
         return taskList;
     }
+
+    /**
+     * Re-evaluates {@link BaseTask#shouldRun()} for the task and
+     * updates the indexes. Must be called while holding the index lock.
+     */
+    private void updateIndexes(@NonNull T task) {
+        String taskId = task.getId();
+        if (task.shouldRun()) {
+            mTaskIdsToRun.add(taskId);
+            if (!mDispatchedTaskIds.contains(taskId)) {
+                mPendingTaskIds.add(taskId);
+            }
+        } else {
+            mTaskIdsToRun.remove(taskId);
+            mPendingTaskIds.remove(taskId);
+        }
+    }
     // </editor-fold>
 
     // -----------------------------------------------------------------------------------------------------
@@ -176,7 +277,10 @@ public final class TaskCache<T extends BaseTask> {
      *             cache, must not be null.
      */
     private void put(@NonNull T task) {
-        mTaskMap.put(task.getId(), task);
+        synchronized (mIndexLock) {
+            mTaskMap.put(task.getId(), task);
+            updateIndexes(task);
+        }
     }
 
     /**
@@ -191,7 +295,11 @@ public final class TaskCache<T extends BaseTask> {
      *             cache, must not be null.
      */
     private void putIfAbsent(@NonNull T task) {
-        mTaskMap.putIfAbsent(task.getId(), task);
+        synchronized (mIndexLock) {
+            if (mTaskMap.putIfAbsent(task.getId(), task) == null) {
+                updateIndexes(task);
+            }
+        }
     }
 
     /**
@@ -327,8 +435,12 @@ public final class TaskCache<T extends BaseTask> {
      *               null.
      */
     public void remove(@NonNull final String taskId) {
-        // This will replace the current task in the cache (or 'put' it if it's not there)
-        mTaskMap.remove(taskId);
+        synchronized (mIndexLock) {
+            mTaskMap.remove(taskId);
+            mTaskIdsToRun.remove(taskId);
+            mPendingTaskIds.remove(taskId);
+            mDispatchedTaskIds.remove(taskId);
+        }
         TaskDatabase.execute(new Runnable() {
             @Override
             public void run() {
@@ -345,7 +457,12 @@ public final class TaskCache<T extends BaseTask> {
      * without blocking the calling thread.
      */
     public void removeAll() {
-        mTaskMap.clear();
+        synchronized (mIndexLock) {
+            mTaskMap.clear();
+            mTaskIdsToRun.clear();
+            mPendingTaskIds.clear();
+            mDispatchedTaskIds.clear();
+        }
         TaskDatabase.execute(new Runnable() {
             @Override
             public void run() {
@@ -353,6 +470,29 @@ public final class TaskCache<T extends BaseTask> {
             }
         });
     }
+
+    /**
+     * Waits for the writes this cache has queued
+     * for the database to be done.
+     *
+     * @param timeout how long to wait at most.
+     * @param unit    the unit of the timeout.
+     * @return true if everything was written, false
+     * if the timeout passed first.
+     */
+    @WorkerThread
+    public boolean flush(long timeout, @NonNull TimeUnit unit) {
+        return TaskDatabase.flush(unit.toMillis(timeout));
+    }
+
+    /**
+     * Closes the database once the queued writes are
+     * done. The cache can still be read afterwards, but
+     * changes to it are no longer persisted.
+     */
+    public void close() {
+        mDatabase.close();
+    }
     // </editor-fold>
 
     // -----------------------------------------------------------------------------------------------------
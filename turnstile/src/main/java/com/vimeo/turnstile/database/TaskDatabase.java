@@ -36,8 +36,10 @@ import com.vimeo.turnstile.utils.TaskLogger;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The database to hold all the {@link BaseTask}.
@@ -52,6 +54,9 @@ class TaskDatabase<T extends BaseTask> {
 
     private final TaskDatabaseOpenHelper<T> mTaskDatabase;
 
+    // Set on the IO thread once the helper has been closed, writes after that are dropped
+    private volatile boolean mIsClosed;
+
     /**
      * Runs a runnable on the executor for this
      * database. All write operations on this
@@ -65,6 +70,31 @@ class TaskDatabase<T extends BaseTask> {
         IO_THREAD.execute(runnable);
     }
 
+    /**
+     * Waits for every write that was queued on the
+     * executor before this call to be done.
+     *
+     * @param timeoutMillis how long to wait at most.
+     * @return true if the writes are done, false if
+     * the timeout passed or the thread was interrupted.
+     */
+    @WorkerThread
+    static boolean flush(long timeoutMillis) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        IO_THREAD.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        try {
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     TaskDatabase(@NonNull Context context, @NonNull String name, @NonNull Serializer<T> serializer) {
         mTaskDatabase = new TaskDatabaseOpenHelper<>(context, name, serializer);
 
@@ -157,6 +187,9 @@ class TaskDatabase<T extends BaseTask> {
      */
     @WorkerThread
     long insert(@NonNull T task) {
+        if (isClosed()) {
+            return -1;
+        }
         return mTaskDatabase.insert(task);
     }
 
@@ -176,6 +209,9 @@ class TaskDatabase<T extends BaseTask> {
      */
     @WorkerThread
     boolean upsert(@NonNull T task) {
+        if (isClosed()) {
+            return false;
+        }
         return mTaskDatabase.upsertItem(task);
     }
 
@@ -237,6 +273,9 @@ class TaskDatabase<T extends BaseTask> {
 
     @WorkerThread
     private void delete(@NonNull String id) {
+        if (isClosed()) {
+            return;
+        }
         mTaskDatabase.deleteItemForId(id);
     }
 
@@ -248,8 +287,33 @@ class TaskDatabase<T extends BaseTask> {
      */
     @WorkerThread
     void removeAll() {
+        if (isClosed()) {
+            return;
+        }
         mTaskDatabase.truncateDatabase();
         mTaskDatabase.vacuumDatabase();
     }
     // </editor-fold>
+
+    /**
+     * Closes the database once the writes that
+     * are already queued are done. Writes that
+     * are queued after that are dropped.
+     */
+    void close() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                mIsClosed = true;
+                mTaskDatabase.close();
+            }
+        });
+    }
+
+    private boolean isClosed() {
+        if (mIsClosed) {
+            TaskLogger.getLogger().w("Write to a closed TaskDatabase dropped");
+        }
+        return mIsClosed;
+    }
 }
@@ -0,0 +1,48 @@
+package com.vimeo.turnstile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AggregateProgressTest extends BaseUnitTest {
+
+    @Test
+    public void testProgressIsWeighted() {
+        AggregateProgress aggregateProgress = new AggregateProgress();
+        aggregateProgress.update("small", 100, 0);
+        aggregateProgress.update("large", 300, 0);
+        assertEquals(400, aggregateProgress.getTotalWeight());
+
+        assertTrue(aggregateProgress.update("large", 300, 50));
+        assertEquals(37, aggregateProgress.getProgress());
+        assertTrue(aggregateProgress.update("small", 100, 100));
+        assertEquals(62, aggregateProgress.getProgress());
+    }
+
+    @Test
+    public void testUnchangedProgressIsNotReported() {
+        AggregateProgress aggregateProgress = new AggregateProgress();
+        aggregateProgress.update("task", 1000, 10);
+        assertFalse(aggregateProgress.update("task", 1000, 10));
+        // A tenth of a percent doesn't move the whole percent
+        aggregateProgress.update("other", 9000, 0);
+        assertFalse(aggregateProgress.update("task", 1000, 11));
+    }
+
+    @Test
+    public void testRemoveAndReset() {
+        AggregateProgress aggregateProgress = new AggregateProgress();
+        aggregateProgress.update("done", 1, 100);
+        aggregateProgress.update("failed", 1, 0);
+        assertEquals(50, aggregateProgress.getProgress());
+        assertTrue(aggregateProgress.remove("failed"));
+        assertEquals(100, aggregateProgress.getProgress());
+        assertFalse(aggregateProgress.remove("failed"));
+
+        assertTrue(aggregateProgress.reset());
+        assertEquals(0, aggregateProgress.getProgress());
+        assertEquals(0, aggregateProgress.getTotalWeight());
+    }
+}
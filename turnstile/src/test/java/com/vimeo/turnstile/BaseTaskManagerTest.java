@@ -0,0 +1,733 @@
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.database.TaskCache;
+import com.vimeo.turnstile.dummy.DummyClassInstances;
+import com.vimeo.turnstile.dummy.UnitTestBaseTask;
+import com.vimeo.turnstile.dummy.UnitTestTaskManager;
+import com.vimeo.turnstile.dummy.UnitTestTaskManager.TestConditions;
+import com.vimeo.turnstile.utils.Utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test to test the {@link BaseTaskManager}.
+ */
+public class BaseTaskManagerTest extends BaseUnitTest {
+
+    private static final long TIMEOUT_MILLIS = 1000;
+
+    private static final class RecordingBatchableTask extends BatchableTask<RecordingBatchableTask> {
+
+        private static final long serialVersionUID = -6702158374201942836L;
+
+        @NonNull
+        private final transient BlockingQueue<List<String>> mBatches;
+        @Nullable
+        private transient CountDownLatch mStarted;
+        @Nullable
+        private transient CountDownLatch mInterrupted;
+
+        RecordingBatchableTask(@NonNull BlockingQueue<List<String>> batches) {
+            super(UUID.randomUUID().toString());
+            mBatches = batches;
+        }
+
+        /**
+         * Makes a batch that starts with this task hang until its thread is
+         * interrupted, and makes this task time out.
+         */
+        RecordingBatchableTask hangUntilInterrupted(@NonNull CountDownLatch started,
+                                                    @NonNull CountDownLatch interrupted) {
+            mStarted = started;
+            mInterrupted = interrupted;
+            return this;
+        }
+
+        @Override
+        public long getTimeoutMillis() {
+            return mStarted != null ? TIMEOUT_MILLIS : 0;
+        }
+
+        @NonNull
+        @Override
+        public String getBatchKey() {
+            return "key";
+        }
+
+        @Override
+        protected void executeBatch(@NonNull List<RecordingBatchableTask> batch) {
+            if (mStarted != null && mInterrupted != null) {
+                mStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    mInterrupted.countDown();
+                }
+                return;
+            }
+            List<String> taskIds = new ArrayList<>();
+            for (RecordingBatchableTask task : batch) {
+                taskIds.add(task.getId());
+                task.onTaskCompleted();
+            }
+            mBatches.add(taskIds);
+        }
+    }
+
+    private static final class BatchTaskManager extends BaseTaskManager<RecordingBatchableTask> {
+
+        BatchTaskManager(@NonNull Builder<RecordingBatchableTask> builder) {
+            super(builder);
+        }
+
+        @Nullable
+        @Override
+        protected Class<? extends BaseTaskService> getServiceClass() {
+            return null;
+        }
+
+        @Override
+        protected String getManagerName() {
+            return "batch";
+        }
+
+        @Override
+        protected Class<RecordingBatchableTask> getTaskClass() {
+            return RecordingBatchableTask.class;
+        }
+    }
+
+    private UnitTestTaskManager mManager;
+    private BatchTaskManager mBatchManager;
+
+    @Before
+    public void setup() {
+        // The manager takes a start time of 0 as not started yet
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void teardown() {
+        if (mManager != null) {
+            mManager.shutdown();
+        }
+        if (mBatchManager != null) {
+            mBatchManager.shutdown();
+        }
+    }
+
+    @Test
+    public void retryTask_indexesTaskLoadedFromDatabase() throws Exception {
+        TaskCache<UnitTestBaseTask> taskCache = DummyClassInstances.newTaskCache();
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        task.changeState();
+        taskCache.insert(task, null);
+        assertTrue(taskCache.flush(1, TimeUnit.SECONDS));
+        taskCache.close();
+
+        // The conditions aren't met, so the retried task stays in the cache
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder()
+                                                   .withConditions(new TestConditions(false)));
+        UnitTestBaseTask loadedTask = mManager.getTask(task.getId());
+        assertNotNull(loadedTask);
+        assertTrue(loadedTask.isError());
+        assertFalse(mManager.tasksRemaining());
+
+        mManager.retryTask(task.getId());
+
+        assertTrue(loadedTask.shouldRun());
+        assertTrue(mManager.tasksRemaining());
+        assertTrue(mManager.getTasksToRun().contains(loadedTask));
+    }
+
+    @Test
+    public void getQueuePosition_followsSubmissionOrder() throws Exception {
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder().withMaxActiveTasks(1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask running = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.blockUntil(started, release));
+        mManager.addTask(running);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        UnitTestBaseTask first = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE);
+        UnitTestBaseTask second = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE);
+        UnitTestBaseTask third = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE);
+        mManager.addTask(first);
+        mManager.addTask(second);
+        mManager.addTask(third);
+
+        assertEquals(-1, mManager.getQueuePosition(running.getId()));
+        assertEquals(1, mManager.getQueuePosition(first.getId()));
+        assertEquals(2, mManager.getQueuePosition(second.getId()));
+        assertEquals(3, mManager.getQueuePosition(third.getId()));
+        assertEquals(2, mManager.getTasksAheadCount(third.getId()));
+        assertEquals(-1, mManager.getQueuePosition("unknown"));
+        // No task has finished yet, so there is nothing to base an estimate on
+        assertEquals(0, mManager.getEstimatedStartDelayMillis(running.getId()));
+        assertEquals(-1, mManager.getEstimatedStartDelayMillis(first.getId()));
+
+        release.countDown();
+        mManager.getTaskHandle(third.getId()).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(-1, mManager.getQueuePosition(third.getId()));
+    }
+
+    @Test
+    public void getEstimatedStartDelayMillis_usesAverageDuration() throws Exception {
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder().withMaxActiveTasks(1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask measured = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.blockUntil(started, release));
+        TaskHandle<UnitTestBaseTask> measuredHandle = mManager.addTask(measured);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        ShadowLooper.idleMainLooper(1000);
+        release.countDown();
+        measuredHandle.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(1000, mManager.getAverageTaskDurationMillis());
+
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        UnitTestBaseTask running = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.blockUntil(started, release));
+        mManager.addTask(running);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        UnitTestBaseTask first = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE);
+        UnitTestBaseTask second = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE);
+        mManager.addTask(first);
+        mManager.addTask(second);
+        ShadowLooper.idleMainLooper(400);
+
+        // The running task has about 600ms left, then the first task takes another 1000ms
+        assertEquals(600, mManager.getEstimatedStartDelayMillis(first.getId()));
+        assertEquals(1600, mManager.getEstimatedStartDelayMillis(second.getId()));
+        release.countDown();
+    }
+
+    @Test
+    public void retryTask_runsTaskAgainAfterTimeout() throws Exception {
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder()
+                                                   .withTaskTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger executionCount = new AtomicInteger();
+        UnitTestBaseTask task = UnitTestBaseTask.newTask().withBody(new UnitTestBaseTask.Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                if (executionCount.incrementAndGet() > 1) {
+                    task.complete();
+                    return;
+                }
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    // Stopped by the timeout
+                }
+            }
+        });
+        TaskHandle<UnitTestBaseTask> taskHandle = mManager.addTask(task);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS);
+        try {
+            taskHandle.get(5, TimeUnit.SECONDS);
+            fail("The task should have timed out");
+        } catch (ExecutionException expected) {
+        }
+        assertEquals(TaskError.CODE_TIMEOUT, taskHandle.getTaskError().getCode());
+        assertTrue(task.isError());
+
+        // Either starts right away or once the timed out execution has returned
+        mManager.retryTask(task.getId());
+        TaskHandle<UnitTestBaseTask> retryHandle = mManager.getTaskHandle(task.getId());
+        assertNotNull(retryHandle);
+        retryHandle.get(5, TimeUnit.SECONDS);
+        assertTrue(task.isComplete());
+        assertEquals(2, executionCount.get());
+    }
+
+    @Test
+    public void batchedTaskTimeout_interruptsBatch() throws Exception {
+        mBatchManager = new BatchTaskManager(
+                new BaseTaskManager.Builder<RecordingBatchableTask>(RuntimeEnvironment.application)
+                        .withSerializer(Utils.dummySerializer(RecordingBatchableTask.class))
+                        .withBatching(2, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        BlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        RecordingBatchableTask hanging = new RecordingBatchableTask(batches).hangUntilInterrupted(started, interrupted);
+        RecordingBatchableTask other = new RecordingBatchableTask(batches);
+        TaskHandle<RecordingBatchableTask> taskHandle = mBatchManager.addTask(hanging);
+        // Fills the batch, so it starts right away
+        mBatchManager.addTask(other);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS);
+        try {
+            taskHandle.get(5, TimeUnit.SECONDS);
+            fail("The task should have timed out");
+        } catch (ExecutionException expected) {
+        }
+        assertEquals(TaskError.CODE_TIMEOUT, taskHandle.getTaskError().getCode());
+
+        // The thread isn't left hanging, and the other task is only paused
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertFalse(other.isError());
+        assertFalse(other.isComplete());
+    }
+
+    @Test
+    public void addTask_batchesResumedTaskOnce() throws Exception {
+        TestConditions conditions = new TestConditions(true);
+        mBatchManager = new BatchTaskManager(
+                new BaseTaskManager.Builder<RecordingBatchableTask>(RuntimeEnvironment.application)
+                        .withSerializer(Utils.dummySerializer(RecordingBatchableTask.class))
+                        .withConditions(conditions)
+                        .withBatching(10, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        BlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+        RecordingBatchableTask first = new RecordingBatchableTask(batches);
+        RecordingBatchableTask second = new RecordingBatchableTask(batches);
+        mBatchManager.addTask(first);
+        mBatchManager.addTask(second);
+
+        // Paused and resumed while the batch is still lingering
+        conditions.setConditionsMet(false);
+        conditions.setConditionsMet(true);
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS);
+
+        List<String> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, batch.size());
+        assertTrue(batch.contains(first.getId()));
+        assertTrue(batch.contains(second.getId()));
+        assertTrue(first.isComplete());
+        assertTrue(second.isComplete());
+    }
+
+    @Test
+    public void resumeAll_leavesRunningTaskAlone() throws Exception {
+        TestConditions conditions = new TestConditions(true);
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder().withConditions(conditions));
+        final Semaphore starts = new Semaphore(0);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger interruptCount = new AtomicInteger();
+        UnitTestBaseTask task = UnitTestBaseTask.newTask().withBody(new UnitTestBaseTask.Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                starts.release();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interruptCount.incrementAndGet();
+                    return;
+                }
+                task.complete();
+            }
+        });
+        TaskHandle<UnitTestBaseTask> taskHandle = mManager.addTask(task);
+        assertTrue(starts.tryAcquire(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        // A spurious return of the conditions resumes the manager while the task is running
+        conditions.setConditionsMet(true);
+        mManager.resumeAllIfNecessary();
+        release.countDown();
+
+        taskHandle.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(0, starts.availablePermits());
+        assertEquals(0, interruptCount.get());
+    }
+
+    @Test
+    public void resumeAll_startsPausedAndPendingTasks() throws Exception {
+        TestConditions conditions = new TestConditions(true);
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder().withConditions(conditions));
+        final Semaphore starts = new Semaphore(0);
+        final Semaphore returns = new Semaphore(0);
+        final CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask pausedTask = UnitTestBaseTask.newTask().withBody(new UnitTestBaseTask.Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                starts.release();
+                try {
+                    release.await();
+                    task.complete();
+                } catch (InterruptedException ignored) {
+                } finally {
+                    returns.release();
+                }
+            }
+        });
+        TaskHandle<UnitTestBaseTask> pausedHandle = mManager.addTask(pausedTask);
+        assertTrue(starts.tryAcquire(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        conditions.setConditionsMet(false);
+        assertTrue(returns.tryAcquire(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(pausedTask.shouldRun());
+        // Added while the conditions are lost, so it waits for them
+        UnitTestBaseTask pendingTask = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE);
+        TaskHandle<UnitTestBaseTask> pendingHandle = mManager.addTask(pendingTask);
+        assertFalse(pendingTask.isRunning());
+        assertTrue(mManager.getTasksToRun().contains(pendingTask));
+
+        conditions.setConditionsMet(true);
+
+        pendingHandle.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(starts.tryAcquire(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        release.countDown();
+        pausedHandle.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(pausedTask.isComplete());
+    }
+
+    @Test
+    public void addTask_waitsForNamedConditions() throws Exception {
+        TestConditions wifi = new TestConditions(false);
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder().withTaskConditions("wifi", wifi));
+        UnitTestBaseTask wifiTask = UnitTestBaseTask.newTask()
+                .withConditionsName("wifi")
+                .withBody(UnitTestBaseTask.COMPLETE);
+        UnitTestBaseTask otherTask = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE);
+
+        TaskHandle<UnitTestBaseTask> wifiHandle = mManager.addTask(wifiTask);
+        mManager.addTask(otherTask).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertTrue(otherTask.isComplete());
+        assertFalse(wifiTask.isComplete());
+        assertFalse(wifiTask.isRunning());
+        assertTrue(mManager.getTasksToRun().contains(wifiTask));
+
+        wifi.setConditionsMet(true);
+
+        wifiHandle.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(wifiTask.isComplete());
+    }
+
+    @Test
+    public void shutdown_removesNamedConditionsListeners() throws Exception {
+        TestConditions conditions = new TestConditions(true);
+        TestConditions wifi = new TestConditions(true);
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder()
+                                                   .withConditions(conditions)
+                                                   .withTaskConditions("wifi", wifi));
+        assertTrue(conditions.hasListener());
+        assertTrue(wifi.hasListener());
+
+        mManager.shutdown();
+
+        assertFalse(conditions.hasListener());
+        assertFalse(wifi.hasListener());
+    }
+
+    @Test
+    public void drain_waitsForRunningTasks() throws Exception {
+        mManager = UnitTestTaskManager.newManager();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask task = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.blockUntil(started, release));
+        mManager.addTask(task);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        releaseLater(release);
+
+        assertTrue(mManager.drain(5, TimeUnit.SECONDS));
+        assertTrue(task.isComplete());
+        assertTrue(mManager.isShutdown());
+    }
+
+    @Test
+    public void drain_withoutGracePeriodInterruptsAndWaits() throws Exception {
+        // No cancellation grace period, which is the default
+        mManager = UnitTestTaskManager.newManager();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger returnedCount = new AtomicInteger();
+        UnitTestBaseTask task = UnitTestBaseTask.newTask().withBody(new UnitTestBaseTask.Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    // Paused, checkpointing takes a moment
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                returnedCount.incrementAndGet();
+            }
+        });
+        mManager.addTask(task);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        assertTrue(mManager.drain(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, returnedCount.get());
+        // It stays persisted to run with the next manager
+        assertTrue(task.shouldRun());
+        assertNotNull(mManager.getTask(task.getId()));
+    }
+
+    @Test
+    public void drain_pausesQueuedTasks() throws Exception {
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder().withMaxActiveTasks(1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask running = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.blockUntil(started, release));
+        final AtomicInteger queuedRunCount = new AtomicInteger();
+        UnitTestBaseTask queued = UnitTestBaseTask.newTask().withBody(new UnitTestBaseTask.Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                queuedRunCount.incrementAndGet();
+            }
+        });
+        mManager.addTask(running);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        mManager.addTask(queued);
+        releaseLater(release);
+
+        assertTrue(mManager.drain(5, TimeUnit.SECONDS));
+        assertTrue(running.isComplete());
+        assertEquals(0, queuedRunCount.get());
+        assertTrue(queued.shouldRun());
+    }
+
+    @Test
+    public void shutdown_rejectsNewTasks() throws Exception {
+        mManager = UnitTestTaskManager.newManager();
+        mManager.shutdown();
+
+        assertTrue(mManager.isShutdown());
+        TaskHandle<UnitTestBaseTask> taskHandle = mManager.addTask(UnitTestBaseTask.newTask());
+        assertTrue(taskHandle.isDone());
+        assertEquals(TaskError.CODE_REJECTED, taskHandle.getTaskError().getCode());
+        mManager = null;
+    }
+
+    @Test
+    public void onTaskProgress_coalescesBurstsPerInterval() throws Exception {
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder()
+                                                   .withProgressInterval(100, TimeUnit.MILLISECONDS));
+        final CountDownLatch firstBurst = new CountDownLatch(1);
+        final CountDownLatch secondGate = new CountDownLatch(1);
+        final CountDownLatch secondBurst = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask task = UnitTestBaseTask.newTask().withBody(new UnitTestBaseTask.Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                try {
+                    for (int progress = 10; progress <= 50; progress += 10) {
+                        task.progress(progress);
+                    }
+                    firstBurst.countDown();
+                    secondGate.await();
+                    for (int progress = 60; progress <= 90; progress += 10) {
+                        task.progress(progress);
+                    }
+                    secondBurst.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.complete();
+            }
+        });
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch success = new CountDownLatch(1);
+        mManager.registerTaskEventListener(new TaskEvent.Listener<UnitTestBaseTask>() {
+            @Override
+            public void onTaskEvent(@NonNull TaskEvent<UnitTestBaseTask> event) {
+                if (event.getType() == TaskEventType.PROGRESS) {
+                    events.add("progress " + event.getProgress());
+                } else if (event.getType() == TaskEventType.SUCCESS) {
+                    events.add("success");
+                    success.countDown();
+                }
+            }
+        }, DispatchExecutors.callingThread());
+        TaskHandle<UnitTestBaseTask> taskHandle = mManager.addTask(task);
+
+        assertTrue(firstBurst.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        ShadowLooper.idleMainLooper(0);
+        assertEquals(Collections.singletonList("progress 50"), events);
+
+        secondGate.countDown();
+        assertTrue(secondBurst.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        // The next delivery waits for the interval to pass since the last one
+        ShadowLooper.idleMainLooper(50);
+        assertEquals(Collections.singletonList("progress 50"), events);
+        ShadowLooper.idleMainLooper(50);
+        assertEquals(Arrays.asList("progress 50", "progress 90"), events);
+
+        release.countDown();
+        assertTrue(success.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        // The final progress isn't held back by the interval and comes before the success
+        assertEquals(Arrays.asList("progress 50", "progress 90", "progress 100", "success"), events);
+        assertEquals(100, taskHandle.getProgress());
+    }
+
+    @Test
+    public void onTaskCompleted_deliversFinalProgressWithoutReports() throws Exception {
+        mManager = UnitTestTaskManager.newManager();
+        final List<Integer> progresses = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch success = new CountDownLatch(1);
+        mManager.registerTaskEventListener(new TaskEvent.Listener<UnitTestBaseTask>() {
+            @Override
+            public void onTaskEvent(@NonNull TaskEvent<UnitTestBaseTask> event) {
+                if (event.getType() == TaskEventType.PROGRESS) {
+                    progresses.add(event.getProgress());
+                } else if (event.getType() == TaskEventType.SUCCESS) {
+                    success.countDown();
+                }
+            }
+        }, DispatchExecutors.callingThread());
+
+        mManager.addTask(UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.COMPLETE));
+
+        assertTrue(success.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(Collections.singletonList(100), progresses);
+    }
+
+    @Test
+    public void progressListener_doesNotBlockFinalProgress() throws Exception {
+        mManager = UnitTestTaskManager.newManager();
+        final CountDownLatch reported = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask task = UnitTestBaseTask.newTask().withBody(new UnitTestBaseTask.Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                task.progress(50);
+                reported.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.complete();
+            }
+        });
+        final CountDownLatch success = new CountDownLatch(1);
+        final AtomicBoolean isSuccessSeenInListener = new AtomicBoolean();
+        mManager.registerTaskEventListener(new TaskEvent.Listener<UnitTestBaseTask>() {
+            @Override
+            public void onTaskEvent(@NonNull TaskEvent<UnitTestBaseTask> event) {
+                if (event.getType() == TaskEventType.SUCCESS) {
+                    success.countDown();
+                } else if (event.getType() == TaskEventType.PROGRESS && event.getProgress() == 50) {
+                    // The task finishes while the flush is still in this listener
+                    release.countDown();
+                    try {
+                        isSuccessSeenInListener.set(success.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, DispatchExecutors.callingThread());
+        mManager.addTask(task);
+
+        assertTrue(reported.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        ShadowLooper.idleMainLooper(0);
+        assertTrue(isSuccessSeenInListener.get());
+        assertTrue(task.isComplete());
+    }
+
+    @Test
+    public void addTask_startsServiceWhenRateLimited() throws Exception {
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder()
+                                                   .withRateLimiter(new RateLimiter(1, 1, TimeUnit.HOURS)));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UnitTestBaseTask runningTask = UnitTestBaseTask.newTask().withBody(UnitTestBaseTask.blockUntil(started, release));
+        mManager.addTask(runningTask);
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        int startServiceCount = mManager.getStartServiceCount();
+
+        // The limiter has no permit left, so the task waits for a deferred dispatch
+        UnitTestBaseTask deferredTask = UnitTestBaseTask.newTask();
+        mManager.addTask(deferredTask);
+
+        assertFalse(deferredTask.isRunning());
+        assertEquals(startServiceCount + 1, mManager.getStartServiceCount());
+        release.countDown();
+    }
+
+    @Test
+    public void registerTaskEventListenerWithSnapshot_getsEventsAfterSnapshotVersion() throws Exception {
+        // The conditions aren't met, so the task stays queued and sends no events of its own
+        mManager = new UnitTestTaskManager(UnitTestTaskManager.newBuilder()
+                                                   .withConditions(new TestConditions(false)));
+        final List<Long> allVersions = Collections.synchronizedList(new ArrayList<Long>());
+        mManager.registerTaskEventListener(new TaskEvent.Listener<UnitTestBaseTask>() {
+            @Override
+            public void onTaskEvent(@NonNull TaskEvent<UnitTestBaseTask> event) {
+                allVersions.add(event.getVersion());
+            }
+        }, DispatchExecutors.callingThread());
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        mManager.addTask(task);
+        mManager.broadcastAdditionalTaskEvent(task, "before 1");
+        mManager.broadcastAdditionalTaskEvent(task, "before 2");
+        assertEquals(3, allVersions.size());
+
+        final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+        final List<Long> versions = Collections.synchronizedList(new ArrayList<Long>());
+        TaskSnapshot<UnitTestBaseTask> snapshot = mManager.registerTaskEventListenerWithSnapshot(
+                new TaskEvent.Listener<UnitTestBaseTask>() {
+                    @Override
+                    public void onTaskEvent(@NonNull TaskEvent<UnitTestBaseTask> event) {
+                        names.add(event.getName());
+                        versions.add(event.getVersion());
+                    }
+                }, DispatchExecutors.callingThread());
+
+        assertEquals(1, snapshot.size());
+        assertEquals(task.getTaskState(), snapshot.getTaskState(task.getId()));
+        assertEquals((long) allVersions.get(2), snapshot.getVersion());
+
+        mManager.broadcastAdditionalTaskEvent(task, "after 1");
+        mManager.broadcastAdditionalTaskEvent(task, "after 2");
+
+        assertEquals(Arrays.asList("after 1", "after 2"), names);
+        assertEquals(allVersions.subList(3, 5), versions);
+        assertTrue(versions.get(0) > snapshot.getVersion());
+        assertTrue(versions.get(1) > versions.get(0));
+    }
+
+    /**
+     * Counts the latch down once the test thread is blocked in the manager.
+     */
+    private static void releaseLater(@NonNull final CountDownLatch release) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                release.countDown();
+            }
+        }).start();
+    }
+}
@@ -0,0 +1,86 @@
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test to test the {@link BatchableTask}.
+ */
+public class BatchableTaskTest extends BaseUnitTest {
+
+    private static final class TestBatchableTask extends BatchableTask<TestBatchableTask> {
+
+        private static final long serialVersionUID = 1920394713286109247L;
+
+        transient List<TestBatchableTask> mBatch;
+        transient boolean mShouldThrow;
+
+        TestBatchableTask(String id) {
+            super(id);
+        }
+
+        @NonNull
+        @Override
+        public String getBatchKey() {
+            return "key";
+        }
+
+        @Override
+        protected void executeBatch(@NonNull List<TestBatchableTask> batch) {
+            mBatch = new ArrayList<>(batch);
+            if (mShouldThrow) {
+                throw new IllegalStateException("batch failed");
+            }
+            for (TestBatchableTask task : batch) {
+                task.onTaskCompleted();
+            }
+        }
+    }
+
+    @Test
+    public void runBatch_completesEveryTask() throws Exception {
+        TestBatchableTask first = new TestBatchableTask("1");
+        TestBatchableTask second = new TestBatchableTask("2");
+
+        BatchableTask.runBatch(Arrays.asList(first, second));
+
+        Assert.assertEquals(Arrays.asList(first, second), first.mBatch);
+        Assert.assertTrue(first.isComplete());
+        Assert.assertTrue(second.isComplete());
+        Assert.assertFalse(first.isRunning());
+    }
+
+    @Test
+    public void runBatch_skipsStoppedTasks() throws Exception {
+        TestBatchableTask first = new TestBatchableTask("1");
+        TestBatchableTask second = new TestBatchableTask("2");
+        CancellationToken cancellationToken = new CancellationToken();
+        cancellationToken.cancel(CancellationToken.Reason.CANCEL);
+        first.setCancellationToken(cancellationToken);
+
+        BatchableTask.runBatch(Arrays.asList(first, second));
+
+        Assert.assertEquals(Arrays.asList(second), second.mBatch);
+        Assert.assertFalse(first.isComplete());
+    }
+
+    @Test
+    public void runBatch_failsUnreportedTasksWhenBatchThrows() throws Exception {
+        TestBatchableTask first = new TestBatchableTask("1");
+        TestBatchableTask second = new TestBatchableTask("2");
+        first.mShouldThrow = true;
+
+        BatchableTask.runBatch(Arrays.asList(first, second));
+
+        Assert.assertTrue(first.isError());
+        Assert.assertTrue(second.isError());
+        //noinspection ConstantConditions
+        Assert.assertEquals(TaskError.CODE_BATCH_FAILED, second.getTaskError().getCode());
+    }
+}
@@ -0,0 +1,42 @@
+package com.vimeo.turnstile;
+
+import com.vimeo.turnstile.CancellationToken.Reason;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Unit test to test the {@link CancellationToken}.
+ */
+public class CancellationTokenTest extends BaseUnitTest {
+
+    @Test
+    public void newToken_isNotCancelled() throws Exception {
+        CancellationToken token = new CancellationToken();
+
+        Assert.assertFalse(token.isCancelled());
+        Assert.assertNull(token.getReason());
+        token.throwIfCancelled();
+    }
+
+    @Test
+    public void cancel_keepsFirstReason() throws Exception {
+        CancellationToken token = new CancellationToken();
+
+        Assert.assertTrue(token.cancel(Reason.PAUSE));
+        Assert.assertFalse(token.cancel(Reason.CANCEL));
+
+        Assert.assertTrue(token.isCancelled());
+        Assert.assertEquals(Reason.PAUSE, token.getReason());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void throwIfCancelled_throwsOnceCancelled() throws Exception {
+        CancellationToken token = new CancellationToken();
+        token.cancel(Reason.CANCEL);
+
+        token.throwIfCancelled();
+    }
+}
@@ -0,0 +1,71 @@
+package com.vimeo.turnstile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test to test the {@link ChunkedTask}.
+ */
+public class ChunkedTaskTest extends BaseUnitTest {
+
+    private static final class TestChunkedTask extends ChunkedTask {
+
+        private static final long serialVersionUID = -2712346271098862011L;
+
+        final transient List<Integer> mExecutedChunks = new ArrayList<>();
+        transient int mCancelAtChunk = -1;
+
+        TestChunkedTask() {
+            super("chunked");
+        }
+
+        @Override
+        protected int getChunkCount() {
+            return 4;
+        }
+
+        @Override
+        protected boolean executeChunk(int chunkIndex) {
+            mExecutedChunks.add(chunkIndex);
+            if (chunkIndex == mCancelAtChunk) {
+                getCancellationToken().cancel(CancellationToken.Reason.PAUSE);
+            }
+            return true;
+        }
+    }
+
+    @Test
+    public void execute_runsEveryChunk() throws Exception {
+        TestChunkedTask task = new TestChunkedTask();
+
+        task.call();
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), task.mExecutedChunks);
+        Assert.assertEquals(4, task.getCommittedChunkCount());
+        Assert.assertEquals(100, task.getProgress());
+        Assert.assertTrue(task.isComplete());
+    }
+
+    @Test
+    public void execute_resumesAfterLastCommittedChunk() throws Exception {
+        TestChunkedTask task = new TestChunkedTask();
+        task.mCancelAtChunk = 1;
+
+        task.call();
+        Assert.assertEquals(Arrays.asList(0, 1), task.mExecutedChunks);
+        Assert.assertEquals(2, task.getCommittedChunkCount());
+        Assert.assertEquals(50, task.getProgress());
+        Assert.assertFalse(task.isComplete());
+
+        // The manager hands every execution a new token
+        task.setCancellationToken(new CancellationToken());
+        task.mExecutedChunks.clear();
+        task.call();
+        Assert.assertEquals(Arrays.asList(2, 3), task.mExecutedChunks);
+        Assert.assertTrue(task.isComplete());
+    }
+}
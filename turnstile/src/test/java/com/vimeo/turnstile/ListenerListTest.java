@@ -0,0 +1,84 @@
+package com.vimeo.turnstile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerListTest extends BaseUnitTest {
+
+    private static final class QueueExecutor implements Executor {
+
+        final List<Runnable> mRunnables = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mRunnables.add(runnable);
+        }
+
+        void runAll() {
+            for (Runnable runnable : mRunnables) {
+                runnable.run();
+            }
+            mRunnables.clear();
+        }
+    }
+
+    private static ListenerList.Call<StringBuilder> add(final String value) {
+        return new ListenerList.Call<StringBuilder>() {
+            @Override
+            public void call(StringBuilder listener) {
+                listener.append(value);
+            }
+        };
+    }
+
+    @Test
+    public void testDispatchOnCallingThread() {
+        ListenerList<StringBuilder> listenerList = new ListenerList<>();
+        assertTrue(listenerList.isEmpty());
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        listenerList.add(first, DispatchExecutors.callingThread());
+        listenerList.add(second, DispatchExecutors.callingThread());
+        listenerList.dispatch(add("a"));
+        assertEquals(1, first.length());
+        assertEquals(1, second.length());
+
+        listenerList.remove(first);
+        listenerList.dispatch(add("b"));
+        assertEquals(1, first.length());
+        assertEquals(2, second.length());
+    }
+
+    @Test
+    public void testAddAgainReplacesExecutor() {
+        ListenerList<StringBuilder> listenerList = new ListenerList<>();
+        QueueExecutor executor = new QueueExecutor();
+        StringBuilder listener = new StringBuilder();
+        listenerList.add(listener, executor);
+        listenerList.add(listener, DispatchExecutors.callingThread());
+        listenerList.dispatch(add("a"));
+        assertEquals(1, listener.length());
+        assertTrue(executor.mRunnables.isEmpty());
+    }
+
+    @Test
+    public void testQueuedCallSkippedAfterRemove() {
+        ListenerList<StringBuilder> listenerList = new ListenerList<>();
+        QueueExecutor executor = new QueueExecutor();
+        StringBuilder listener = new StringBuilder();
+        listenerList.add(listener, executor);
+        listenerList.dispatch(add("a"));
+        listenerList.remove(listener);
+        assertTrue(listenerList.isEmpty());
+        executor.runAll();
+        assertEquals(0, listener.length());
+        assertFalse(DispatchExecutors.isMainThread(executor));
+    }
+}
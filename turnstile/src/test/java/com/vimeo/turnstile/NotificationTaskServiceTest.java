@@ -0,0 +1,158 @@
+package com.vimeo.turnstile;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.res.Resources;
+
+import com.vimeo.turnstile.dummy.UnitTestBaseTask;
+import com.vimeo.turnstile.dummy.UnitTestTaskManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowNotificationManager;
+import org.robolectric.util.ServiceController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class NotificationTaskServiceTest extends BaseUnitTest {
+
+    private static final int PROGRESS_NOTIFICATION_ID = 1;
+    private static final long INTERVAL_MILLIS = NotificationTaskService.DEFAULT_NOTIFICATION_UPDATE_INTERVAL_MILLIS;
+
+    public static final class TestNotificationService extends NotificationTaskService<UnitTestBaseTask> {
+
+        @Override
+        protected BaseTaskManager<UnitTestBaseTask> getManagerInstance() {
+            return UnitTestTaskManager.newManager();
+        }
+
+        @Override
+        public Resources getResources() {
+            // The library has no plurals for the title
+            Resources resources = super.getResources();
+            return new Resources(resources.getAssets(), resources.getDisplayMetrics(),
+                                 resources.getConfiguration()) {
+                @Override
+                public String getQuantityString(int id, int quantity) {
+                    return quantity + " tasks";
+                }
+            };
+        }
+
+        @Override
+        protected void handleAdditionalEvents(String event) {
+        }
+
+        @Override
+        protected int getNetworkNotificationMessageStringRes() {
+            return R.string.notification_paused;
+        }
+
+        @Override
+        protected int getFinishedNotificationId() {
+            return 2;
+        }
+
+        @Override
+        protected int getFinishedNotificationTitleStringRes() {
+            return R.string.notification_view;
+        }
+
+        @Override
+        protected int getFinishedIconDrawable() {
+            return android.R.drawable.stat_sys_upload;
+        }
+
+        @Override
+        protected int getProgressNotificationId() {
+            return PROGRESS_NOTIFICATION_ID;
+        }
+
+        @Override
+        protected int getProgressNotificationTitleStringRes() {
+            return 0;
+        }
+
+        @Override
+        protected String getNotificationChannelId() {
+            return "test";
+        }
+
+        @Override
+        protected int getNotificationChannelName() {
+            return R.string.app_name;
+        }
+
+        @Override
+        protected int getNotificationChannelDescription() {
+            return R.string.app_name;
+        }
+
+        @Override
+        protected int getProgressIconDrawable() {
+            return android.R.drawable.stat_sys_upload;
+        }
+    }
+
+    private ServiceController<TestNotificationService> mServiceController;
+    private TestNotificationService mService;
+    private ShadowNotificationManager mShadowNotificationManager;
+
+    @Before
+    public void setup() {
+        mServiceController = Robolectric.buildService(TestNotificationService.class).create();
+        mService = mServiceController.get();
+        NotificationManager notificationManager = (NotificationManager) RuntimeEnvironment.application
+                .getSystemService(Context.NOTIFICATION_SERVICE);
+        mShadowNotificationManager = Shadows.shadowOf(notificationManager);
+    }
+
+    @After
+    public void teardown() {
+        mService.mTaskManager.shutdown();
+        mServiceController.destroy();
+    }
+
+    private Notification getProgressNotification() {
+        return mShadowNotificationManager.getNotification(PROGRESS_NOTIFICATION_ID);
+    }
+
+    private static int getProgress(Notification notification) {
+        return notification.extras.getInt(Notification.EXTRA_PROGRESS);
+    }
+
+    @Test
+    public void onAggregateProgress_notifiesOncePerInterval() {
+        mService.onStarted();
+        ShadowLooper.idleMainLooper(INTERVAL_MILLIS);
+
+        // The first change since the last update is shown right away
+        mService.onAggregateProgress(10);
+        Notification notification = getProgressNotification();
+        assertEquals(10, getProgress(notification));
+
+        // The ones after it within the interval are held back
+        mService.onAggregateProgress(20);
+        mService.onAggregateProgress(30);
+        mService.onAggregateProgress(40);
+        ShadowLooper.idleMainLooper(INTERVAL_MILLIS - 1);
+        assertSame(notification, getProgressNotification());
+
+        // And shown in one update with the latest progress
+        ShadowLooper.idleMainLooper(1);
+        Notification delayedNotification = getProgressNotification();
+        assertNotSame(notification, delayedNotification);
+        assertEquals(40, getProgress(delayedNotification));
+
+        ShadowLooper.idleMainLooper(INTERVAL_MILLIS);
+        assertSame(delayedNotification, getProgressNotification());
+    }
+}
@@ -0,0 +1,68 @@
+package com.vimeo.turnstile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test to test the {@link RateLimiter}. The Robolectric
+ * clock doesn't advance on its own, so no permits are refilled
+ * during these tests.
+ */
+public class RateLimiterTest extends BaseUnitTest {
+
+    @Test
+    public void tryAcquire_allowsBurstUpToCapacity() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(3, 1, TimeUnit.SECONDS);
+
+        Assert.assertTrue(rateLimiter.tryAcquire());
+        Assert.assertTrue(rateLimiter.tryAcquire());
+        Assert.assertTrue(rateLimiter.tryAcquire());
+        Assert.assertFalse(rateLimiter.tryAcquire());
+    }
+
+    @Test
+    public void tryAcquire_isAllOrNothing() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(4, 1, TimeUnit.SECONDS);
+
+        Assert.assertFalse(rateLimiter.tryAcquire(5));
+        Assert.assertTrue(rateLimiter.tryAcquire(4));
+    }
+
+    @Test
+    public void getDelayMillis_isZeroWhenAvailable() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(2, 1, TimeUnit.SECONDS);
+
+        Assert.assertEquals(0, rateLimiter.getDelayMillis(1));
+    }
+
+    @Test
+    public void getDelayMillis_isBoundedByRefillRate() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(2, 1, TimeUnit.SECONDS);
+        rateLimiter.tryAcquire(2);
+
+        long delayMillis = rateLimiter.getDelayMillis(1);
+        Assert.assertTrue(delayMillis > 0);
+        Assert.assertTrue(delayMillis <= 500);
+    }
+
+    @Test
+    public void release_returnsPermitsUpToCapacity() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(2, 1, TimeUnit.SECONDS);
+        rateLimiter.tryAcquire(2);
+
+        rateLimiter.release(1);
+        Assert.assertTrue(rateLimiter.tryAcquire());
+        Assert.assertFalse(rateLimiter.tryAcquire());
+
+        rateLimiter.release(5);
+        Assert.assertTrue(rateLimiter.tryAcquire(2));
+        Assert.assertFalse(rateLimiter.tryAcquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsEmptyBucket() throws Exception {
+        new RateLimiter(0, 1, TimeUnit.SECONDS);
+    }
+}
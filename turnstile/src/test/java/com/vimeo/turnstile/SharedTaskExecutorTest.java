@@ -0,0 +1,104 @@
+package com.vimeo.turnstile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test to test the {@link SharedTaskExecutor}.
+ */
+public class SharedTaskExecutorTest extends BaseUnitTest {
+
+    @Test
+    public void lanes_shareThreadsFairly() throws Exception {
+        SharedTaskExecutor executor = new SharedTaskExecutor(1);
+        SharedTaskExecutor.Lane laneA = executor.newLane("a", 1, 0, 1);
+        SharedTaskExecutor.Lane laneB = executor.newLane("b", 1, 0, 1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+
+        // Keep the only thread busy while the lanes fill up
+        laneA.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blockLatch.await();
+                } catch (InterruptedException ignored) {
+                }
+                order.add("a0");
+            }
+        });
+        laneA.execute(record(order, "a1"));
+        laneA.execute(record(order, "a2"));
+        laneB.execute(record(order, "b1"));
+        blockLatch.countDown();
+
+        laneA.shutdown();
+        laneB.shutdown();
+        Assert.assertTrue(laneA.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertTrue(laneB.awaitTermination(5, TimeUnit.SECONDS));
+        // Lane b hadn't been served yet, so it goes before lane a's second task
+        Assert.assertEquals(Arrays.asList("a0", "b1", "a1", "a2"), order);
+    }
+
+    @Test
+    public void execute_startsThreadsForBurst() throws Exception {
+        SharedTaskExecutor executor = new SharedTaskExecutor(4);
+        SharedTaskExecutor.Lane lane = executor.newLane("a", 1, 0, 4);
+
+        // Leave an idle thread behind, a burst used to wake only that one
+        final CountDownLatch warmUpLatch = new CountDownLatch(1);
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUpLatch.countDown();
+            }
+        });
+        Assert.assertTrue(warmUpLatch.await(5, TimeUnit.SECONDS));
+        // Give the thread time to go back to waiting for work
+        Thread.sleep(100);
+
+        final CountDownLatch runningLatch = new CountDownLatch(4);
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runningLatch.countDown();
+                    try {
+                        blockLatch.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            });
+        }
+
+        // All four only count down if they run at the same time
+        Assert.assertTrue(runningLatch.await(5, TimeUnit.SECONDS));
+        blockLatch.countDown();
+        lane.shutdown();
+        Assert.assertTrue(lane.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void newLane_rejectsMinimumsAboveBudget() throws Exception {
+        SharedTaskExecutor executor = new SharedTaskExecutor(2);
+        executor.newLane("a", 1, 1, 2);
+        executor.newLane("b", 1, 2, 2);
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package com.vimeo.turnstile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit test to test the {@link SubTaskGroup}.
+ */
+public class SubTaskGroupTest extends BaseUnitTest {
+
+    private static final class GroupTask extends BaseTask {
+
+        private static final long serialVersionUID = 6016474834611350270L;
+
+        GroupTask() {
+            super("group");
+        }
+
+        @Override
+        protected void execute() {
+        }
+    }
+
+    private ExecutorService mExecutor;
+    private GroupTask mTask;
+
+    @Before
+    public void setup() {
+        mExecutor = Executors.newFixedThreadPool(2);
+        mTask = new GroupTask();
+        mTask.setSubTaskExecutor(mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void runAll_runsEveryPart() throws Exception {
+        final List<Integer> ranParts = Collections.synchronizedList(new ArrayList<Integer>());
+        SubTaskGroup group = mTask.newSubTaskGroup(3);
+        for (int i = 0; i < 5; i++) {
+            final int index = i;
+            group.add(new SubTaskGroup.Part() {
+                @Override
+                protected void run() {
+                    ranParts.add(index);
+                    onProgress(100);
+                }
+            });
+        }
+
+        Assert.assertTrue(group.runAll());
+        Assert.assertNull(group.getFailure());
+        Assert.assertEquals(5, ranParts.size());
+        Assert.assertEquals(100, mTask.getProgress());
+    }
+
+    @Test
+    public void runAll_skipsRemainingPartsAfterFailure() throws Exception {
+        final List<Integer> ranParts = Collections.synchronizedList(new ArrayList<Integer>());
+        final Exception failure = new Exception("part failed");
+        // One at a time so the order is predictable
+        SubTaskGroup group = mTask.newSubTaskGroup(1);
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            group.add(new SubTaskGroup.Part() {
+                @Override
+                protected void run() throws Exception {
+                    ranParts.add(index);
+                    if (index == 1) {
+                        throw failure;
+                    }
+                }
+            });
+        }
+
+        Assert.assertFalse(group.runAll());
+        Assert.assertSame(failure, group.getFailure());
+        Assert.assertEquals(Arrays.asList(0, 1), ranParts);
+    }
+
+    @Test
+    public void runAll_waitsForHelpersWhenInterrupted() throws Exception {
+        final CountDownLatch helperStartedLatch = new CountDownLatch(1);
+        final CountDownLatch taskPartDoneLatch = new CountDownLatch(1);
+        final AtomicBoolean helperInterrupted = new AtomicBoolean();
+        final AtomicBoolean helperFinished = new AtomicBoolean();
+        final AtomicReference<Thread> taskThread = new AtomicReference<>();
+        final SubTaskGroup group = mTask.newSubTaskGroup(2);
+        for (int i = 0; i < 2; i++) {
+            group.add(new SubTaskGroup.Part() {
+                @Override
+                protected void run() throws Exception {
+                    if (Thread.currentThread() == taskThread.get()) {
+                        // Let the helper take the other part
+                        helperStartedLatch.await();
+                        taskPartDoneLatch.countDown();
+                        return;
+                    }
+                    helperStartedLatch.countDown();
+                    try {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                    } catch (InterruptedException e) {
+                        helperInterrupted.set(true);
+                    }
+                    // Checkpointing takes a moment
+                    Thread.sleep(50);
+                    helperFinished.set(true);
+                }
+            });
+        }
+        final AtomicBoolean helperFinishedOnReturn = new AtomicBoolean();
+        final AtomicReference<Exception> thrown = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    group.runAll();
+                } catch (InterruptedException e) {
+                    thrown.set(e);
+                }
+                helperFinishedOnReturn.set(helperFinished.get());
+            }
+        });
+        taskThread.set(thread);
+        thread.start();
+
+        Assert.assertTrue(taskPartDoneLatch.await(5, TimeUnit.SECONDS));
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+
+        Assert.assertTrue(thrown.get() instanceof InterruptedException);
+        Assert.assertTrue(helperInterrupted.get());
+        Assert.assertTrue(helperFinishedOnReturn.get());
+    }
+}
@@ -36,6 +36,7 @@ import org.junit.Test;
 
 import java.util.concurrent.CountDownLatch;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -99,4 +100,52 @@ public class TaskCacheUnitTest extends BaseUnitTest {
         assertNull(mTaskCache.get(null));
     }
 
+    @Test
+    public void insert_isTaskToRunAndPending() throws Exception {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        mTaskCache.insert(task, null);
+
+        assertTrue(mTaskCache.hasTasksToRun());
+        assertTrue(mTaskCache.getTasksToRun().contains(task));
+        assertTrue(mTaskCache.getPendingTasks().contains(task));
+    }
+
+    @Test
+    public void setDispatched_removesFromPendingOnly() throws Exception {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        mTaskCache.insert(task, null);
+
+        mTaskCache.setDispatched(task.getId(), true);
+        assertTrue(mTaskCache.getTasksToRun().contains(task));
+        assertFalse(mTaskCache.getPendingTasks().contains(task));
+
+        mTaskCache.setDispatched(task.getId(), false);
+        assertTrue(mTaskCache.getPendingTasks().contains(task));
+    }
+
+    @Test
+    public void upsert_reevaluatesShouldRun() throws Exception {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        mTaskCache.insert(task, null);
+
+        task.changeState();
+        mTaskCache.upsert(task);
+        assertFalse(mTaskCache.getTasksToRun().contains(task));
+        assertFalse(mTaskCache.getPendingTasks().contains(task));
+
+        // A task that no longer needs to run shouldn't become pending when it leaves the executor
+        mTaskCache.setDispatched(task.getId(), false);
+        assertFalse(mTaskCache.getPendingTasks().contains(task));
+    }
+
+    @Test
+    public void remove_clearsIndexes() throws Exception {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        mTaskCache.insert(task, null);
+
+        mTaskCache.remove(task.getId());
+        assertFalse(mTaskCache.getTasksToRun().contains(task));
+        assertFalse(mTaskCache.getPendingTasks().contains(task));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package com.vimeo.turnstile;
+
+import com.vimeo.turnstile.BaseTask.TaskState;
+import com.vimeo.turnstile.BaseTaskManager.TaskEventListener;
+import com.vimeo.turnstile.dummy.UnitTestBaseTask;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskEventTest extends BaseUnitTest {
+
+    @Test
+    public void testProgressEventsAreReused() {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskEvent<UnitTestBaseTask> event = TaskEvent.obtain(TaskEventType.PROGRESS, task, 10, null, null);
+        event.release();
+        TaskEvent<UnitTestBaseTask> reused = TaskEvent.obtain(TaskEventType.PROGRESS, task, 20, null, null);
+        assertSame(event, reused);
+        assertEquals(20, reused.getProgress());
+        reused.release();
+    }
+
+    @Test
+    public void testOtherEventsAreNotReused() {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskEvent<UnitTestBaseTask> event = TaskEvent.obtain(TaskEventType.SUCCESS, task, TaskEvent.NO_PROGRESS, null, null);
+        event.release();
+        assertSame(task, event.getTask());
+        TaskEvent<UnitTestBaseTask> next = TaskEvent.obtain(TaskEventType.SUCCESS, task, TaskEvent.NO_PROGRESS, null, null);
+        assertNotSame(event, next);
+    }
+
+    @Test
+    public void testEventIsKeptUntilListenersAreCalled() {
+        final List<Runnable> runnables = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnables.add(runnable);
+            }
+        };
+        final List<Integer> progress = new ArrayList<>();
+        ListenerList<TaskEvent.Listener<UnitTestBaseTask>> listenerList = new ListenerList<>();
+        listenerList.add(new TaskEventListener<UnitTestBaseTask>() {
+            @Override
+            public void onProgress(UnitTestBaseTask task, int value) {
+                progress.add(value);
+            }
+        }, executor);
+
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskEvent<UnitTestBaseTask> event = TaskEvent.obtain(TaskEventType.PROGRESS, task, 42, null, null);
+        listenerList.dispatch(event.mCall);
+        event.release();
+        // Still held by the queued call, so it can't be handed out again
+        TaskEvent<UnitTestBaseTask> other = TaskEvent.obtain(TaskEventType.PROGRESS, task, 7, null, null);
+        assertNotSame(event, other);
+        other.release();
+
+        runnables.get(0).run();
+        assertEquals(1, progress.size());
+        assertEquals(42, (int) progress.get(0));
+        assertSame(event, TaskEvent.obtain(TaskEventType.PROGRESS, task, 1, null, null));
+    }
+
+    @Test
+    public void testListenerAdapterCallsCallbackForType() {
+        final TaskError[] failure = new TaskError[1];
+        TaskEventListener<UnitTestBaseTask> listener = new TaskEventListener<UnitTestBaseTask>() {
+            @Override
+            public void onFailure(UnitTestBaseTask task, TaskError error) {
+                failure[0] = error;
+            }
+        };
+        TaskError error = new TaskError("test", TaskError.CODE_REJECTED, "rejected");
+        listener.onTaskEvent(TaskEvent.obtain(TaskEventType.FAILURE, UnitTestBaseTask.newTask(),
+                                              TaskEvent.NO_PROGRESS, error, null));
+        assertSame(error, failure[0]);
+    }
+
+    @Test
+    public void testFilteredListenerOnlyGetsMatchingEvents() {
+        final List<TaskEventType> types = new ArrayList<>();
+        TaskEvent.Listener<UnitTestBaseTask> listener = new TaskEvent.Listener<UnitTestBaseTask>() {
+            @Override
+            public void onTaskEvent(TaskEvent<UnitTestBaseTask> event) {
+                types.add(event.getType());
+            }
+        };
+        ListenerList<TaskEvent.Listener<UnitTestBaseTask>> listenerList = new ListenerList<>();
+        listenerList.add(new FilteredListener<>(listener, TaskEventFilters.ofTypes(TaskEventType.SUCCESS)),
+                         DispatchExecutors.callingThread());
+
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskEvent<UnitTestBaseTask> progress = TaskEvent.obtain(TaskEventType.PROGRESS, task, 5, null, null);
+        listenerList.dispatch(progress.mCall);
+        progress.release();
+        TaskEvent<UnitTestBaseTask> success =
+                TaskEvent.obtain(TaskEventType.SUCCESS, task, TaskEvent.NO_PROGRESS, null, null);
+        listenerList.dispatch(success.mCall);
+        success.release();
+        assertEquals(1, types.size());
+        assertEquals(TaskEventType.SUCCESS, types.get(0));
+
+        listenerList.remove(FilteredListener.key(listener));
+        assertTrue(listenerList.isEmpty());
+    }
+
+    @Test
+    public void testStateFilter() {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskEvent<UnitTestBaseTask> event = TaskEvent.obtain(TaskEventType.ADDED, task, TaskEvent.NO_PROGRESS, null, null);
+        assertTrue(TaskEventFilters.inStates(task.getTaskState()).matches(event));
+        assertFalse(TaskEventFilters.inStates(TaskState.COMPLETE, TaskState.ERROR).matches(event));
+    }
+}
@@ -0,0 +1,130 @@
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+
+import com.vimeo.turnstile.dummy.UnitTestBaseTask;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskHandleTest extends BaseUnitTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private static final class RecordingCallback extends TaskHandle.Callback<UnitTestBaseTask> {
+
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onProgress(@NonNull UnitTestBaseTask task, int progress) {
+            mEvents.add("progress " + progress);
+        }
+
+        @Override
+        public void onSuccess(@NonNull UnitTestBaseTask task) {
+            mEvents.add("success");
+        }
+
+        @Override
+        public void onFailure(@NonNull UnitTestBaseTask task, @NonNull TaskError error) {
+            mEvents.add("failure");
+        }
+
+        @Override
+        public void onCanceled(@NonNull UnitTestBaseTask task) {
+            mEvents.add("canceled");
+        }
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskHandle<UnitTestBaseTask> taskHandle = new TaskHandle<>(task, null);
+        RecordingCallback callback = new RecordingCallback();
+        taskHandle.addCallback(callback, DIRECT_EXECUTOR);
+
+        taskHandle.onProgress(50);
+        taskHandle.onSuccess();
+        // Only the first outcome counts
+        taskHandle.onCanceled();
+        taskHandle.onProgress(100);
+
+        assertTrue(taskHandle.isDone());
+        assertFalse(taskHandle.isCancelled());
+        assertSame(task, taskHandle.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(3, callback.mEvents.size());
+        assertEquals("progress 50", callback.mEvents.get(0));
+        // A success always ends with a progress of 100
+        assertEquals("progress 100", callback.mEvents.get(1));
+        assertEquals("success", callback.mEvents.get(2));
+        assertEquals(100, taskHandle.getProgress());
+
+        // A callback added afterwards gets the outcome right away
+        RecordingCallback lateCallback = new RecordingCallback();
+        taskHandle.addCallback(lateCallback, DIRECT_EXECUTOR);
+        assertEquals(1, lateCallback.mEvents.size());
+        assertEquals("success", lateCallback.mEvents.get(0));
+    }
+
+    @Test
+    public void testRepeatedProgressIsSkipped() {
+        TaskHandle<UnitTestBaseTask> taskHandle = new TaskHandle<>(UnitTestBaseTask.newTask(), null);
+        RecordingCallback callback = new RecordingCallback();
+        taskHandle.addCallback(callback, DIRECT_EXECUTOR);
+        taskHandle.onProgress(100);
+        taskHandle.onProgress(100);
+        taskHandle.onSuccess();
+        assertEquals(2, callback.mEvents.size());
+        assertEquals("progress 100", callback.mEvents.get(0));
+        assertEquals("success", callback.mEvents.get(1));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testFailure() throws Exception {
+        TaskHandle<UnitTestBaseTask> taskHandle = new TaskHandle<>(UnitTestBaseTask.newTask(), null);
+        taskHandle.onFailure(new TaskError("test", 1, "failed"));
+        assertEquals(1, taskHandle.getTaskError().getCode());
+        taskHandle.get();
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCanceled() throws Exception {
+        TaskHandle<UnitTestBaseTask> taskHandle = new TaskHandle<>(UnitTestBaseTask.newTask(), null);
+        taskHandle.onCanceled();
+        assertTrue(taskHandle.isCancelled());
+        taskHandle.get();
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimesOut() throws Exception {
+        TaskHandle<UnitTestBaseTask> taskHandle = new TaskHandle<>(UnitTestBaseTask.newTask(), null);
+        taskHandle.get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testRemovedCallbackIsNotCalled() {
+        TaskHandle<UnitTestBaseTask> taskHandle = new TaskHandle<>(UnitTestBaseTask.newTask(), null);
+        RecordingCallback callback = new RecordingCallback();
+        taskHandle.addCallback(callback, DIRECT_EXECUTOR);
+        taskHandle.removeCallback(callback);
+        taskHandle.onSuccess();
+        assertTrue(callback.mEvents.isEmpty());
+    }
+}
@@ -0,0 +1,35 @@
+package com.vimeo.turnstile;
+
+import com.vimeo.turnstile.BaseTask.TaskState;
+import com.vimeo.turnstile.dummy.UnitTestBaseTask;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TaskSnapshotTest extends BaseUnitTest {
+
+    @Test
+    public void testStatesAreCopied() {
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskState state = task.getTaskState();
+        Map<String, UnitTestBaseTask> tasks = new HashMap<>();
+        tasks.put(task.getId(), task);
+
+        TaskSnapshot<UnitTestBaseTask> snapshot = new TaskSnapshot<>(7, tasks);
+        task.changeState();
+        tasks.clear();
+
+        assertEquals(7, snapshot.getVersion());
+        assertEquals(1, snapshot.size());
+        assertEquals(task, snapshot.getTasks().get(0));
+        assertEquals(state, snapshot.getTaskState(task.getId()));
+        assertEquals(0, snapshot.getProgress(task.getId()));
+        assertNull(snapshot.getTaskState("missing"));
+        assertEquals(-1, snapshot.getProgress("missing"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.vimeo.turnstile;
+
+import android.os.Process;
+
+import org.junit.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskThreadFactoryTest extends BaseUnitTest {
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test
+    public void testThreadsAreNumbered() {
+        ThreadFactory threadFactory = new TaskThreadFactory("uploads", Process.THREAD_PRIORITY_BACKGROUND);
+        assertEquals("uploads-1", threadFactory.newThread(NO_OP).getName());
+        assertEquals("uploads-2", threadFactory.newThread(NO_OP).getName());
+        assertFalse(threadFactory.newThread(NO_OP).isDaemon());
+    }
+
+    @Test
+    public void testThreadRunsRunnable() throws Exception {
+        final boolean[] ran = new boolean[1];
+        Thread thread = new TaskThreadFactory("uploads", Process.THREAD_PRIORITY_BACKGROUND).newThread(new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(ran[0]);
+    }
+}
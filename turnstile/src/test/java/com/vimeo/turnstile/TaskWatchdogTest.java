@@ -0,0 +1,123 @@
+package com.vimeo.turnstile;
+
+import android.support.annotation.NonNull;
+
+import com.vimeo.turnstile.CancellationToken.Reason;
+import com.vimeo.turnstile.dummy.UnitTestBaseTask;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit test to test the {@link TaskWatchdog}. The Robolectric clock
+ * only moves when the main looper is advanced, the watchdog thread
+ * picks the new time up the next time it wakes up.
+ */
+public class TaskWatchdogTest extends BaseUnitTest {
+
+    private static final long TIMEOUT_MILLIS = 100;
+    // Longer than the watchdog waits before it checks the clock again
+    private static final long QUIET_MILLIS = 300;
+
+    private static final class RecordingListener implements TaskWatchdog.Listener {
+
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        final AtomicReference<Reason> mReason = new AtomicReference<>();
+        final AtomicReference<CancellationToken> mCancellationToken = new AtomicReference<>();
+
+        @Override
+        public void onTimeout(@NonNull BaseTask task,
+                              @NonNull CancellationToken cancellationToken,
+                              @NonNull Reason reason) {
+            mCancellationToken.set(cancellationToken);
+            mReason.set(reason);
+            mLatch.countDown();
+        }
+
+        boolean await(long millis) throws InterruptedException {
+            return mLatch.await(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void watch_timesOutPastDeadline() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        CancellationToken cancellationToken = new CancellationToken();
+        TaskWatchdog.getInstance().watch(UnitTestBaseTask.newTask(), cancellationToken, TIMEOUT_MILLIS, 0, listener);
+
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS);
+
+        Assert.assertTrue(listener.await(TimeUnit.SECONDS.toMillis(5)));
+        Assert.assertEquals(Reason.TIMEOUT, listener.mReason.get());
+        Assert.assertSame(cancellationToken, listener.mCancellationToken.get());
+    }
+
+    @Test
+    public void watch_detectsStall() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        TaskWatchdog.getInstance().watch(UnitTestBaseTask.newTask(), new CancellationToken(), 0, TIMEOUT_MILLIS,
+                                         listener);
+
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS);
+
+        Assert.assertTrue(listener.await(TimeUnit.SECONDS.toMillis(5)));
+        Assert.assertEquals(Reason.STALL, listener.mReason.get());
+    }
+
+    @Test
+    public void watch_progressPostponesStall() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskWatchdog.getInstance().watch(task, new CancellationToken(), 0, TIMEOUT_MILLIS, listener);
+
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS - 10);
+        task.progress(50);
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS - 10);
+        Assert.assertFalse(listener.await(QUIET_MILLIS));
+
+        ShadowLooper.idleMainLooper(10);
+        Assert.assertTrue(listener.await(TimeUnit.SECONDS.toMillis(5)));
+        Assert.assertEquals(Reason.STALL, listener.mReason.get());
+    }
+
+    @Test
+    public void watch_deadlineWinsOverProgress() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        TaskWatchdog.getInstance().watch(task, new CancellationToken(), TIMEOUT_MILLIS, TIMEOUT_MILLIS, listener);
+
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS - 10);
+        task.progress(50);
+        ShadowLooper.idleMainLooper(10);
+
+        Assert.assertTrue(listener.await(TimeUnit.SECONDS.toMillis(5)));
+        Assert.assertEquals(Reason.TIMEOUT, listener.mReason.get());
+    }
+
+    @Test
+    public void unwatch_stopsWatching() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        CancellationToken cancellationToken = new CancellationToken();
+        TaskWatchdog.getInstance().watch(UnitTestBaseTask.newTask(), cancellationToken, TIMEOUT_MILLIS, 0, listener);
+
+        TaskWatchdog.getInstance().unwatch(cancellationToken);
+        ShadowLooper.idleMainLooper(TIMEOUT_MILLIS);
+
+        Assert.assertFalse(listener.await(QUIET_MILLIS));
+    }
+
+    @Test
+    public void watch_ignoresExecutionWithoutTimeouts() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        TaskWatchdog.getInstance().watch(UnitTestBaseTask.newTask(), new CancellationToken(), 0, 0, listener);
+
+        ShadowLooper.idleMainLooper(TimeUnit.DAYS.toMillis(1));
+
+        Assert.assertFalse(listener.await(QUIET_MILLIS));
+    }
+}
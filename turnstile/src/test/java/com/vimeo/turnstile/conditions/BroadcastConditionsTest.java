@@ -0,0 +1,190 @@
+package com.vimeo.turnstile.conditions;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+import com.vimeo.turnstile.BaseUnitTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowStatFs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BroadcastConditionsTest extends BaseUnitTest {
+
+    private static final Intent BATTERY_INTENT = new Intent(Intent.ACTION_BATTERY_CHANGED);
+
+    private final List<Boolean> mChanges = new ArrayList<>();
+    private final Conditions.Listener mListener = new Conditions.Listener() {
+        @Override
+        public void onConditionsChange(boolean conditionsMet) {
+            mChanges.add(conditionsMet);
+        }
+    };
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void teardown() {
+        ShadowStatFs.reset();
+    }
+
+    private void sendBattery(int level, boolean isPlugged) {
+        Intent intent = new Intent(Intent.ACTION_BATTERY_CHANGED);
+        intent.putExtra(BatteryManager.EXTRA_LEVEL, level);
+        intent.putExtra(BatteryManager.EXTRA_SCALE, 100);
+        intent.putExtra(BatteryManager.EXTRA_PLUGGED, isPlugged ? BatteryManager.BATTERY_PLUGGED_AC : 0);
+        mContext.sendStickyBroadcast(intent);
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    private void sendScreen(boolean isOn) {
+        PowerManager powerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+        Shadows.shadowOf(powerManager).setIsScreenOn(isOn);
+        mContext.sendBroadcast(new Intent(isOn ? Intent.ACTION_SCREEN_ON : Intent.ACTION_SCREEN_OFF));
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    private static void setFreeBytes(File directory, int freeBytes) {
+        int freeBlocks = freeBytes / ShadowStatFs.BLOCK_SIZE;
+        ShadowStatFs.registerStats(directory, 1000, freeBlocks, freeBlocks);
+    }
+
+    @Test
+    public void areConditionsMet_readsStickyBroadcastWithoutListener() {
+        ChargingConditions conditions = new ChargingConditions(mContext);
+        sendBattery(50, true);
+        assertTrue(conditions.areConditionsMet());
+        sendBattery(50, false);
+        assertFalse(conditions.areConditionsMet());
+        assertFalse(ShadowApplication.getInstance().hasReceiverForIntent(BATTERY_INTENT));
+    }
+
+    @Test
+    public void setListener_tellsOnlyChanges() {
+        ChargingConditions conditions = new ChargingConditions(mContext);
+        sendBattery(50, false);
+        conditions.setListener(mListener);
+        assertTrue(ShadowApplication.getInstance().hasReceiverForIntent(BATTERY_INTENT));
+        assertFalse(conditions.areConditionsMet());
+
+        sendBattery(60, false);
+        sendBattery(60, true);
+        sendBattery(70, true);
+        sendBattery(70, false);
+        assertEquals(Arrays.asList(true, false), mChanges);
+    }
+
+    @Test
+    public void setListener_nullUnregisters() {
+        ChargingConditions conditions = new ChargingConditions(mContext);
+        sendBattery(50, false);
+        conditions.setListener(mListener);
+        conditions.setListener(null);
+        assertFalse(ShadowApplication.getInstance().hasReceiverForIntent(BATTERY_INTENT));
+
+        sendBattery(50, true);
+        assertTrue(mChanges.isEmpty());
+        // Read again now that nothing keeps it up to date
+        assertTrue(conditions.areConditionsMet());
+    }
+
+    @Test
+    public void chargingConditions_needStickyBroadcast() {
+        ChargingConditions conditions = new ChargingConditions(mContext);
+        mContext.removeStickyBroadcast(BATTERY_INTENT);
+        assertFalse(conditions.areConditionsMet());
+    }
+
+    @Test
+    public void batteryLevelConditions_useLevelOnlyOnBattery() {
+        BatteryLevelConditions conditions = new BatteryLevelConditions(mContext, 20);
+        sendBattery(19, false);
+        assertFalse(conditions.areConditionsMet());
+        sendBattery(20, false);
+        assertTrue(conditions.areConditionsMet());
+        sendBattery(5, true);
+        assertTrue(conditions.areConditionsMet());
+
+        conditions.setListener(mListener);
+        sendBattery(5, false);
+        sendBattery(25, false);
+        assertEquals(Arrays.asList(false, true), mChanges);
+    }
+
+    @Test
+    public void batteryLevelConditions_metWithoutBatteryState() {
+        BatteryLevelConditions conditions = new BatteryLevelConditions(mContext, 20);
+        mContext.removeStickyBroadcast(BATTERY_INTENT);
+        assertTrue(conditions.areConditionsMet());
+    }
+
+    @Config(sdk = 19)
+    @Test
+    public void deviceIdleConditions_followScreen() {
+        DeviceIdleConditions conditions = new DeviceIdleConditions(mContext);
+        sendScreen(true);
+        assertFalse(conditions.areConditionsMet());
+
+        conditions.setListener(mListener);
+        sendScreen(false);
+        sendScreen(true);
+        assertEquals(Arrays.asList(true, false), mChanges);
+    }
+
+    @Config(sdk = 16)
+    @Test
+    public void storageConditions_compareFreeSpace() {
+        File directory = mContext.getFilesDir();
+        StorageConditions conditions = new StorageConditions(mContext, 100 * ShadowStatFs.BLOCK_SIZE, directory);
+        setFreeBytes(directory, 100 * ShadowStatFs.BLOCK_SIZE);
+        assertTrue(conditions.areConditionsMet());
+        setFreeBytes(directory, 99 * ShadowStatFs.BLOCK_SIZE);
+        assertFalse(conditions.areConditionsMet());
+    }
+
+    @Config(sdk = 16)
+    @Test
+    public void storageConditions_readFreeSpaceAgainWhileListening() {
+        File directory = mContext.getFilesDir();
+        StorageConditions conditions = new StorageConditions(mContext, 100 * ShadowStatFs.BLOCK_SIZE, directory);
+        setFreeBytes(directory, 200 * ShadowStatFs.BLOCK_SIZE);
+        conditions.setListener(mListener);
+
+        // No broadcast says the app's own writes used the space up
+        setFreeBytes(directory, 50 * ShadowStatFs.BLOCK_SIZE);
+        ShadowLooper.idleMainLooper(StorageConditions.REFRESH_INTERVAL_MILLIS - 1);
+        assertTrue(mChanges.isEmpty());
+        ShadowLooper.idleMainLooper(1);
+        assertEquals(Collections.singletonList(false), mChanges);
+        assertFalse(conditions.areConditionsMet());
+
+        // The checks stop with the listener
+        conditions.setListener(null);
+        setFreeBytes(directory, 200 * ShadowStatFs.BLOCK_SIZE);
+        ShadowLooper.idleMainLooper(StorageConditions.REFRESH_INTERVAL_MILLIS);
+        assertEquals(Collections.singletonList(false), mChanges);
+    }
+}
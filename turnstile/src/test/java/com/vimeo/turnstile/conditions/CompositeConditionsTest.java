@@ -0,0 +1,92 @@
+package com.vimeo.turnstile.conditions;
+
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.BaseUnitTest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompositeConditionsTest extends BaseUnitTest {
+
+    private static class TestConditions implements Conditions {
+
+        boolean mConditionsMet;
+        @Nullable
+        Listener mListener;
+
+        TestConditions(boolean conditionsMet) {
+            mConditionsMet = conditionsMet;
+        }
+
+        void set(boolean conditionsMet) {
+            mConditionsMet = conditionsMet;
+            if (mListener != null) {
+                mListener.onConditionsChange(conditionsMet);
+            }
+        }
+
+        @Override
+        public boolean areConditionsMet() {
+            return mConditionsMet;
+        }
+
+        @Override
+        public void setListener(@Nullable Listener listener) {
+            mListener = listener;
+        }
+    }
+
+    private static List<Boolean> listen(Conditions conditions) {
+        final List<Boolean> changes = new ArrayList<>();
+        conditions.setListener(new Conditions.Listener() {
+            @Override
+            public void onConditionsChange(boolean conditionsMet) {
+                changes.add(conditionsMet);
+            }
+        });
+        return changes;
+    }
+
+    @Test
+    public void testAndOrNot() {
+        TestConditions met = new TestConditions(true);
+        TestConditions notMet = new TestConditions(false);
+        assertFalse(CompositeConditions.and(met, notMet).areConditionsMet());
+        assertTrue(CompositeConditions.or(met, notMet).areConditionsMet());
+        assertTrue(CompositeConditions.not(notMet).areConditionsMet());
+    }
+
+    @Test
+    public void testOnlyChangesAreReported() {
+        TestConditions network = new TestConditions(true);
+        TestConditions charging = new TestConditions(false);
+        CompositeConditions conditions = CompositeConditions.and(network, charging);
+        List<Boolean> changes = listen(conditions);
+
+        network.set(false);
+        assertTrue(changes.isEmpty());
+        charging.set(true);
+        assertTrue(changes.isEmpty());
+        network.set(true);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0));
+        assertTrue(conditions.areConditionsMet());
+    }
+
+    @Test
+    public void testListenersAreRemoved() {
+        TestConditions network = new TestConditions(true);
+        CompositeConditions conditions = CompositeConditions.not(network);
+        listen(conditions);
+        conditions.setListener(null);
+        assertNull(network.mListener);
+    }
+}
@@ -0,0 +1,157 @@
+package com.vimeo.turnstile.conditions;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.ConnectivityManager.NetworkCallback;
+import android.net.NetworkInfo;
+import android.net.NetworkInfo.DetailedState;
+import android.support.annotation.NonNull;
+
+import com.vimeo.turnstile.BaseUnitTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowConnectivityManager;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowNetworkInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectivityMonitorTest extends BaseUnitTest {
+
+    private static final class RecordingListener implements ConnectivityMonitor.Listener {
+
+        final List<Boolean> mChanges = new ArrayList<>();
+
+        @Override
+        public void onConnectivityChanged(@NonNull ConnectivityMonitor monitor) {
+            mChanges.add(monitor.isConnected());
+        }
+    }
+
+    private static final Intent CONNECTIVITY_INTENT = new Intent(ConnectivityManager.CONNECTIVITY_ACTION);
+
+    private ShadowConnectivityManager mShadowConnectivityManager;
+    private ConnectivityMonitor mMonitor;
+
+    @Before
+    public void setup() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) RuntimeEnvironment.application
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        mShadowConnectivityManager = Shadows.shadowOf(connectivityManager);
+        setNetwork(false);
+        mMonitor = new ConnectivityMonitor(RuntimeEnvironment.application);
+    }
+
+    private void setNetwork(boolean isConnected) {
+        NetworkInfo networkInfo = ShadowNetworkInfo.newInstance(
+                isConnected ? DetailedState.CONNECTED : DetailedState.DISCONNECTED,
+                ConnectivityManager.TYPE_WIFI, 0, true, isConnected);
+        mShadowConnectivityManager.setActiveNetworkInfo(networkInfo);
+    }
+
+    @Test
+    public void isConnected_readsStateWithoutListeners() {
+        assertFalse(mMonitor.isConnected());
+        setNetwork(true);
+        assertTrue(mMonitor.isConnected());
+        assertTrue(mMonitor.isWifi());
+    }
+
+    @Test
+    public void addListener_registersOneNetworkCallback() {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+
+        mMonitor.addListener(first);
+        mMonitor.addListener(second);
+        mMonitor.addListener(second);
+        assertEquals(1, mShadowConnectivityManager.getNetworkCallbacks().size());
+        assertFalse(ShadowApplication.getInstance().hasReceiverForIntent(CONNECTIVITY_INTENT));
+
+        mMonitor.removeListener(second);
+        assertEquals(1, mShadowConnectivityManager.getNetworkCallbacks().size());
+
+        // The last listener stops the watching
+        mMonitor.removeListener(first);
+        assertTrue(mShadowConnectivityManager.getNetworkCallbacks().isEmpty());
+
+        // Removing it again changes nothing
+        mMonitor.removeListener(first);
+        assertTrue(mShadowConnectivityManager.getNetworkCallbacks().isEmpty());
+    }
+
+    @Test
+    public void networkCallback_notifiesListenersOnMainThread() {
+        RecordingListener listener = new RecordingListener();
+        mMonitor.addListener(listener);
+        NetworkCallback networkCallback = mShadowConnectivityManager.getNetworkCallbacks().iterator().next();
+
+        setNetwork(true);
+        networkCallback.onAvailable(null);
+        assertTrue(listener.mChanges.isEmpty());
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(1, listener.mChanges.size());
+        assertTrue(listener.mChanges.get(0));
+
+        // A callback that changes nothing isn't passed on
+        networkCallback.onCapabilitiesChanged(null, null);
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(1, listener.mChanges.size());
+
+        // The state is cached while watching
+        setNetwork(false);
+        assertTrue(mMonitor.isConnected());
+        networkCallback.onLost(null);
+        ShadowLooper.runUiThreadTasks();
+        assertFalse(mMonitor.isConnected());
+        assertEquals(2, listener.mChanges.size());
+        assertFalse(listener.mChanges.get(1));
+    }
+
+    @Test
+    public void removeListener_dropsPendingRefresh() {
+        RecordingListener listener = new RecordingListener();
+        mMonitor.addListener(listener);
+        NetworkCallback networkCallback = mShadowConnectivityManager.getNetworkCallbacks().iterator().next();
+
+        setNetwork(true);
+        networkCallback.onAvailable(null);
+        mMonitor.removeListener(listener);
+        ShadowLooper.runUiThreadTasks();
+        assertTrue(listener.mChanges.isEmpty());
+    }
+
+    @Config(sdk = 16)
+    @Test
+    public void addListener_fallsBackToBroadcastBeforeLollipop() {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+
+        mMonitor.addListener(first);
+        mMonitor.addListener(second);
+        assertEquals(1, ShadowApplication.getInstance().getReceiversForIntent(CONNECTIVITY_INTENT).size());
+
+        setNetwork(true);
+        RuntimeEnvironment.application.sendBroadcast(CONNECTIVITY_INTENT);
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(1, first.mChanges.size());
+        assertEquals(1, second.mChanges.size());
+        assertTrue(mMonitor.isConnected());
+
+        mMonitor.removeListener(first);
+        assertTrue(ShadowApplication.getInstance().hasReceiverForIntent(CONNECTIVITY_INTENT));
+        mMonitor.removeListener(second);
+        assertFalse(ShadowApplication.getInstance().hasReceiverForIntent(CONNECTIVITY_INTENT));
+    }
+}
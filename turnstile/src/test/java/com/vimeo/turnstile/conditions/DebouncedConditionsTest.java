@@ -0,0 +1,159 @@
+package com.vimeo.turnstile.conditions;
+
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.BaseUnitTest;
+
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DebouncedConditionsTest extends BaseUnitTest {
+
+    private static class TestConditions implements Conditions {
+
+        boolean mConditionsMet = true;
+        @Nullable
+        Listener mListener;
+
+        void set(boolean conditionsMet) {
+            mConditionsMet = conditionsMet;
+            if (mListener != null) {
+                mListener.onConditionsChange(conditionsMet);
+            }
+        }
+
+        @Override
+        public boolean areConditionsMet() {
+            return mConditionsMet;
+        }
+
+        @Override
+        public void setListener(@Nullable Listener listener) {
+            mListener = listener;
+        }
+    }
+
+    private static List<Boolean> listen(DebouncedConditions conditions) {
+        final List<Boolean> changes = new ArrayList<>();
+        conditions.setListener(new Conditions.Listener() {
+            @Override
+            public void onConditionsChange(boolean conditionsMet) {
+                changes.add(conditionsMet);
+            }
+        });
+        return changes;
+    }
+
+    @Test
+    public void testBlipIsNotReportedAsLoss() {
+        TestConditions raw = new TestConditions();
+        DebouncedConditions conditions = new DebouncedConditions(raw, 5, 10, TimeUnit.SECONDS, 0);
+        List<Boolean> changes = listen(conditions);
+
+        raw.set(false);
+        // New work shouldn't start while the loss is unconfirmed
+        assertFalse(conditions.areConditionsMet());
+        ShadowLooper.idleMainLooper(2000);
+        assertTrue(changes.isEmpty());
+        raw.set(true);
+        ShadowLooper.idleMainLooper(0);
+
+        // The work held back during the blip is started right away
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0));
+        assertTrue(conditions.areConditionsMet());
+        ShadowLooper.idleMainLooper(10000);
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void testWrappedConditionsAreOnlyListenedToWhileListening() {
+        TestConditions raw = new TestConditions();
+        DebouncedConditions conditions = new DebouncedConditions(raw, 5, 10, TimeUnit.SECONDS, 0);
+        assertNull(raw.mListener);
+
+        listen(conditions);
+        assertNotNull(raw.mListener);
+
+        conditions.setListener(null);
+        assertNull(raw.mListener);
+        // Read through while nothing is debounced
+        raw.mConditionsMet = false;
+        assertFalse(conditions.areConditionsMet());
+    }
+
+    @Test
+    public void testUnreportedChangeNeedsRefresh() {
+        TestConditions raw = new TestConditions();
+        DebouncedConditions conditions = new DebouncedConditions(raw, 5, 10, TimeUnit.SECONDS, 0);
+        List<Boolean> changes = listen(conditions);
+
+        // Changed without telling the listener, e.g. a preference the conditions read
+        raw.mConditionsMet = false;
+        assertTrue(conditions.areConditionsMet());
+        ShadowLooper.idleMainLooper(5000);
+        assertTrue(changes.isEmpty());
+
+        conditions.refresh();
+        assertFalse(conditions.areConditionsMet());
+        ShadowLooper.idleMainLooper(5000);
+        assertEquals(1, changes.size());
+        assertFalse(changes.get(0));
+    }
+
+    @Test
+    public void testLossAndRegainAreDelayed() {
+        TestConditions raw = new TestConditions();
+        DebouncedConditions conditions = new DebouncedConditions(raw, 5, 10, TimeUnit.SECONDS, 0);
+        List<Boolean> changes = listen(conditions);
+
+        raw.set(false);
+        ShadowLooper.idleMainLooper(4000);
+        assertTrue(changes.isEmpty());
+        ShadowLooper.idleMainLooper(1000);
+        assertEquals(1, changes.size());
+        assertFalse(changes.get(0));
+
+        raw.set(true);
+        assertFalse(conditions.areConditionsMet());
+        ShadowLooper.idleMainLooper(9000);
+        assertEquals(1, changes.size());
+        ShadowLooper.idleMainLooper(1000);
+        assertEquals(2, changes.size());
+        assertTrue(changes.get(1));
+        assertTrue(conditions.areConditionsMet());
+    }
+
+    @Test
+    public void testRegainsAreCappedPerMinute() {
+        TestConditions raw = new TestConditions();
+        DebouncedConditions conditions = new DebouncedConditions(raw, 0, 0, TimeUnit.SECONDS, 2);
+        List<Boolean> changes = listen(conditions);
+
+        raw.set(false);
+        ShadowLooper.idleMainLooper(0);
+        raw.set(true);
+        ShadowLooper.idleMainLooper(0);
+        raw.set(false);
+        ShadowLooper.idleMainLooper(0);
+        // Losses are always reported
+        assertEquals(3, changes.size());
+
+        raw.set(true);
+        ShadowLooper.idleMainLooper(30000);
+        assertEquals(3, changes.size());
+        ShadowLooper.idleMainLooper(30000);
+        assertEquals(4, changes.size());
+        assertTrue(conditions.areConditionsMet());
+    }
+}
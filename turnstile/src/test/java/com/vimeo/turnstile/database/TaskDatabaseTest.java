@@ -74,6 +74,20 @@ public class TaskDatabaseTest extends BaseUnitTest {
         Assert.assertTrue(mDatabase.count() == 0);
     }
 
+    @Test
+    public void testClose_dropsLaterWrites() throws Exception {
+        clearDatabase();
+
+        mDatabase.insert(UnitTestBaseTask.newTask());
+        mDatabase.close();
+        // The close is queued behind the pending writes
+        Assert.assertTrue(TaskDatabase.flush(1000));
+
+        UnitTestBaseTask task = UnitTestBaseTask.newTask();
+        Assert.assertTrue(mDatabase.insert(task) == -1);
+        Assert.assertFalse(mDatabase.upsert(task));
+    }
+
     @Test
     public void testGetAll_returnsCorrectly() throws Exception {
         clearDatabase();
@@ -1,7 +1,12 @@
 package com.vimeo.turnstile.dummy;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
 import com.vimeo.turnstile.BaseTask;
+import com.vimeo.turnstile.TaskError;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public final class UnitTestBaseTask extends BaseTask {
@@ -9,6 +14,49 @@ public final class UnitTestBaseTask extends BaseTask {
     private static final AtomicInteger idCounter = new AtomicInteger();
     private static final long serialVersionUID = -4922424711410164139L;
 
+    /**
+     * What the task does when it's executed.
+     */
+    public interface Body {
+
+        void execute(@NonNull UnitTestBaseTask task);
+    }
+
+    /**
+     * Completes the task right away.
+     */
+    public static final Body COMPLETE = new Body() {
+        @Override
+        public void execute(@NonNull UnitTestBaseTask task) {
+            task.complete();
+        }
+    };
+
+    /**
+     * Counts down started once the task runs, then completes the
+     * task once release is counted down. Returns without completing
+     * if the thread is interrupted first.
+     */
+    public static Body blockUntil(@NonNull final CountDownLatch started, @NonNull final CountDownLatch release) {
+        return new Body() {
+            @Override
+            public void execute(@NonNull UnitTestBaseTask task) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.complete();
+            }
+        };
+    }
+
+    @Nullable
+    private transient Body mBody;
+    @Nullable
+    private String mConditionsName;
+
     public static UnitTestBaseTask newTask() {
         return new UnitTestBaseTask(String.valueOf(idCounter.incrementAndGet()));
     }
@@ -21,9 +69,40 @@ public final class UnitTestBaseTask extends BaseTask {
         mState = TaskState.ERROR;
     }
 
+    public UnitTestBaseTask withBody(@Nullable Body body) {
+        mBody = body;
+        return this;
+    }
+
+    public UnitTestBaseTask withConditionsName(@Nullable String conditionsName) {
+        mConditionsName = conditionsName;
+        return this;
+    }
+
+    @Nullable
     @Override
-    protected void execute() {
+    public String getConditionsName() {
+        return mConditionsName;
+    }
+
+    public void complete() {
+        onTaskCompleted();
+    }
+
+    public void progress(int progress) {
+        onTaskProgress(progress);
+    }
+
+    public void fail(@NonNull TaskError taskError) {
+        onTaskFailure(taskError);
+    }
 
+    @Override
+    protected void execute() {
+        Body body = mBody;
+        if (body != null) {
+            body.execute(this);
+        }
     }
 
     @Override
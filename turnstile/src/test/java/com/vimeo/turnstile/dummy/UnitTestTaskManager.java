@@ -0,0 +1,99 @@
+package com.vimeo.turnstile.dummy;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.vimeo.turnstile.BaseTaskManager;
+import com.vimeo.turnstile.BaseTaskService;
+import com.vimeo.turnstile.conditions.Conditions;
+import com.vimeo.turnstile.utils.Utils;
+
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A manager without a service for tests. It shares its database
+ * with {@link DummyClassInstances#newTaskCache()}.
+ */
+public final class UnitTestTaskManager extends BaseTaskManager<UnitTestBaseTask> {
+
+    public static final String MANAGER_NAME = "test";
+
+    private final AtomicInteger mStartServiceCount = new AtomicInteger();
+
+    public static Builder<UnitTestBaseTask> newBuilder() {
+        return new Builder<UnitTestBaseTask>(RuntimeEnvironment.application)
+                .withSerializer(Utils.dummySerializer(UnitTestBaseTask.class));
+    }
+
+    public static UnitTestTaskManager newManager() {
+        return new UnitTestTaskManager(newBuilder());
+    }
+
+    public UnitTestTaskManager(@NonNull Builder<UnitTestBaseTask> builder) {
+        super(builder);
+    }
+
+    public int getStartServiceCount() {
+        return mStartServiceCount.get();
+    }
+
+    @Override
+    protected void startService() {
+        mStartServiceCount.incrementAndGet();
+        super.startService();
+    }
+
+    @Nullable
+    @Override
+    protected Class<? extends BaseTaskService> getServiceClass() {
+        return null;
+    }
+
+    @Override
+    protected String getManagerName() {
+        return MANAGER_NAME;
+    }
+
+    @Override
+    protected Class<UnitTestBaseTask> getTaskClass() {
+        return UnitTestBaseTask.class;
+    }
+
+    /**
+     * Conditions that can be flipped by the test.
+     */
+    public static final class TestConditions implements Conditions {
+
+        private volatile boolean mConditionsMet;
+        @Nullable
+        private volatile Listener mListener;
+
+        public TestConditions(boolean conditionsMet) {
+            mConditionsMet = conditionsMet;
+        }
+
+        public void setConditionsMet(boolean conditionsMet) {
+            mConditionsMet = conditionsMet;
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onConditionsChange(conditionsMet);
+            }
+        }
+
+        public boolean hasListener() {
+            return mListener != null;
+        }
+
+        @Override
+        public boolean areConditionsMet() {
+            return mConditionsMet;
+        }
+
+        @Override
+        public void setListener(@Nullable Listener listener) {
+            mListener = listener;
+        }
+    }
+}